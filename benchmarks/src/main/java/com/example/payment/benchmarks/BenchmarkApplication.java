@@ -0,0 +1,39 @@
+package com.example.payment.benchmarks;
+
+import com.example.payment.PaymentTransactionServiceApplication;
+import com.example.payment.dto.CreateTransactionRequest;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+
+/**
+ * Boots the service without a web server against an embedded mongod so that
+ * service and repository benchmarks exercise the real Spring Data stack.
+ */
+final class BenchmarkApplication {
+    
+    static final String PROFILE = "benchmark";
+    
+    private BenchmarkApplication() {
+    }
+    
+    static ConfigurableApplicationContext start(String... args) {
+        return new SpringApplicationBuilder(PaymentTransactionServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(PROFILE)
+                .run(args);
+    }
+    
+    static CreateTransactionRequest request(String merchantId, String customerId) {
+        CreateTransactionRequest request = new CreateTransactionRequest();
+        request.setMerchantId(merchantId);
+        request.setCustomerId(customerId);
+        request.setAmount(new BigDecimal("125.50"));
+        request.setCurrency("USD");
+        request.setPaymentMethod("CREDIT_CARD");
+        request.setDescription("benchmark");
+        return request;
+    }
+}
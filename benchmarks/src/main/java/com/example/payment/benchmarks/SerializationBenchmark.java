@@ -0,0 +1,97 @@
+package com.example.payment.benchmarks;
+
+import com.example.payment.config.JsonConfig;
+import com.example.payment.dto.ApiResponse;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the paged list response and of a single
+ * transaction response, using an {@link ObjectMapper} configured the way
+ * Spring Boot configures the one behind the MVC message converter.
+ * {@code serializer} picks plain bean serialization ({@code jackson}), the
+ * hand-written serializers without the byte cache ({@code fast}) or with it
+ * ({@code cached}). Run with {@code -prof gc} to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    
+    @Param({"20", "100", "1000"})
+    int pageSize;
+    
+    @Param({"jackson", "fast", "cached"})
+    String serializer;
+    
+    private ObjectWriter writer;
+    private ApiResponse<Page<Transaction>> response;
+    private ApiResponse<Transaction> single;
+    
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if (!"jackson".equals(serializer)) {
+            builder.modulesToInstall(new JsonConfig().transactionJsonModule("cached".equals(serializer),
+                    DataSize.ofMegabytes(32), Duration.ofMinutes(10), new SimpleMeterRegistry()));
+        }
+        ObjectMapper objectMapper = builder.build();
+        writer = objectMapper.writer();
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setId(UUID.randomUUID());
+            transaction.setCreatedAt(LocalDateTime.now());
+            transaction.setMerchantId("merchant-" + (i % 10));
+            transaction.setCustomerId("customer-" + i);
+            transaction.setAmount(new BigDecimal("125.50"));
+            transaction.setCurrency("USD");
+            transaction.setPaymentMethod("CREDIT_CARD");
+            transaction.setDescription("benchmark");
+            transaction.setStatus(TransactionStatus.COMPLETED);
+            transactions.add(transaction);
+        }
+        response = ApiResponse.success(new PageImpl<>(transactions, PageRequest.of(0, pageSize), 10L * pageSize));
+        single = ApiResponse.success("Transaction retrieved successfully", transactions.get(0));
+    }
+    
+    @Benchmark
+    public byte[] serializePage() throws Exception {
+        return writer.writeValueAsBytes(response);
+    }
+    
+    @Benchmark
+    public byte[] serializeTransaction() throws Exception {
+        return writer.writeValueAsBytes(single);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.payment.benchmarks;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.service.TimeOrderedIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a {@link Transaction}, and of the id and timestamp the
+ * service assigns to new ones. The no-arg constructor assigns nothing, so
+ * {@code newTransaction} is what every document read from Mongo costs. Run
+ * with {@code -t 8} to see {@code randomUuid} contend on {@code SecureRandom}
+ * while {@code timeOrderedId} does not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionConstructionBenchmark {
+    
+    private static final TimeOrderedIdGenerator TIME_ORDERED = new TimeOrderedIdGenerator();
+    
+    @Benchmark
+    public Transaction newTransaction() {
+        return new Transaction();
+    }
+    
+    @Benchmark
+    public UUID randomUuid() {
+        return UUID.randomUUID();
+    }
+    
+    @Benchmark
+    public UUID timeOrderedId() {
+        return TIME_ORDERED.nextId();
+    }
+    
+    @Benchmark
+    public String randomUuidString() {
+        return UUID.randomUUID().toString();
+    }
+    
+    @Benchmark
+    public LocalDateTime now() {
+        return LocalDateTime.now();
+    }
+}
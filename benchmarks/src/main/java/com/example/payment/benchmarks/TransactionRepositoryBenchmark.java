@@ -0,0 +1,124 @@
+package com.example.payment.benchmarks;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.example.payment.repository.TransactionRepository;
+import com.example.payment.service.RandomIdGenerator;
+import com.example.payment.service.TimeOrderedIdGenerator;
+import com.example.payment.service.TransactionIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring Data repository calls against an embedded mongod, without the
+ * service layer's cache and totals bookkeeping in front of them.
+ * {@code idGenerator} compares {@code save} with random and time-ordered
+ * ids, which insert at random points or at the end of the {@code _id}
+ * index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionRepositoryBenchmark {
+    
+    private static final int MERCHANTS = 50;
+    private static final int SEED_TRANSACTIONS = 10_000;
+    
+    @Param({"random", "time-ordered"})
+    String idGenerator;
+    
+    private TransactionIdGenerator ids;
+    private ConfigurableApplicationContext context;
+    private TransactionRepository transactionRepository;
+    private List<UUID> seededIds;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ids = "random".equals(idGenerator) ? new RandomIdGenerator() : new TimeOrderedIdGenerator();
+        context = BenchmarkApplication.start();
+        context.getBean(MongoTemplate.class).getDb().drop();
+        transactionRepository = context.getBean(TransactionRepository.class);
+        List<Transaction> transactions = new ArrayList<>(SEED_TRANSACTIONS);
+        for (int i = 0; i < SEED_TRANSACTIONS; i++) {
+            transactions.add(newTransaction("merchant-" + (i % MERCHANTS)));
+        }
+        seededIds = transactionRepository.insert(transactions).stream()
+                .map(Transaction::getId)
+                .toList();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public Transaction save() {
+        return transactionRepository.save(newTransaction("merchant-" + ThreadLocalRandom.current().nextInt(MERCHANTS)));
+    }
+    
+    @Benchmark
+    public Optional<Transaction> findById() {
+        return transactionRepository.findById(seededIds.get(ThreadLocalRandom.current().nextInt(seededIds.size())));
+    }
+    
+    @Benchmark
+    public Page<Transaction> findAllFirstPage() {
+        return transactionRepository.findAll(PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "createdAt")));
+    }
+    
+    @Benchmark
+    public Page<Transaction> findByMerchantIdPage() {
+        return transactionRepository.findByMerchantId("merchant-" + ThreadLocalRandom.current().nextInt(MERCHANTS),
+                PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "createdAt")));
+    }
+    
+    @Benchmark
+    public List<Transaction> findByMerchantIdAndStatus() {
+        return transactionRepository.findByMerchantIdAndStatus(
+                "merchant-" + ThreadLocalRandom.current().nextInt(MERCHANTS), TransactionStatus.COMPLETED);
+    }
+    
+    private Transaction newTransaction(String merchantId) {
+        Transaction transaction = new Transaction();
+        transaction.setId(ids.nextId());
+        transaction.setCreatedAt(LocalDateTime.now());
+        transaction.setMerchantId(merchantId);
+        transaction.setCustomerId("customer");
+        transaction.setAmount(new BigDecimal("125.50"));
+        transaction.setCurrency("USD");
+        transaction.setPaymentMethod("CREDIT_CARD");
+        transaction.setDescription("benchmark");
+        transaction.setStatus(ThreadLocalRandom.current().nextBoolean()
+                ? TransactionStatus.COMPLETED : TransactionStatus.FAILED);
+        return transaction;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.payment.benchmarks;
+
+import com.example.payment.dto.BatchItemResult;
+import com.example.payment.dto.CreateTransactionRequest;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.example.payment.service.TransactionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end service calls against an embedded mongod, covering the write
+ * path and the read paths the API serves most often.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionServiceBenchmark {
+    
+    private static final int MERCHANTS = 50;
+    private static final int SEED_TRANSACTIONS = 10_000;
+    
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private List<String> seededIds;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        context.getBean(MongoTemplate.class).getDb().drop();
+        transactionService = context.getBean(TransactionService.class);
+        List<CreateTransactionRequest> requests = new ArrayList<>(SEED_TRANSACTIONS);
+        for (int i = 0; i < SEED_TRANSACTIONS; i++) {
+            requests.add(BenchmarkApplication.request("merchant-" + (i % MERCHANTS), "customer-" + i));
+        }
+        seededIds = transactionService.createTransactions(requests).stream()
+                .filter(BatchItemResult::isSuccess)
+                .map(BatchItemResult::getTransactionId)
+                .toList();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public Transaction createTransaction() {
+        int merchant = ThreadLocalRandom.current().nextInt(MERCHANTS);
+        return transactionService.createTransaction(BenchmarkApplication.request("merchant-" + merchant, "customer"));
+    }
+    
+    @Benchmark
+    public Map<String, BigDecimal> getTotalAmountByMerchantAndStatus() {
+        int merchant = ThreadLocalRandom.current().nextInt(MERCHANTS);
+        return transactionService.getTotalAmountByMerchantAndStatus("merchant-" + merchant,
+                TransactionStatus.COMPLETED);
+    }
+    
+    @Benchmark
+    public Optional<Transaction> getTransactionById() {
+        return transactionService.getTransactionById(
+                seededIds.get(ThreadLocalRandom.current().nextInt(seededIds.size())));
+    }
+}
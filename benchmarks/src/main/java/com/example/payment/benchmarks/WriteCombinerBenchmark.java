@@ -0,0 +1,67 @@
+package com.example.payment.benchmarks;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.service.TransactionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent single creates with and without the write combiner, to weigh
+ * the added linger latency against insert throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class WriteCombinerBenchmark {
+    
+    private static final int MERCHANTS = 50;
+    
+    @Param({"false", "true"})
+    private boolean combine;
+    
+    @Param({"1ms"})
+    private String linger;
+    
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("--payment.write-combiner.enabled=" + combine,
+                "--payment.write-combiner.linger=" + linger);
+        context.getBean(MongoTemplate.class).getDb().drop();
+        transactionService = context.getBean(TransactionService.class);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public Transaction createTransaction() {
+        int merchant = ThreadLocalRandom.current().nextInt(MERCHANTS);
+        return transactionService.createTransaction(BenchmarkApplication.request("merchant-" + merchant, "customer"));
+    }
+}
@@ -0,0 +1,21 @@
+#!/usr/bin/env bash
+# Initiates the replica sets and registers both shards with mongos. Safe to re-run.
+set -euo pipefail
+
+initiate() {
+  mongosh --quiet "mongodb://$1/?directConnection=true" --eval "
+    try { rs.status(); } catch (e) {
+      rs.initiate({_id: '$2', $3 members: [{_id: 0, host: '$1'}]});
+    }
+    while (!db.hello().isWritablePrimary) { sleep(500); }"
+}
+
+initiate config:27019 config "configsvr: true,"
+initiate shard1:27018 shard1 ""
+initiate shard2:27018 shard2 ""
+
+mongosh --quiet "mongodb://mongos:27017" --eval "
+  const shards = db.adminCommand({listShards: 1}).shards.map(s => s._id);
+  if (!shards.includes('shard1')) sh.addShard('shard1/shard1:27018');
+  if (!shards.includes('shard2')) sh.addShard('shard2/shard2:27018');
+  printjson(db.adminCommand({listShards: 1}).shards);"
@@ -2,8 +2,10 @@ package com.example.payment;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PaymentTransactionServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(PaymentTransactionServiceApplication.class, args);
@@ -0,0 +1,42 @@
+package com.example.payment.config;
+
+import com.example.payment.dto.ApiResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes the {@link ApiResponse} envelope field by field, with the same
+ * output as the annotated bean. {@code data} goes through the provider, so
+ * pages and lists of transactions still reach {@link TransactionJsonSerializer}.
+ */
+public class ApiResponseJsonSerializer extends StdSerializer<ApiResponse<?>> {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private static final SerializedString SUCCESS = new SerializedString("success");
+    private static final SerializedString MESSAGE = new SerializedString("message");
+    private static final SerializedString DATA = new SerializedString("data");
+    private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+    
+    public ApiResponseJsonSerializer() {
+        super(ApiResponse.class, false);
+    }
+    
+    @Override
+    public void serialize(ApiResponse<?> response, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(response);
+        gen.writeFieldName(SUCCESS);
+        gen.writeBoolean(response.isSuccess());
+        gen.writeFieldName(MESSAGE);
+        gen.writeString(response.getMessage());
+        gen.writeFieldName(DATA);
+        provider.defaultSerializeValue(response.getData(), gen);
+        gen.writeFieldName(TIMESTAMP);
+        TransactionJsonSerializer.writeTimestamp(response.getTimestamp(), gen, new char[19]);
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.payment.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class ExecutionConfig {
+    
+    @Bean
+    @ConditionalOnProperty(name = "payment.mongo.limiter.enabled", havingValue = "true")
+    public MongoConcurrencyLimiter mongoConcurrencyLimiter(
+            @Value("${payment.mongo.limiter.max-concurrent:100}") int maxConcurrent,
+            @Value("${payment.mongo.limiter.acquire-timeout:2s}") Duration acquireTimeout,
+            MeterRegistry meterRegistry) {
+        return new MongoConcurrencyLimiter(maxConcurrent, acquireTimeout, meterRegistry);
+    }
+    
+    @Bean
+    public static BeanPostProcessor mongoConcurrencyLimiterPostProcessor(
+            ObjectProvider<MongoConcurrencyLimiter> limiter) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof MongoTemplate)) {
+                    return bean;
+                }
+                MongoConcurrencyLimiter interceptor = limiter.getIfAvailable();
+                if (interceptor == null) {
+                    return bean;
+                }
+                ProxyFactory proxyFactory = new ProxyFactory(bean);
+                proxyFactory.setProxyTargetClass(true);
+                proxyFactory.addAdvice(interceptor);
+                return proxyFactory.getProxy();
+            }
+        };
+    }
+    
+    @Bean
+    public MeterBinder executionModeMetrics(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        return registry -> Gauge.builder("payment.execution.virtual-threads", () -> virtualThreads ? 1 : 0)
+                .description("1 when requests run on virtual threads, 0 on the platform thread pool")
+                .register(registry);
+    }
+}
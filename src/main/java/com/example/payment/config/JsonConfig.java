@@ -0,0 +1,46 @@
+package com.example.payment.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@Configuration
+public class JsonConfig {
+    
+    /**
+     * Hand-written serializers for the transaction and the response envelope.
+     * Spring Boot adds every {@link Module} bean to the application's
+     * {@code ObjectMapper}, so MVC, WebFlux and the export writer all use them.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "payment.json.fast-serializer.enabled", havingValue = "true", matchIfMissing = true)
+    public Module transactionJsonModule(@Value("${payment.json.cache.enabled:true}") boolean cacheEnabled,
+                                        @Value("${payment.json.cache.max-size:32MB}") DataSize maxSize,
+                                        @Value("${payment.json.cache.expire-after-access:10m}") Duration expiry,
+                                        MeterRegistry meterRegistry) {
+        Cache<UUID, TransactionJsonSerializer.CachedJson> cache = null;
+        if (cacheEnabled) {
+            cache = Caffeine.newBuilder()
+                    .maximumWeight(maxSize.toBytes())
+                    .<UUID, TransactionJsonSerializer.CachedJson>weigher((id, json) -> json.size())
+                    .expireAfterAccess(expiry)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "transaction-json");
+        }
+        return new SimpleModule("payment-json")
+                .addSerializer(new TransactionJsonSerializer(cache))
+                .addSerializer(new ApiResponseJsonSerializer());
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.payment.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("!reactive")
+public class MetricsConfig {
+    
+    /**
+     * Replaces Spring Boot's default Jackson converter; Boot backs off when a
+     * {@code MappingJackson2HttpMessageConverter} bean is already present.
+     */
+    @Bean
+    public TimedJacksonHttpMessageConverter timedJacksonHttpMessageConverter(ObjectMapper objectMapper,
+                                                                             MeterRegistry meterRegistry) {
+        return new TimedJacksonHttpMessageConverter(objectMapper, meterRegistry);
+    }
+}
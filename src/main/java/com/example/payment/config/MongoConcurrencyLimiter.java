@@ -0,0 +1,113 @@
+package com.example.payment.config;
+
+import com.example.payment.exception.MongoCapacityExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Caps the number of concurrent calls into Mongo. With virtual threads the
+ * request path is no longer bounded by Tomcat's worker pool, so without this
+ * every open connection would queue on the driver's connection pool instead
+ * of failing fast. Nested calls on the same thread reuse the outer permit.
+ * A call that returns a {@link Stream} keeps its permit until the stream is
+ * closed, since iterating the cursor keeps issuing {@code getMore}s; callers
+ * already close export streams with try-with-resources.
+ *
+ * <p>The gauges are registered when Boot binds this bean as a
+ * {@link MeterBinder}.
+ */
+public class MongoConcurrencyLimiter implements MethodInterceptor, MeterBinder {
+    
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long acquireTimeoutNanos;
+    private final ThreadLocal<Boolean> holdsPermit = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private final Timer waitTimer;
+    private final Counter rejected;
+    
+    public MongoConcurrencyLimiter(int maxConcurrent, Duration acquireTimeout, MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.waitTimer = Timer.builder("payment.mongo.limiter.wait")
+                .description("Time spent waiting for a Mongo permit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder("payment.mongo.limiter.rejected")
+                .description("Mongo calls rejected because no permit became available in time")
+                .register(meterRegistry);
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("payment.mongo.limiter.in-flight", this, MongoConcurrencyLimiter::getInFlight)
+                .description("Mongo calls currently holding a permit")
+                .register(registry);
+        Gauge.builder("payment.mongo.limiter.queued", permits, Semaphore::getQueueLength)
+                .description("Threads waiting for a Mongo permit")
+                .register(registry);
+        Gauge.builder("payment.mongo.limiter.max", this, MongoConcurrencyLimiter::getMaxConcurrent)
+                .register(registry);
+    }
+    
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (holdsPermit.get()) {
+            return invocation.proceed();
+        }
+        acquire();
+        holdsPermit.set(Boolean.TRUE);
+        boolean handedOff = false;
+        try {
+            Object result = invocation.proceed();
+            if (result instanceof Stream<?> stream) {
+                AtomicBoolean released = new AtomicBoolean();
+                handedOff = true;
+                return stream.onClose(() -> {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                });
+            }
+            return result;
+        } finally {
+            holdsPermit.set(Boolean.FALSE);
+            if (!handedOff) {
+                permits.release();
+            }
+        }
+    }
+    
+    public int getInFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+    
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+    
+    private void acquire() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+        long started = System.nanoTime();
+        boolean acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            rejected.increment();
+            throw new MongoCapacityExceededException("Database is busy, please retry");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.payment.config;
+
+import com.example.payment.model.IdempotencyRecord;
+import com.example.payment.model.MerchantTotal;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionRollup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on the persisted entities before the
+ * application starts serving traffic. Index creation is idempotent, so this
+ * is a no-op once the indexes exist.
+ */
+@Component
+public class MongoIndexInitializer {
+    
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexInitializer.class);
+    
+    private static final List<Class<?>> INDEXED_ENTITIES =
+            List.of(Transaction.class, MerchantTotal.class, IdempotencyRecord.class, TransactionRollup.class);
+    
+    private final MongoTemplate mongoTemplate;
+    
+    @Autowired
+    public MongoIndexInitializer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        IndexResolver resolver =
+                new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> entity : INDEXED_ENTITIES) {
+            IndexOperations indexOperations = mongoTemplate.indexOps(entity);
+            for (IndexDefinition index : resolver.resolveIndexFor(entity)) {
+                try {
+                    indexOperations.ensureIndex(index);
+                } catch (DataAccessException e) {
+                    log.warn("Could not create index {} on {}: {}",
+                            index.getIndexKeys().toJson(), entity.getSimpleName(), e.getMessage());
+                }
+            }
+        }
+    }
+}
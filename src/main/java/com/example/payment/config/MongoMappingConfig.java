@@ -0,0 +1,28 @@
+package com.example.payment.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+
+@Configuration
+public class MongoMappingConfig {
+    
+    /**
+     * None of the persisted types are polymorphic, so the {@code _class} key
+     * Spring Data writes into every document is dead weight.
+     */
+    @Bean
+    public static BeanPostProcessor mongoTypeKeyRemover() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof MappingMongoConverter converter) {
+                    converter.setTypeMapper(new DefaultMongoTypeMapper(null));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.payment.config;
+
+import com.example.payment.model.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service-level meters. Every meter is registered up front and looked up by
+ * enum, so recording on the request path does not build tags or allocate.
+ */
+@Component
+public class PaymentMetrics {
+    
+    private final Map<TransactionStatus, Counter> outcomes = new EnumMap<>(TransactionStatus.class);
+    private final Timer processingTimer;
+    
+    @Autowired
+    public PaymentMetrics(MeterRegistry meterRegistry) {
+        for (TransactionStatus status : TransactionStatus.values()) {
+            outcomes.put(status, Counter.builder("payment.processing.outcomes")
+                    .description("Payment processing results by resulting transaction status")
+                    .tag("outcome", status.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        this.processingTimer = Timer.builder("payment.processing")
+                .description("Time spent in the payment processor per transaction")
+                .register(meterRegistry);
+    }
+    
+    public void recordProcessing(TransactionStatus outcome, long elapsedNanos) {
+        outcomes.get(outcome).increment();
+        processingTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.payment.config;
+
+import com.example.payment.model.Transaction;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shards the {@code transactions} collection on {@code {m: 1, _id: 1}} when
+ * {@code payment.sharding.enabled} is set and the application is connected
+ * to a mongos. Runs after {@link MongoIndexInitializer}; an already sharded
+ * collection is left as it is. The shard key index is only created here, so
+ * unsharded deployments do not pay for it on every insert.
+ */
+@Component
+public class ShardingInitializer {
+    
+    private static final Logger log = LoggerFactory.getLogger(ShardingInitializer.class);
+    
+    private static final Document SHARD_KEY = new Document("m", 1).append("_id", 1);
+    
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    
+    @Autowired
+    public ShardingInitializer(MongoTemplate mongoTemplate,
+                               @Value("${payment.sharding.enabled:false}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+    
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void shardCollections() {
+        if (!enabled) {
+            return;
+        }
+        String database = mongoTemplate.getDb().getName();
+        String namespace = database + "." + mongoTemplate.getCollectionName(Transaction.class);
+        try {
+            Document hello = mongoTemplate.executeCommand(new Document("hello", 1));
+            if (!"isdbgrid".equals(hello.getString("msg"))) {
+                log.warn("payment.sharding.enabled is set but the server is not a mongos; {} stays unsharded",
+                        namespace);
+                return;
+            }
+            MongoDatabase config = mongoTemplate.getMongoDatabaseFactory().getMongoDatabase("config");
+            Document existing = config.getCollection("collections")
+                    .find(Filters.and(Filters.eq("_id", namespace), Filters.ne("dropped", true)))
+                    .first();
+            if (existing != null) {
+                log.info("{} is sharded on {}", namespace, existing.get("key", Document.class).toJson());
+                return;
+            }
+            mongoTemplate.indexOps(Transaction.class).ensureIndex(new Index()
+                    .on("m", Sort.Direction.ASC)
+                    .on("_id", Sort.Direction.ASC)
+                    .named("m_id"));
+            MongoDatabase admin = mongoTemplate.getMongoDatabaseFactory().getMongoDatabase("admin");
+            admin.runCommand(new Document("enableSharding", database));
+            admin.runCommand(new Document("shardCollection", namespace).append("key", SHARD_KEY));
+            log.info("Sharded {} on {}", namespace, SHARD_KEY.toJson());
+        } catch (DataAccessException | MongoException e) {
+            log.warn("Could not shard {}: {}", namespace, e.getMessage());
+        }
+    }
+}
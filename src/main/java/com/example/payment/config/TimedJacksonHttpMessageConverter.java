@@ -0,0 +1,75 @@
+package com.example.payment.config;
+
+import com.example.payment.dto.ApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson message converter that records how long each response body takes
+ * to serialize. This separates Jackson time from handler and Mongo time
+ * inside {@code http.server.requests}.
+ *
+ * <p>Almost every body is an {@link ApiResponse}, so the timer is tagged by
+ * the type of its {@code data} payload instead, with collections tagged as
+ * {@code List<Element>} by their first element.
+ */
+public class TimedJacksonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    
+    private final ClassValue<Timer> timers;
+    private final ClassValue<Timer> listTimers;
+    
+    public TimedJacksonHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.timers = new ClassValue<>() {
+            @Override
+            protected Timer computeValue(Class<?> type) {
+                return timer(meterRegistry, type.getSimpleName());
+            }
+        };
+        this.listTimers = new ClassValue<>() {
+            @Override
+            protected Timer computeValue(Class<?> type) {
+                return timer(meterRegistry, "List<" + type.getSimpleName() + ">");
+            }
+        };
+    }
+    
+    private static Timer timer(MeterRegistry meterRegistry, String type) {
+        return Timer.builder("payment.http.serialization")
+                .description("Time spent writing a response body with Jackson")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+    
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        long started = System.nanoTime();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            timerFor(object).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private Timer timerFor(Object body) {
+        Object payload = body instanceof ApiResponse<?> response ? response.getData() : body;
+        if (payload == null) {
+            return timers.get(Void.class);
+        }
+        if (payload instanceof Collection<?> collection && !collection.isEmpty()) {
+            Object first = collection.iterator().next();
+            return listTimers.get(first == null ? Object.class : first.getClass());
+        }
+        return timers.get(payload.getClass());
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.payment.config;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes {@link Transaction} without bean introspection, producing the same
+ * JSON as the annotated bean: fields in declaration order, nulls included,
+ * timestamps as {@code yyyy-MM-dd'T'HH:mm:ss}. Property names and status
+ * values are pre-encoded, and ids and timestamps are formatted into one
+ * scratch buffer instead of through {@code String}s.
+ *
+ * <p>With a cache, the encoded bytes of terminal transactions are kept per
+ * {@code (id, version)} and written back as a raw value. A refund bumps the
+ * version, so a stale encoding is never reused. Writers that pass over many
+ * transactions once, such as exports, set {@link #POPULATE_CACHE} to
+ * {@code false} so they read the cache without filling it.
+ */
+public class TransactionJsonSerializer extends StdSerializer<Transaction> {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public static final String POPULATE_CACHE = TransactionJsonSerializer.class.getName() + ".populateCache";
+    
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString MERCHANT_ID = new SerializedString("merchantId");
+    private static final SerializedString CUSTOMER_ID = new SerializedString("customerId");
+    private static final SerializedString AMOUNT = new SerializedString("amount");
+    private static final SerializedString CURRENCY = new SerializedString("currency");
+    private static final SerializedString PAYMENT_METHOD = new SerializedString("paymentMethod");
+    private static final SerializedString DESCRIPTION = new SerializedString("description");
+    private static final SerializedString STATUS = new SerializedString("status");
+    private static final SerializedString CREATED_AT = new SerializedString("createdAt");
+    private static final SerializedString UPDATED_AT = new SerializedString("updatedAt");
+    private static final SerializedString VERSION = new SerializedString("version");
+    
+    private static final Map<TransactionStatus, SerializedString> STATUS_VALUES =
+            new EnumMap<>(TransactionStatus.class);
+    
+    static {
+        for (TransactionStatus status : TransactionStatus.values()) {
+            STATUS_VALUES.put(status, new SerializedString(status.name()));
+        }
+    }
+    
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int UUID_LENGTH = 36;
+    private static final int TIMESTAMP_LENGTH = 19;
+    
+    private final transient Cache<UUID, CachedJson> cache;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    
+    /**
+     * @param cache encoded terminal transactions, or {@code null} to always
+     *              serialize
+     */
+    public TransactionJsonSerializer(Cache<UUID, CachedJson> cache) {
+        super(Transaction.class);
+        this.cache = cache;
+    }
+    
+    @Override
+    public void serialize(Transaction transaction, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (cache == null || gen.getPrettyPrinter() != null || transaction.getId() == null
+                || transaction.getStatus() == null || !transaction.getStatus().isTerminal()) {
+            write(transaction, gen);
+            return;
+        }
+        CachedJson cached = cache.getIfPresent(transaction.getId());
+        if (cached == null || !cached.matches(transaction.getVersion())) {
+            if (Boolean.FALSE.equals(provider.getAttribute(POPULATE_CACHE))) {
+                write(transaction, gen);
+                return;
+            }
+            cached = new CachedJson(transaction.getVersion(), encode(transaction));
+            cache.put(transaction.getId(), cached);
+        }
+        gen.writeRawValue(cached.json);
+    }
+    
+    private PrecomputedJson encode(Transaction transaction) throws IOException {
+        try (ByteArrayBuilder bytes = new ByteArrayBuilder(320);
+             JsonGenerator gen = jsonFactory.createGenerator(bytes, JsonEncoding.UTF8)) {
+            write(transaction, gen);
+            gen.flush();
+            return new PrecomputedJson(bytes.toByteArray());
+        }
+    }
+    
+    static void write(Transaction transaction, JsonGenerator gen) throws IOException {
+        char[] scratch = new char[UUID_LENGTH];
+        gen.writeStartObject(transaction);
+        gen.writeFieldName(ID);
+        if (transaction.getId() == null) {
+            gen.writeNull();
+        } else {
+            formatUuid(transaction.getId(), scratch);
+            gen.writeString(scratch, 0, UUID_LENGTH);
+        }
+        gen.writeFieldName(MERCHANT_ID);
+        gen.writeString(transaction.getMerchantId());
+        gen.writeFieldName(CUSTOMER_ID);
+        gen.writeString(transaction.getCustomerId());
+        gen.writeFieldName(AMOUNT);
+        gen.writeNumber(transaction.getAmount());
+        gen.writeFieldName(CURRENCY);
+        gen.writeString(transaction.getCurrency());
+        gen.writeFieldName(PAYMENT_METHOD);
+        gen.writeString(transaction.getPaymentMethod());
+        gen.writeFieldName(DESCRIPTION);
+        gen.writeString(transaction.getDescription());
+        gen.writeFieldName(STATUS);
+        if (transaction.getStatus() == null) {
+            gen.writeNull();
+        } else {
+            gen.writeString(STATUS_VALUES.get(transaction.getStatus()));
+        }
+        gen.writeFieldName(CREATED_AT);
+        writeTimestamp(transaction.getCreatedAt(), gen, scratch);
+        gen.writeFieldName(UPDATED_AT);
+        writeTimestamp(transaction.getUpdatedAt(), gen, scratch);
+        gen.writeFieldName(VERSION);
+        if (transaction.getVersion() == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(transaction.getVersion());
+        }
+        gen.writeEndObject();
+    }
+    
+    static void writeTimestamp(LocalDateTime timestamp, JsonGenerator gen, char[] scratch) throws IOException {
+        if (timestamp == null) {
+            gen.writeNull();
+            return;
+        }
+        int year = timestamp.getYear();
+        if (year < 0 || year > 9999) {
+            gen.writeString(TIMESTAMP_FORMAT.format(timestamp));
+            return;
+        }
+        digits(year, scratch, 0, 4);
+        scratch[4] = '-';
+        digits(timestamp.getMonthValue(), scratch, 5, 2);
+        scratch[7] = '-';
+        digits(timestamp.getDayOfMonth(), scratch, 8, 2);
+        scratch[10] = 'T';
+        digits(timestamp.getHour(), scratch, 11, 2);
+        scratch[13] = ':';
+        digits(timestamp.getMinute(), scratch, 14, 2);
+        scratch[16] = ':';
+        digits(timestamp.getSecond(), scratch, 17, 2);
+        gen.writeString(scratch, 0, TIMESTAMP_LENGTH);
+    }
+    
+    private static void digits(int value, char[] buffer, int offset, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+    
+    private static void formatUuid(UUID uuid, char[] buffer) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        hex(msb >>> 32, buffer, 0, 8);
+        buffer[8] = '-';
+        hex(msb >>> 16, buffer, 9, 4);
+        buffer[13] = '-';
+        hex(msb, buffer, 14, 4);
+        buffer[18] = '-';
+        hex(lsb >>> 48, buffer, 19, 4);
+        buffer[23] = '-';
+        hex(lsb, buffer, 24, 12);
+    }
+    
+    private static void hex(long value, char[] buffer, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+    
+    /**
+     * The encoding of one version of a terminal transaction.
+     */
+    public static final class CachedJson {
+        
+        private final Long version;
+        private final PrecomputedJson json;
+        
+        private CachedJson(Long version, PrecomputedJson json) {
+            this.version = version;
+            this.json = json;
+        }
+        
+        int size() {
+            return json.size();
+        }
+        
+        private boolean matches(Long currentVersion) {
+            return version == null ? currentVersion == null : version.equals(currentVersion);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.payment.controller;
+
+import com.example.payment.dto.ApiResponse;
+import com.example.payment.dto.ArchiveResult;
+import com.example.payment.dto.LayoutMigrationResult;
+import com.example.payment.dto.QueryPlanReport;
+import com.example.payment.dto.StorageReport;
+import com.example.payment.model.ArchiveSegment;
+import com.example.payment.model.RollupGranularity;
+import com.example.payment.service.MerchantTotalsService;
+import com.example.payment.service.QueryPlanVerifier;
+import com.example.payment.service.RollupService;
+import com.example.payment.service.TransactionArchive;
+import com.example.payment.service.TransactionLayoutMigration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/v1/admin")
+public class AdminController {
+    
+    private final MerchantTotalsService merchantTotalsService;
+    private final RollupService rollupService;
+    private final QueryPlanVerifier queryPlanVerifier;
+    private final TransactionLayoutMigration layoutMigration;
+    private final TransactionArchive transactionArchive;
+    
+    @Autowired
+    public AdminController(MerchantTotalsService merchantTotalsService, RollupService rollupService,
+                           QueryPlanVerifier queryPlanVerifier, TransactionLayoutMigration layoutMigration,
+                           TransactionArchive transactionArchive) {
+        this.merchantTotalsService = merchantTotalsService;
+        this.rollupService = rollupService;
+        this.queryPlanVerifier = queryPlanVerifier;
+        this.layoutMigration = layoutMigration;
+        this.transactionArchive = transactionArchive;
+    }
+    
+    @PostMapping("/merchant-totals/rebuild")
+    public ResponseEntity<ApiResponse<Void>> rebuildMerchantTotals() {
+        merchantTotalsService.rebuild();
+        return ResponseEntity.ok(ApiResponse.success("Merchant totals rebuilt", null));
+    }
+    
+    @PostMapping("/rollups/backfill")
+    public ResponseEntity<ApiResponse<Map<RollupGranularity, Long>>> backfillRollups(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            LocalDateTime endDate) {
+        return ResponseEntity.ok(ApiResponse.success("Transaction rollups backfilled",
+                rollupService.backfill(startDate, endDate)));
+    }
+    
+    @GetMapping("/query-plans")
+    public ResponseEntity<ApiResponse<List<QueryPlanReport>>> getQueryPlans() {
+        List<QueryPlanReport> reports = queryPlanVerifier.explainAll();
+        long scans = reports.stream().filter(QueryPlanReport::isCollectionScan).count();
+        if (scans > 0) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ApiResponse<>(false, scans + " queries use a collection scan", reports));
+        }
+        return ResponseEntity.ok(ApiResponse.success("All queries are index-backed", reports));
+    }
+    
+    @GetMapping("/storage")
+    public ResponseEntity<ApiResponse<StorageReport>> getStorageReport() {
+        return ResponseEntity.ok(ApiResponse.success(layoutMigration.storageReport()));
+    }
+    
+    @PostMapping("/migrations/transaction-layout")
+    public ResponseEntity<ApiResponse<LayoutMigrationResult>> migrateTransactionLayout(
+            @RequestParam(defaultValue = "1000") int batchSize,
+            @RequestParam(defaultValue = "9223372036854775807") long limit) {
+        if (batchSize < 1 || limit < 1) {
+            throw new IllegalArgumentException("batchSize and limit must be positive");
+        }
+        LayoutMigrationResult result = layoutMigration.migrate(batchSize, limit);
+        return ResponseEntity.ok(ApiResponse.success(result.getMigrated() + " transactions migrated, "
+                + result.getRemaining() + " remaining", result));
+    }
+    
+    @PostMapping("/archive")
+    public ResponseEntity<ApiResponse<ArchiveResult>> archiveTransactions() {
+        return transactionArchive.archive()
+                .map(result -> ResponseEntity.ok(ApiResponse.success(
+                        result.getArchived() + " transactions archived", result)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(ApiResponse.error("An archive run is already in progress")));
+    }
+    
+    @GetMapping("/archive/segments")
+    public ResponseEntity<ApiResponse<List<ArchiveSegment>>> getArchiveSegments() {
+        return ResponseEntity.ok(ApiResponse.success(transactionArchive.segments()));
+    }
+}
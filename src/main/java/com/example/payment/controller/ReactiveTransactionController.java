@@ -0,0 +1,242 @@
+package com.example.payment.controller;
+
+import com.example.payment.dto.ApiResponse;
+import com.example.payment.dto.CreateTransactionRequest;
+import com.example.payment.dto.CursorPage;
+import com.example.payment.dto.ReportRequest;
+import com.example.payment.dto.TransactionReport;
+import com.example.payment.dto.TransactionStats;
+import com.example.payment.dto.UpdateTransactionStatusRequest;
+import com.example.payment.model.RollupGranularity;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.example.payment.service.ReactiveTransactionService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/v1/transactions")
+public class ReactiveTransactionController {
+    
+    private final ReactiveTransactionService transactionService;
+    private final ReactiveTransactionEventStream eventStream;
+    
+    @Autowired
+    public ReactiveTransactionController(ReactiveTransactionService transactionService,
+                                         ReactiveTransactionEventStream eventStream) {
+        this.transactionService = transactionService;
+        this.eventStream = eventStream;
+    }
+    
+    @PostMapping
+    public Mono<ResponseEntity<ApiResponse<Transaction>>> createTransaction(
+            @Valid @RequestBody CreateTransactionRequest request) {
+        return transactionService.createTransaction(request)
+                .map(transaction -> ResponseEntity.status(transaction.getStatus() == TransactionStatus.PENDING
+                                ? HttpStatus.ACCEPTED : HttpStatus.CREATED)
+                        .body(ApiResponse.success("Transaction created successfully", transaction)))
+                .onErrorResume(e -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(ApiResponse.error("Failed to create transaction: " + e.getMessage()))));
+    }
+    
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ApiResponse<Transaction>>> getTransaction(
+            @PathVariable String id,
+            @RequestParam(required = false) String merchantId) {
+        return transactionService.getTransactionById(id, merchantId)
+                .map(transaction -> ResponseEntity.ok(ApiResponse.success(transaction)))
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Transaction not found")));
+    }
+    
+    @GetMapping(params = "page")
+    public Mono<ResponseEntity<ApiResponse<Page<Transaction>>>> getAllTransactions(
+            @RequestParam int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "createdAt") String sortBy,
+            @RequestParam(defaultValue = "desc") String sortDir) {
+        
+        Sort sort = sortDir.equalsIgnoreCase("desc")
+                ? Sort.by(sortBy).descending()
+                : Sort.by(sortBy).ascending();
+        
+        Pageable pageable = PageRequest.of(page, size, sort);
+        return transactionService.getAllTransactions(pageable)
+                .map(transactions -> ResponseEntity.ok(ApiResponse.success(transactions)));
+    }
+    
+    @GetMapping
+    public Mono<ResponseEntity<ApiResponse<CursorPage<Transaction>>>> getAllTransactionsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return transactionService.getAllTransactions(cursor, size, toDirection(sortDir), includeTotal)
+                .map(transactions -> ResponseEntity.ok(ApiResponse.success(transactions)));
+    }
+    
+    @GetMapping("/merchant/{merchantId}")
+    public Mono<ResponseEntity<ApiResponse<CursorPage<Transaction>>>> getTransactionsByMerchantAndCursor(
+            @PathVariable String merchantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return transactionService
+                .getTransactionsByMerchant(merchantId, cursor, size, toDirection(sortDir), includeTotal)
+                .map(transactions -> ResponseEntity.ok(ApiResponse.success(transactions)));
+    }
+    
+    @GetMapping(value = "/merchant/{merchantId}/export", produces = "application/x-ndjson")
+    public Flux<Transaction> exportTransactionsByMerchant(@PathVariable String merchantId) {
+        return transactionService.getTransactionsByMerchant(merchantId);
+    }
+    
+    @GetMapping("/customer/{customerId}")
+    public Mono<ResponseEntity<ApiResponse<CursorPage<Transaction>>>> getTransactionsByCustomerAndCursor(
+            @PathVariable String customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return transactionService
+                .getTransactionsByCustomer(customerId, cursor, size, toDirection(sortDir), includeTotal)
+                .map(transactions -> ResponseEntity.ok(ApiResponse.success(transactions)));
+    }
+    
+    @GetMapping(value = "/customer/{customerId}/export", produces = "application/x-ndjson")
+    public Flux<Transaction> exportTransactionsByCustomer(@PathVariable String customerId) {
+        return transactionService.getTransactionsByCustomer(customerId);
+    }
+    
+    @GetMapping("/status/{status}")
+    public Mono<ResponseEntity<ApiResponse<CursorPage<Transaction>>>> getTransactionsByStatusAndCursor(
+            @PathVariable TransactionStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return transactionService
+                .getTransactionsByStatus(status, cursor, size, toDirection(sortDir), includeTotal)
+                .map(transactions -> ResponseEntity.ok(ApiResponse.success(transactions)));
+    }
+    
+    @GetMapping(value = "/status/{status}/export", produces = "application/x-ndjson")
+    public Flux<Transaction> exportTransactionsByStatus(@PathVariable TransactionStatus status) {
+        return transactionService.getTransactionsByStatus(status);
+    }
+    
+    @PutMapping("/{id}/status")
+    public Mono<ResponseEntity<ApiResponse<Transaction>>> updateTransactionStatus(
+            @PathVariable String id,
+            @RequestParam(required = false) String merchantId,
+            @Valid @RequestBody UpdateTransactionStatusRequest request) {
+        return transactionService.updateTransactionStatus(id, request.getStatus(), request.getExpectedVersion(),
+                        merchantId)
+                .map(transaction -> ResponseEntity.ok(
+                        ApiResponse.success("Status updated successfully", transaction)))
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Transaction not found")));
+    }
+    
+    @GetMapping("/date-range")
+    public Mono<ResponseEntity<ApiResponse<List<Transaction>>>> getTransactionsByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return ok(transactionService.getTransactionsByDateRange(startDate, endDate));
+    }
+    
+    @GetMapping(value = "/date-range/export", produces = "application/x-ndjson")
+    public Flux<Transaction> exportTransactionsByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return transactionService.getTransactionsByDateRange(startDate, endDate);
+    }
+    
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamEvents(
+            @RequestParam(required = false) String merchantId,
+            @RequestParam(required = false) String transactionId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return eventStream.subscribe(merchantId, transactionId == null ? null : UUID.fromString(transactionId),
+                lastEventId);
+    }
+    
+    @GetMapping("/stats")
+    public Mono<ResponseEntity<ApiResponse<TransactionStats>>> getStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) String merchantId,
+            @RequestParam(required = false) TransactionStatus status,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) RollupGranularity granularity) {
+        return transactionService.getStats(merchantId, status, currency, startDate, endDate, granularity)
+                .map(stats -> ResponseEntity.ok(ApiResponse.success(stats)));
+    }
+    
+    @PostMapping("/reports")
+    public Mono<ResponseEntity<ApiResponse<TransactionReport>>> runReport(
+            @Valid @RequestBody ReportRequest request) {
+        return transactionService.runReport(request)
+                .map(report -> ResponseEntity.ok(ApiResponse.success(report)));
+    }
+    
+    @GetMapping("/merchant/{merchantId}/stats")
+    public Mono<ResponseEntity<ApiResponse<TransactionStats>>> getMerchantStats(
+            @PathVariable String merchantId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) TransactionStatus status,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) RollupGranularity granularity) {
+        return getStats(startDate, endDate, merchantId, status, currency, granularity);
+    }
+    
+    @GetMapping("/merchant/{merchantId}/total")
+    public Mono<ResponseEntity<ApiResponse<Map<String, BigDecimal>>>> getTotalAmountByMerchant(
+            @PathVariable String merchantId,
+            @RequestParam(defaultValue = "COMPLETED") TransactionStatus status) {
+        return transactionService.getTotalAmountByMerchantAndStatus(merchantId, status)
+                .map(totals -> ResponseEntity.ok(ApiResponse.success("Total amount calculated", totals)));
+    }
+    
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<ApiResponse<Void>>> deleteTransaction(
+            @PathVariable String id,
+            @RequestParam(required = false) String merchantId) {
+        return transactionService.deleteTransaction(id, merchantId)
+                .map(deleted -> deleted
+                        ? ResponseEntity.ok(ApiResponse.<Void>success("Transaction deleted successfully", null))
+                        : ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                .body(ApiResponse.<Void>error("Transaction not found")));
+    }
+    
+    private Mono<ResponseEntity<ApiResponse<List<Transaction>>>> ok(Flux<Transaction> transactions) {
+        return transactions.collectList()
+                .map(list -> ResponseEntity.ok(ApiResponse.success(list)));
+    }
+    
+    private Sort.Direction toDirection(String sortDir) {
+        return sortDir.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+    }
+}
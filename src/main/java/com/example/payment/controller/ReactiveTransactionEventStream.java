@@ -0,0 +1,73 @@
+package com.example.payment.controller;
+
+import com.example.payment.service.FeedSubscription;
+import com.example.payment.service.TransactionFeed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Delivers a {@link TransactionFeed} subscription as a {@link Flux} of
+ * server-sent events. Events are only emitted against downstream demand, so
+ * a slow client leaves them in its subscription buffer, where they coalesce
+ * and are eventually dropped, instead of queueing in the sink.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveTransactionEventStream {
+    
+    private final TransactionFeed transactionFeed;
+    
+    @Autowired
+    public ReactiveTransactionEventStream(TransactionFeed transactionFeed) {
+        this.transactionFeed = transactionFeed;
+    }
+    
+    public Flux<ServerSentEvent<Object>> subscribe(String merchantId, UUID transactionId, String lastEventId) {
+        return Flux.create(sink -> {
+            FeedSubscription subscription = transactionFeed.subscribe(merchantId, transactionId, lastEventId,
+                    pending -> drain(pending, sink));
+            sink.onRequest(demand -> drain(subscription, sink));
+            sink.onDispose(() -> transactionFeed.unsubscribe(subscription));
+        });
+    }
+    
+    private void drain(FeedSubscription subscription, FluxSink<ServerSentEvent<Object>> sink) {
+        if (!subscription.requestDrain()) {
+            return;
+        }
+        int passes = 1;
+        do {
+            long demand = sink.requestedFromDownstream();
+            if (demand > 0 && subscription.takeReset()) {
+                sink.next(ServerSentEvent.builder()
+                        .event("reset")
+                        .data((Object) Map.of("message", "Resume point expired, re-read current state"))
+                        .build());
+                demand--;
+            }
+            if (demand > 0) {
+                long dropped = subscription.takeDropped();
+                if (dropped > 0) {
+                    sink.next(ServerSentEvent.builder().event("overflow").data((Object) Map.of("dropped", dropped))
+                            .build());
+                    demand--;
+                }
+            }
+            for (FeedSubscription.Entry entry : subscription.poll((int) Math.min(demand, Integer.MAX_VALUE))) {
+                sink.next(ServerSentEvent.builder().id(entry.getId()).data((Object) entry.getEvent()).build());
+                demand--;
+            }
+            if (demand > 0 && subscription.takeHeartbeat()) {
+                sink.next(ServerSentEvent.builder().comment("heartbeat").build());
+            }
+            passes = subscription.finishDrain(passes);
+        } while (passes != 0);
+    }
+}
@@ -1,54 +1,120 @@
 package com.example.payment.controller;
 
 import com.example.payment.dto.ApiResponse;
+import com.example.payment.dto.BatchCreateTransactionRequest;
+import com.example.payment.dto.BatchCreateTransactionResponse;
+import com.example.payment.dto.BatchItemResult;
 import com.example.payment.dto.CreateTransactionRequest;
+import com.example.payment.dto.CursorPage;
+import com.example.payment.dto.IdempotentResponse;
+import com.example.payment.dto.ReportRequest;
+import com.example.payment.dto.TransactionReport;
+import com.example.payment.dto.TransactionStats;
 import com.example.payment.dto.UpdateTransactionStatusRequest;
+import com.example.payment.exception.MongoCapacityExceededException;
+import com.example.payment.model.RollupGranularity;
 import com.example.payment.model.Transaction;
 import com.example.payment.model.TransactionStatus;
+import com.example.payment.service.IdempotencyService;
+import com.example.payment.service.ReportService;
 import com.example.payment.service.TransactionService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/v1/transactions")
 public class TransactionController {
     
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    static final String LAST_EVENT_ID = "Last-Event-ID";
+    
     private final TransactionService transactionService;
+    private final TransactionExportWriter exportWriter;
+    private final IdempotencyService idempotencyService;
+    private final TransactionEventEmitter eventEmitter;
+    private final ReportService reportService;
     
     @Autowired
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService,
+                                 TransactionExportWriter exportWriter,
+                                 IdempotencyService idempotencyService,
+                                 TransactionEventEmitter eventEmitter,
+                                 ReportService reportService) {
         this.transactionService = transactionService;
+        this.exportWriter = exportWriter;
+        this.idempotencyService = idempotencyService;
+        this.eventEmitter = eventEmitter;
+        this.reportService = reportService;
     }
     
     @PostMapping
     public ResponseEntity<ApiResponse<Transaction>> createTransaction(
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
             @Valid @RequestBody CreateTransactionRequest request) {
+        if (idempotencyKey == null) {
+            IdempotentResponse<Transaction> response = create(request);
+            return ResponseEntity.status(response.getStatusCode()).body(response.getBody());
+        }
+        IdempotentResponse<Transaction> response =
+                idempotencyService.execute(idempotencyKey, request, () -> create(request));
+        return ResponseEntity.status(response.getStatusCode())
+                .header(IDEMPOTENT_REPLAYED, String.valueOf(response.isReplayed()))
+                .body(response.getBody());
+    }
+    
+    private IdempotentResponse<Transaction> create(CreateTransactionRequest request) {
         try {
             Transaction transaction = transactionService.createTransaction(request);
-            return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(ApiResponse.success("Transaction created successfully", transaction));
+            HttpStatus status = transaction.getStatus() == TransactionStatus.PENDING
+                    ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+            return new IdempotentResponse<>(status.value(),
+                    ApiResponse.success("Transaction created successfully", transaction));
+        } catch (MongoCapacityExceededException e) {
+            // answered with 503 and Retry-After by the exception handler
+            throw e;
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error("Failed to create transaction: " + e.getMessage()));
+            return new IdempotentResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    ApiResponse.error("Failed to create transaction: " + e.getMessage()));
         }
     }
     
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<BatchCreateTransactionResponse>> createTransactions(
+            @Valid @RequestBody BatchCreateTransactionRequest request) {
+        List<BatchItemResult> results = transactionService.createTransactions(request.getTransactions());
+        BatchCreateTransactionResponse response = new BatchCreateTransactionResponse(results);
+        HttpStatus status = response.getFailed() == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status)
+                .body(ApiResponse.success(response.getSucceeded() + " of " + response.getTotal()
+                        + " transactions created", response));
+    }
+    
     @GetMapping("/{id}")
-    public ResponseEntity<ApiResponse<Transaction>> getTransaction(@PathVariable String id) {
-        Optional<Transaction> transaction = transactionService.getTransactionById(id);
+    public ResponseEntity<ApiResponse<Transaction>> getTransaction(
+            @PathVariable String id,
+            @RequestParam(required = false) String merchantId) {
+        Optional<Transaction> transaction = transactionService.getTransactionById(id, merchantId);
         if (transaction.isPresent()) {
             return ResponseEntity.ok(ApiResponse.success(transaction.get()));
         } else {
@@ -57,9 +123,9 @@ public class TransactionController {
         }
     }
     
-    @GetMapping
+    @GetMapping(params = "page")
     public ResponseEntity<ApiResponse<Page<Transaction>>> getAllTransactions(
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
             @RequestParam(defaultValue = "desc") String sortDir) {
@@ -74,34 +140,93 @@ public class TransactionController {
         return ResponseEntity.ok(ApiResponse.success(transactions));
     }
     
+    @GetMapping
+    public ResponseEntity<ApiResponse<CursorPage<Transaction>>> getAllTransactionsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        CursorPage<Transaction> transactions = transactionService
+                .getAllTransactions(cursor, size, toDirection(sortDir), includeTotal);
+        return ResponseEntity.ok(ApiResponse.success(transactions));
+    }
+    
     @GetMapping("/merchant/{merchantId}")
-    public ResponseEntity<ApiResponse<List<Transaction>>> getTransactionsByMerchant(
-            @PathVariable String merchantId) {
-        List<Transaction> transactions = transactionService.getTransactionsByMerchant(merchantId);
+    public ResponseEntity<ApiResponse<CursorPage<Transaction>>> getTransactionsByMerchantAndCursor(
+            @PathVariable String merchantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        CursorPage<Transaction> transactions = transactionService
+                .getTransactionsByMerchant(merchantId, cursor, size, toDirection(sortDir), includeTotal);
         return ResponseEntity.ok(ApiResponse.success(transactions));
     }
     
+    @GetMapping("/merchant/{merchantId}/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactionsByMerchant(
+            @PathVariable String merchantId,
+            @RequestParam(defaultValue = "NDJSON") TransactionExportWriter.ExportFormat format) {
+        return exportWriter.export(format, transactionService.getExportBatchSize(),
+                () -> transactionService.streamTransactionsByMerchant(merchantId));
+    }
+    
     @GetMapping("/customer/{customerId}")
-    public ResponseEntity<ApiResponse<List<Transaction>>> getTransactionsByCustomer(
-            @PathVariable String customerId) {
-        List<Transaction> transactions = transactionService.getTransactionsByCustomer(customerId);
+    public ResponseEntity<ApiResponse<CursorPage<Transaction>>> getTransactionsByCustomerAndCursor(
+            @PathVariable String customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        CursorPage<Transaction> transactions = transactionService
+                .getTransactionsByCustomer(customerId, cursor, size, toDirection(sortDir), includeTotal);
         return ResponseEntity.ok(ApiResponse.success(transactions));
     }
     
-    @GetMapping("/status/{status}")
+    @GetMapping("/customer/{customerId}/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactionsByCustomer(
+            @PathVariable String customerId,
+            @RequestParam(defaultValue = "NDJSON") TransactionExportWriter.ExportFormat format) {
+        return exportWriter.export(format, transactionService.getExportBatchSize(),
+                () -> transactionService.streamTransactionsByCustomer(customerId));
+    }
+    
+    @GetMapping(value = "/status/{status}", params = "limit")
     public ResponseEntity<ApiResponse<List<Transaction>>> getTransactionsByStatus(
-            @PathVariable TransactionStatus status) {
-        List<Transaction> transactions = transactionService.getTransactionsByStatus(status);
+            @PathVariable TransactionStatus status,
+            @RequestParam int limit) {
+        List<Transaction> transactions = transactionService.getTransactionsByStatus(status, limit);
+        return ResponseEntity.ok(ApiResponse.success(transactions));
+    }
+    
+    @GetMapping("/status/{status}")
+    public ResponseEntity<ApiResponse<CursorPage<Transaction>>> getTransactionsByStatusAndCursor(
+            @PathVariable TransactionStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        CursorPage<Transaction> transactions = transactionService
+                .getTransactionsByStatus(status, cursor, size, toDirection(sortDir), includeTotal);
         return ResponseEntity.ok(ApiResponse.success(transactions));
     }
     
+    @GetMapping("/status/{status}/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactionsByStatus(
+            @PathVariable TransactionStatus status,
+            @RequestParam(defaultValue = "NDJSON") TransactionExportWriter.ExportFormat format) {
+        return exportWriter.export(format, transactionService.getExportBatchSize(),
+                () -> transactionService.streamTransactionsByStatus(status));
+    }
+    
     @PutMapping("/{id}/status")
     public ResponseEntity<ApiResponse<Transaction>> updateTransactionStatus(
             @PathVariable String id,
+            @RequestParam(required = false) String merchantId,
             @Valid @RequestBody UpdateTransactionStatusRequest request) {
         
         Optional<Transaction> updatedTransaction = transactionService
-                .updateTransactionStatus(id, request.getStatus());
+                .updateTransactionStatus(id, request.getStatus(), request.getExpectedVersion(), merchantId);
         
         if (updatedTransaction.isPresent()) {
             return ResponseEntity.ok(ApiResponse.success("Status updated successfully", 
@@ -115,24 +240,74 @@ public class TransactionController {
     @GetMapping("/date-range")
     public ResponseEntity<ApiResponse<List<Transaction>>> getTransactionsByDateRange(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) Integer limit) {
         
-        List<Transaction> transactions = transactionService.getTransactionsByDateRange(startDate, endDate);
+        List<Transaction> transactions = transactionService.getTransactionsByDateRange(startDate, endDate, limit);
         return ResponseEntity.ok(ApiResponse.success(transactions));
     }
     
+    @GetMapping("/date-range/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactionsByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "NDJSON") TransactionExportWriter.ExportFormat format) {
+        return exportWriter.export(format, transactionService.getExportBatchSize(),
+                () -> transactionService.streamTransactionsByDateRange(startDate, endDate));
+    }
+    
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @RequestParam(required = false) String merchantId,
+            @RequestParam(required = false) String transactionId,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId) {
+        return eventEmitter.subscribe(merchantId, transactionId == null ? null : UUID.fromString(transactionId),
+                lastEventId);
+    }
+    
+    @GetMapping("/stats")
+    public ResponseEntity<ApiResponse<TransactionStats>> getStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) String merchantId,
+            @RequestParam(required = false) TransactionStatus status,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) RollupGranularity granularity) {
+        TransactionStats stats = transactionService.getStats(merchantId, status, currency, startDate, endDate,
+                granularity);
+        return ResponseEntity.ok(ApiResponse.success(stats));
+    }
+    
+    @PostMapping("/reports")
+    public ResponseEntity<ApiResponse<TransactionReport>> runReport(@Valid @RequestBody ReportRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(reportService.run(request)));
+    }
+    
+    @GetMapping("/merchant/{merchantId}/stats")
+    public ResponseEntity<ApiResponse<TransactionStats>> getMerchantStats(
+            @PathVariable String merchantId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) TransactionStatus status,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) RollupGranularity granularity) {
+        return getStats(startDate, endDate, merchantId, status, currency, granularity);
+    }
+    
     @GetMapping("/merchant/{merchantId}/total")
-    public ResponseEntity<ApiResponse<BigDecimal>> getTotalAmountByMerchant(
+    public ResponseEntity<ApiResponse<Map<String, BigDecimal>>> getTotalAmountByMerchant(
             @PathVariable String merchantId,
             @RequestParam(defaultValue = "COMPLETED") TransactionStatus status) {
         
-        BigDecimal total = transactionService.getTotalAmountByMerchantAndStatus(merchantId, status);
-        return ResponseEntity.ok(ApiResponse.success("Total amount calculated", total));
+        Map<String, BigDecimal> totals = transactionService.getTotalAmountByMerchantAndStatus(merchantId, status);
+        return ResponseEntity.ok(ApiResponse.success("Total amount calculated", totals));
     }
     
     @DeleteMapping("/{id}")
-    public ResponseEntity<ApiResponse<Void>> deleteTransaction(@PathVariable String id) {
-        boolean deleted = transactionService.deleteTransaction(id);
+    public ResponseEntity<ApiResponse<Void>> deleteTransaction(
+            @PathVariable String id,
+            @RequestParam(required = false) String merchantId) {
+        boolean deleted = transactionService.deleteTransaction(id, merchantId);
         if (deleted) {
             return ResponseEntity.ok(ApiResponse.success("Transaction deleted successfully", null));
         } else {
@@ -140,4 +315,8 @@ public class TransactionController {
                     .body(ApiResponse.error("Transaction not found"));
         }
     }
+    
+    private Sort.Direction toDirection(String sortDir) {
+        return sortDir.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+    }
 }
@@ -0,0 +1,97 @@
+package com.example.payment.controller;
+
+import com.example.payment.service.FeedSubscription;
+import com.example.payment.service.TransactionFeed;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Delivers a {@link TransactionFeed} subscription over an {@link SseEmitter}.
+ * Each drain runs on its own virtual thread rather than on the publishing
+ * thread or a bounded pool, so a client whose sends block only holds up its
+ * own buffer, which coalesces and then drops events while it waits.
+ */
+@Component
+@Profile("!reactive")
+public class TransactionEventEmitter {
+    
+    private final TransactionFeed transactionFeed;
+    private final ExecutorService dispatcher;
+    private final Duration timeout;
+    
+    @Autowired
+    public TransactionEventEmitter(TransactionFeed transactionFeed,
+                                   @Value("${payment.feed.timeout:30m}") Duration timeout) {
+        this.transactionFeed = transactionFeed;
+        this.timeout = timeout;
+        this.dispatcher = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("feed-dispatch-", 0).factory());
+    }
+    
+    public SseEmitter subscribe(String merchantId, UUID transactionId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        FeedSubscription subscription = transactionFeed.subscribe(merchantId, transactionId, lastEventId,
+                pending -> schedule(pending, emitter));
+        emitter.onCompletion(() -> transactionFeed.unsubscribe(subscription));
+        emitter.onTimeout(() -> transactionFeed.unsubscribe(subscription));
+        emitter.onError(error -> transactionFeed.unsubscribe(subscription));
+        return emitter;
+    }
+    
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+    }
+    
+    private void schedule(FeedSubscription subscription, SseEmitter emitter) {
+        if (!subscription.requestDrain()) {
+            return;
+        }
+        try {
+            dispatcher.execute(() -> drain(subscription, emitter));
+        } catch (RejectedExecutionException e) {
+            transactionFeed.unsubscribe(subscription);
+        }
+    }
+    
+    private void drain(FeedSubscription subscription, SseEmitter emitter) {
+        int passes = 1;
+        do {
+            try {
+                if (subscription.takeReset()) {
+                    emitter.send(SseEmitter.event().name("reset")
+                            .data(Map.of("message", "Resume point expired, re-read current state")));
+                }
+                long dropped = subscription.takeDropped();
+                if (dropped > 0) {
+                    emitter.send(SseEmitter.event().name("overflow").data(Map.of("dropped", dropped)));
+                }
+                for (FeedSubscription.Entry entry : subscription.poll(Integer.MAX_VALUE)) {
+                    emitter.send(SseEmitter.event().id(entry.getId())
+                            .data(entry.getEvent(), MediaType.APPLICATION_JSON));
+                }
+                if (subscription.takeHeartbeat()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // client gone or emitter already completed; the drain counter stays raised so
+                // no further drain is scheduled for this subscription
+                transactionFeed.unsubscribe(subscription);
+                return;
+            }
+            passes = subscription.finishDrain(passes);
+        } while (passes != 0);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.payment.controller;
+
+import com.example.payment.config.TransactionJsonSerializer;
+import com.example.payment.model.Transaction;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes a Mongo cursor straight to the response body, either as NDJSON (one
+ * transaction per line) or as a chunked {@code ApiResponse} whose {@code data}
+ * array is emitted element by element. Only the current cursor batch is held
+ * in memory; the blocking servlet output stream throttles the cursor when the
+ * client reads slowly.
+ */
+@Component
+public class TransactionExportWriter {
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter transactionWriter;
+
+    @Autowired
+    public TransactionExportWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.transactionWriter = objectMapper.writerFor(Transaction.class)
+                .withAttribute(TransactionJsonSerializer.POPULATE_CACHE, false)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(SerializationFeature.CLOSE_CLOSEABLE);
+    }
+
+    public ResponseEntity<StreamingResponseBody> export(ExportFormat format, int flushEvery,
+                                                        Supplier<Stream<Transaction>> source) {
+        StreamingResponseBody body = format == ExportFormat.NDJSON
+                ? out -> writeNdjson(out, flushEvery, source)
+                : out -> writeJson(out, flushEvery, source);
+        MediaType contentType = format == ExportFormat.NDJSON ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+        return ResponseEntity.ok().contentType(contentType).body(body);
+    }
+
+    private void writeNdjson(OutputStream out, int flushEvery, Supplier<Stream<Transaction>> source)
+            throws IOException {
+        try (Stream<Transaction> transactions = source.get();
+             JsonGenerator generator = newGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            Iterator<Transaction> iterator = transactions.iterator();
+            int pending = 0;
+            while (iterator.hasNext()) {
+                transactionWriter.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+                if (++pending >= flushEvery) {
+                    generator.flush();
+                    pending = 0;
+                }
+            }
+            generator.flush();
+        }
+    }
+
+    private void writeJson(OutputStream out, int flushEvery, Supplier<Stream<Transaction>> source)
+            throws IOException {
+        try (Stream<Transaction> transactions = source.get();
+             JsonGenerator generator = newGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeBooleanField("success", true);
+            generator.writeStringField("message", "Success");
+            generator.writeArrayFieldStart("data");
+            Iterator<Transaction> iterator = transactions.iterator();
+            int pending = 0;
+            while (iterator.hasNext()) {
+                transactionWriter.writeValue(generator, iterator.next());
+                if (++pending >= flushEvery) {
+                    generator.flush();
+                    pending = 0;
+                }
+            }
+            generator.writeEndArray();
+            generator.writeStringField("timestamp", LocalDateTime.now().format(TIMESTAMP_FORMAT));
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+
+    private JsonGenerator newGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    public enum ExportFormat {
+        NDJSON,
+        JSON
+    }
+}
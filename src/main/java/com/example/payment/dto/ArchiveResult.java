@@ -0,0 +1,54 @@
+package com.example.payment.dto;
+
+import java.util.List;
+
+public class ArchiveResult {
+    
+    private long scanned;
+    private long archived;
+    private long changed;
+    private long failed;
+    private List<String> segments;
+    
+    public ArchiveResult() {}
+    
+    public long getScanned() {
+        return scanned;
+    }
+    
+    public void setScanned(long scanned) {
+        this.scanned = scanned;
+    }
+    
+    public long getArchived() {
+        return archived;
+    }
+    
+    public void setArchived(long archived) {
+        this.archived = archived;
+    }
+    
+    public long getChanged() {
+        return changed;
+    }
+    
+    public void setChanged(long changed) {
+        this.changed = changed;
+    }
+    
+    public long getFailed() {
+        return failed;
+    }
+    
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+    
+    public List<String> getSegments() {
+        return segments;
+    }
+    
+    public void setSegments(List<String> segments) {
+        this.segments = segments;
+    }
+}
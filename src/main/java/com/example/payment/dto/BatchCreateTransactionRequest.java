@@ -0,0 +1,29 @@
+package com.example.payment.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BatchCreateTransactionRequest {
+    
+    public static final int MAX_BATCH_SIZE = 10000;
+    
+    @NotEmpty(message = "At least one transaction is required")
+    @Size(max = MAX_BATCH_SIZE, message = "A batch may contain at most " + MAX_BATCH_SIZE + " transactions")
+    private List<CreateTransactionRequest> transactions;
+    
+    public BatchCreateTransactionRequest() {}
+    
+    public BatchCreateTransactionRequest(List<CreateTransactionRequest> transactions) {
+        this.transactions = transactions;
+    }
+    
+    public List<CreateTransactionRequest> getTransactions() {
+        return transactions;
+    }
+    
+    public void setTransactions(List<CreateTransactionRequest> transactions) {
+        this.transactions = transactions;
+    }
+}
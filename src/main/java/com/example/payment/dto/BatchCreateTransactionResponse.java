@@ -0,0 +1,52 @@
+package com.example.payment.dto;
+
+import java.util.List;
+
+public class BatchCreateTransactionResponse {
+    
+    private int total;
+    private int succeeded;
+    private int failed;
+    private List<BatchItemResult> results;
+    
+    public BatchCreateTransactionResponse() {}
+    
+    public BatchCreateTransactionResponse(List<BatchItemResult> results) {
+        this.results = results;
+        this.total = results.size();
+        this.succeeded = (int) results.stream().filter(BatchItemResult::isSuccess).count();
+        this.failed = total - succeeded;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public void setTotal(int total) {
+        this.total = total;
+    }
+    
+    public int getSucceeded() {
+        return succeeded;
+    }
+    
+    public void setSucceeded(int succeeded) {
+        this.succeeded = succeeded;
+    }
+    
+    public int getFailed() {
+        return failed;
+    }
+    
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+    
+    public List<BatchItemResult> getResults() {
+        return results;
+    }
+    
+    public void setResults(List<BatchItemResult> results) {
+        this.results = results;
+    }
+}
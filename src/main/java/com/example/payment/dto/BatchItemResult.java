@@ -0,0 +1,72 @@
+package com.example.payment.dto;
+
+import com.example.payment.model.TransactionStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    
+    private int index;
+    private boolean success;
+    private String transactionId;
+    private TransactionStatus status;
+    private String error;
+    
+    public BatchItemResult() {}
+    
+    public BatchItemResult(int index, boolean success, String transactionId, TransactionStatus status, String error) {
+        this.index = index;
+        this.success = success;
+        this.transactionId = transactionId;
+        this.status = status;
+        this.error = error;
+    }
+    
+    public static BatchItemResult created(int index, String transactionId, TransactionStatus status) {
+        return new BatchItemResult(index, true, transactionId, status, null);
+    }
+    
+    public static BatchItemResult failed(int index, String error) {
+        return new BatchItemResult(index, false, null, null, error);
+    }
+    
+    public int getIndex() {
+        return index;
+    }
+    
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    
+    public boolean isSuccess() {
+        return success;
+    }
+    
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+    
+    public String getTransactionId() {
+        return transactionId;
+    }
+    
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+    
+    public TransactionStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
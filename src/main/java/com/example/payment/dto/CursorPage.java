@@ -0,0 +1,66 @@
+package com.example.payment.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+public class CursorPage<T> {
+    
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long totalElements;
+    
+    public CursorPage() {}
+    
+    public CursorPage(List<T> content, int size, boolean hasNext, String nextCursor, Long totalElements) {
+        this.content = content;
+        this.size = size;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+        this.totalElements = totalElements;
+    }
+    
+    public List<T> getContent() {
+        return content;
+    }
+    
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public void setSize(int size) {
+        this.size = size;
+    }
+    
+    public boolean isHasNext() {
+        return hasNext;
+    }
+    
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public Long getTotalElements() {
+        return totalElements;
+    }
+    
+    public void setTotalElements(Long totalElements) {
+        this.totalElements = totalElements;
+    }
+}
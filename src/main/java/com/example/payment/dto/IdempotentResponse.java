@@ -0,0 +1,48 @@
+package com.example.payment.dto;
+
+/**
+ * A response captured for an idempotency key, together with the fingerprint
+ * of the request that produced it.
+ */
+public class IdempotentResponse<T> {
+    
+    private final String requestHash;
+    private final int statusCode;
+    private final ApiResponse<T> body;
+    private final boolean replayed;
+    
+    public IdempotentResponse(int statusCode, ApiResponse<T> body) {
+        this(null, statusCode, body, false);
+    }
+    
+    public IdempotentResponse(String requestHash, int statusCode, ApiResponse<T> body, boolean replayed) {
+        this.requestHash = requestHash;
+        this.statusCode = statusCode;
+        this.body = body;
+        this.replayed = replayed;
+    }
+    
+    public IdempotentResponse<T> forRequest(String requestHash) {
+        return new IdempotentResponse<>(requestHash, statusCode, body, replayed);
+    }
+    
+    public IdempotentResponse<T> asReplay() {
+        return replayed ? this : new IdempotentResponse<>(requestHash, statusCode, body, true);
+    }
+    
+    public String getRequestHash() {
+        return requestHash;
+    }
+    
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    public ApiResponse<T> getBody() {
+        return body;
+    }
+    
+    public boolean isReplayed() {
+        return replayed;
+    }
+}
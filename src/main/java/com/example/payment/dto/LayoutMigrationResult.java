@@ -0,0 +1,81 @@
+package com.example.payment.dto;
+
+import java.util.List;
+
+public class LayoutMigrationResult {
+    
+    private long scanned;
+    private long migrated;
+    private long alreadyMigrated;
+    private long failed;
+    private long remaining;
+    private List<String> droppedIndexes;
+    private StorageReport before;
+    private StorageReport after;
+    
+    public LayoutMigrationResult() {}
+    
+    public long getScanned() {
+        return scanned;
+    }
+    
+    public void setScanned(long scanned) {
+        this.scanned = scanned;
+    }
+    
+    public long getMigrated() {
+        return migrated;
+    }
+    
+    public void setMigrated(long migrated) {
+        this.migrated = migrated;
+    }
+    
+    public long getAlreadyMigrated() {
+        return alreadyMigrated;
+    }
+    
+    public void setAlreadyMigrated(long alreadyMigrated) {
+        this.alreadyMigrated = alreadyMigrated;
+    }
+    
+    public long getFailed() {
+        return failed;
+    }
+    
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+    
+    public long getRemaining() {
+        return remaining;
+    }
+    
+    public void setRemaining(long remaining) {
+        this.remaining = remaining;
+    }
+    
+    public List<String> getDroppedIndexes() {
+        return droppedIndexes;
+    }
+    
+    public void setDroppedIndexes(List<String> droppedIndexes) {
+        this.droppedIndexes = droppedIndexes;
+    }
+    
+    public StorageReport getBefore() {
+        return before;
+    }
+    
+    public void setBefore(StorageReport before) {
+        this.before = before;
+    }
+    
+    public StorageReport getAfter() {
+        return after;
+    }
+    
+    public void setAfter(StorageReport after) {
+        this.after = after;
+    }
+}
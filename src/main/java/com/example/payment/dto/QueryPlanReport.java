@@ -0,0 +1,72 @@
+package com.example.payment.dto;
+
+import java.util.List;
+
+public class QueryPlanReport {
+    
+    private String query;
+    private String filter;
+    private String sort;
+    private List<String> stages;
+    private List<String> indexes;
+    private boolean collectionScan;
+    
+    public QueryPlanReport() {}
+    
+    public QueryPlanReport(String query, String filter, String sort, List<String> stages, List<String> indexes) {
+        this.query = query;
+        this.filter = filter;
+        this.sort = sort;
+        this.stages = stages;
+        this.indexes = indexes;
+        this.collectionScan = stages.contains("COLLSCAN");
+    }
+    
+    public String getQuery() {
+        return query;
+    }
+    
+    public void setQuery(String query) {
+        this.query = query;
+    }
+    
+    public String getFilter() {
+        return filter;
+    }
+    
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+    
+    public String getSort() {
+        return sort;
+    }
+    
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+    
+    public List<String> getStages() {
+        return stages;
+    }
+    
+    public void setStages(List<String> stages) {
+        this.stages = stages;
+    }
+    
+    public List<String> getIndexes() {
+        return indexes;
+    }
+    
+    public void setIndexes(List<String> indexes) {
+        this.indexes = indexes;
+    }
+    
+    public boolean isCollectionScan() {
+        return collectionScan;
+    }
+    
+    public void setCollectionScan(boolean collectionScan) {
+        this.collectionScan = collectionScan;
+    }
+}
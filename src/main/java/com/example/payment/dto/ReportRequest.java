@@ -0,0 +1,142 @@
+package com.example.payment.dto;
+
+import com.example.payment.model.ReportDimension;
+import com.example.payment.model.ReportMetric;
+import com.example.payment.model.RollupGranularity;
+import com.example.payment.model.TransactionStatus;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A report over the transactions created in {@code [startDate, endDate)}:
+ * optional filters, the dimensions to group by, an optional time bucket and
+ * the metrics to compute per group. Without group keys or a granularity the
+ * report is a single row over every matching transaction.
+ */
+public class ReportRequest {
+    
+    @NotNull(message = "Start date is required")
+    private LocalDateTime startDate;
+    
+    @NotNull(message = "End date is required")
+    private LocalDateTime endDate;
+    
+    private String merchantId;
+    private String customerId;
+    private List<@NotNull(message = "Statuses must not contain null") TransactionStatus> statuses;
+    private String currency;
+    private String paymentMethod;
+    
+    private List<@NotNull(message = "Group keys must not contain null") ReportDimension> groupBy;
+    private RollupGranularity granularity;
+    
+    @NotEmpty(message = "At least one metric is required")
+    private List<@NotNull(message = "Metrics must not contain null") ReportMetric> metrics;
+    
+    @Positive(message = "Limit must be positive")
+    private Integer limit;
+    
+    private boolean allowDiskUse;
+    
+    public ReportRequest() {}
+    
+    public LocalDateTime getStartDate() {
+        return startDate;
+    }
+    
+    public void setStartDate(LocalDateTime startDate) {
+        this.startDate = startDate;
+    }
+    
+    public LocalDateTime getEndDate() {
+        return endDate;
+    }
+    
+    public void setEndDate(LocalDateTime endDate) {
+        this.endDate = endDate;
+    }
+    
+    public String getMerchantId() {
+        return merchantId;
+    }
+    
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+    
+    public String getCustomerId() {
+        return customerId;
+    }
+    
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+    
+    public List<TransactionStatus> getStatuses() {
+        return statuses;
+    }
+    
+    public void setStatuses(List<TransactionStatus> statuses) {
+        this.statuses = statuses;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+    
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+    
+    public void setPaymentMethod(String paymentMethod) {
+        this.paymentMethod = paymentMethod;
+    }
+    
+    public List<ReportDimension> getGroupBy() {
+        return groupBy;
+    }
+    
+    public void setGroupBy(List<ReportDimension> groupBy) {
+        this.groupBy = groupBy;
+    }
+    
+    public RollupGranularity getGranularity() {
+        return granularity;
+    }
+    
+    public void setGranularity(RollupGranularity granularity) {
+        this.granularity = granularity;
+    }
+    
+    public List<ReportMetric> getMetrics() {
+        return metrics;
+    }
+    
+    public void setMetrics(List<ReportMetric> metrics) {
+        this.metrics = metrics;
+    }
+    
+    public Integer getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+    
+    public boolean isAllowDiskUse() {
+        return allowDiskUse;
+    }
+    
+    public void setAllowDiskUse(boolean allowDiskUse) {
+        this.allowDiskUse = allowDiskUse;
+    }
+}
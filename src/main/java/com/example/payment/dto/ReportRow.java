@@ -0,0 +1,117 @@
+package com.example.payment.dto;
+
+import com.example.payment.model.TransactionStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One group of a {@link TransactionReport}. Only the keys the report groups
+ * by and the metrics it asked for are set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReportRow {
+    
+    private String merchantId;
+    private String customerId;
+    private TransactionStatus status;
+    private String currency;
+    private String paymentMethod;
+    private LocalDateTime bucketStart;
+    private Long count;
+    private BigDecimal sum;
+    private BigDecimal avg;
+    private BigDecimal min;
+    private BigDecimal max;
+    
+    public ReportRow() {}
+    
+    public String getMerchantId() {
+        return merchantId;
+    }
+    
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+    
+    public String getCustomerId() {
+        return customerId;
+    }
+    
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+    
+    public TransactionStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+    
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+    
+    public void setPaymentMethod(String paymentMethod) {
+        this.paymentMethod = paymentMethod;
+    }
+    
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+    
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+    
+    public Long getCount() {
+        return count;
+    }
+    
+    public void setCount(Long count) {
+        this.count = count;
+    }
+    
+    public BigDecimal getSum() {
+        return sum;
+    }
+    
+    public void setSum(BigDecimal sum) {
+        this.sum = sum;
+    }
+    
+    public BigDecimal getAvg() {
+        return avg;
+    }
+    
+    public void setAvg(BigDecimal avg) {
+        this.avg = avg;
+    }
+    
+    public BigDecimal getMin() {
+        return min;
+    }
+    
+    public void setMin(BigDecimal min) {
+        this.min = min;
+    }
+    
+    public BigDecimal getMax() {
+        return max;
+    }
+    
+    public void setMax(BigDecimal max) {
+        this.max = max;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.payment.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public class StatsBucket {
+    
+    private LocalDateTime bucketStart;
+    private String currency;
+    private long count;
+    private BigDecimal sum;
+    private BigDecimal min;
+    private BigDecimal max;
+    
+    public StatsBucket() {}
+    
+    public StatsBucket(LocalDateTime bucketStart, String currency, long count, BigDecimal sum,
+                       BigDecimal min, BigDecimal max) {
+        this.bucketStart = bucketStart;
+        this.currency = currency;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+    
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+    
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public void setCount(long count) {
+        this.count = count;
+    }
+    
+    public BigDecimal getSum() {
+        return sum;
+    }
+    
+    public void setSum(BigDecimal sum) {
+        this.sum = sum;
+    }
+    
+    public BigDecimal getMin() {
+        return min;
+    }
+    
+    public void setMin(BigDecimal min) {
+        this.min = min;
+    }
+    
+    public BigDecimal getMax() {
+        return max;
+    }
+    
+    public void setMax(BigDecimal max) {
+        this.max = max;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.payment.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+/**
+ * Collection and index sizes for the transactions collection. Average
+ * document sizes are measured per layout on a random sample.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StorageReport {
+    
+    private String collection;
+    private long documents;
+    private long dataSizeBytes;
+    private long storageSizeBytes;
+    private long totalIndexSizeBytes;
+    private Map<String, Long> indexSizes;
+    private long legacyDocuments;
+    private Double avgLegacyDocumentBytes;
+    private Double avgCompactDocumentBytes;
+    
+    public StorageReport() {}
+    
+    public String getCollection() {
+        return collection;
+    }
+    
+    public void setCollection(String collection) {
+        this.collection = collection;
+    }
+    
+    public long getDocuments() {
+        return documents;
+    }
+    
+    public void setDocuments(long documents) {
+        this.documents = documents;
+    }
+    
+    public long getDataSizeBytes() {
+        return dataSizeBytes;
+    }
+    
+    public void setDataSizeBytes(long dataSizeBytes) {
+        this.dataSizeBytes = dataSizeBytes;
+    }
+    
+    public long getStorageSizeBytes() {
+        return storageSizeBytes;
+    }
+    
+    public void setStorageSizeBytes(long storageSizeBytes) {
+        this.storageSizeBytes = storageSizeBytes;
+    }
+    
+    public long getTotalIndexSizeBytes() {
+        return totalIndexSizeBytes;
+    }
+    
+    public void setTotalIndexSizeBytes(long totalIndexSizeBytes) {
+        this.totalIndexSizeBytes = totalIndexSizeBytes;
+    }
+    
+    public Map<String, Long> getIndexSizes() {
+        return indexSizes;
+    }
+    
+    public void setIndexSizes(Map<String, Long> indexSizes) {
+        this.indexSizes = indexSizes;
+    }
+    
+    public long getLegacyDocuments() {
+        return legacyDocuments;
+    }
+    
+    public void setLegacyDocuments(long legacyDocuments) {
+        this.legacyDocuments = legacyDocuments;
+    }
+    
+    public Double getAvgLegacyDocumentBytes() {
+        return avgLegacyDocumentBytes;
+    }
+    
+    public void setAvgLegacyDocumentBytes(Double avgLegacyDocumentBytes) {
+        this.avgLegacyDocumentBytes = avgLegacyDocumentBytes;
+    }
+    
+    public Double getAvgCompactDocumentBytes() {
+        return avgCompactDocumentBytes;
+    }
+    
+    public void setAvgCompactDocumentBytes(Double avgCompactDocumentBytes) {
+        this.avgCompactDocumentBytes = avgCompactDocumentBytes;
+    }
+}
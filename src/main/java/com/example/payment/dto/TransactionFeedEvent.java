@@ -0,0 +1,104 @@
+package com.example.payment.dto;
+
+import com.example.payment.event.TransactionChangedEvent;
+import com.example.payment.model.TransactionStatus;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Payload of one {@code /api/v1/transactions/events} message. Deletes seen
+ * through the Mongo change stream only carry the transaction id.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransactionFeedEvent {
+    
+    private TransactionChangedEvent.Type type;
+    private UUID transactionId;
+    private String merchantId;
+    private TransactionStatus status;
+    private TransactionStatus previousStatus;
+    private BigDecimal amount;
+    private String currency;
+    private Long version;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime updatedAt;
+    
+    public TransactionFeedEvent() {}
+    
+    public TransactionChangedEvent.Type getType() {
+        return type;
+    }
+    
+    public void setType(TransactionChangedEvent.Type type) {
+        this.type = type;
+    }
+    
+    public UUID getTransactionId() {
+        return transactionId;
+    }
+    
+    public void setTransactionId(UUID transactionId) {
+        this.transactionId = transactionId;
+    }
+    
+    public String getMerchantId() {
+        return merchantId;
+    }
+    
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+    
+    public TransactionStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+    
+    public TransactionStatus getPreviousStatus() {
+        return previousStatus;
+    }
+    
+    public void setPreviousStatus(TransactionStatus previousStatus) {
+        this.previousStatus = previousStatus;
+    }
+    
+    public BigDecimal getAmount() {
+        return amount;
+    }
+    
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
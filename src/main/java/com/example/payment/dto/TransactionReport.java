@@ -0,0 +1,48 @@
+package com.example.payment.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The rows of a report, ordered by their group keys. {@code truncated} is
+ * set when more groups matched than the limit allowed; {@code generatedAt}
+ * tells how old a cached report is.
+ */
+public class TransactionReport {
+    
+    private List<ReportRow> rows;
+    private boolean truncated;
+    private LocalDateTime generatedAt;
+    
+    public TransactionReport() {}
+    
+    public TransactionReport(List<ReportRow> rows, boolean truncated, LocalDateTime generatedAt) {
+        this.rows = rows;
+        this.truncated = truncated;
+        this.generatedAt = generatedAt;
+    }
+    
+    public List<ReportRow> getRows() {
+        return rows;
+    }
+    
+    public void setRows(List<ReportRow> rows) {
+        this.rows = rows;
+    }
+    
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+    
+    public LocalDateTime getGeneratedAt() {
+        return generatedAt;
+    }
+    
+    public void setGeneratedAt(LocalDateTime generatedAt) {
+        this.generatedAt = generatedAt;
+    }
+}
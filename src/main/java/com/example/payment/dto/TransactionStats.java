@@ -0,0 +1,82 @@
+package com.example.payment.dto;
+
+import com.example.payment.model.RollupGranularity;
+import com.example.payment.model.TransactionStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Per-bucket counts and amounts for a date range, one entry per bucket and
+ * currency. {@code startDate} is widened to the start of its bucket.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransactionStats {
+    
+    private String merchantId;
+    private TransactionStatus status;
+    private String currency;
+    private RollupGranularity granularity;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private List<StatsBucket> buckets;
+    
+    public TransactionStats() {}
+    
+    public String getMerchantId() {
+        return merchantId;
+    }
+    
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+    
+    public TransactionStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+    
+    public RollupGranularity getGranularity() {
+        return granularity;
+    }
+    
+    public void setGranularity(RollupGranularity granularity) {
+        this.granularity = granularity;
+    }
+    
+    public LocalDateTime getStartDate() {
+        return startDate;
+    }
+    
+    public void setStartDate(LocalDateTime startDate) {
+        this.startDate = startDate;
+    }
+    
+    public LocalDateTime getEndDate() {
+        return endDate;
+    }
+    
+    public void setEndDate(LocalDateTime endDate) {
+        this.endDate = endDate;
+    }
+    
+    public List<StatsBucket> getBuckets() {
+        return buckets;
+    }
+    
+    public void setBuckets(List<StatsBucket> buckets) {
+        this.buckets = buckets;
+    }
+}
@@ -8,12 +8,19 @@ public class UpdateTransactionStatusRequest {
     @NotNull(message = "Status is required")
     private TransactionStatus status;
     
+    private Long expectedVersion;
+    
     public UpdateTransactionStatusRequest() {}
     
     public UpdateTransactionStatusRequest(TransactionStatus status) {
         this.status = status;
     }
     
+    public UpdateTransactionStatusRequest(TransactionStatus status, Long expectedVersion) {
+        this.status = status;
+        this.expectedVersion = expectedVersion;
+    }
+    
     public TransactionStatus getStatus() {
         return status;
     }
@@ -21,4 +28,12 @@ public class UpdateTransactionStatusRequest {
     public void setStatus(TransactionStatus status) {
         this.status = status;
     }
+    
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
+    
+    public void setExpectedVersion(Long expectedVersion) {
+        this.expectedVersion = expectedVersion;
+    }
 }
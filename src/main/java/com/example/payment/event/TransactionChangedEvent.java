@@ -0,0 +1,51 @@
+package com.example.payment.event;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+
+/**
+ * Published after a transaction has been created, has changed status or has
+ * been deleted. {@code previousStatus} is only set for status changes.
+ */
+public class TransactionChangedEvent {
+    
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+    
+    private final Type type;
+    private final Transaction transaction;
+    private final TransactionStatus previousStatus;
+    
+    public TransactionChangedEvent(Type type, Transaction transaction, TransactionStatus previousStatus) {
+        this.type = type;
+        this.transaction = transaction;
+        this.previousStatus = previousStatus;
+    }
+    
+    public static TransactionChangedEvent created(Transaction transaction) {
+        return new TransactionChangedEvent(Type.CREATED, transaction, null);
+    }
+    
+    public static TransactionChangedEvent statusChanged(Transaction transaction, TransactionStatus previousStatus) {
+        return new TransactionChangedEvent(Type.UPDATED, transaction, previousStatus);
+    }
+    
+    public static TransactionChangedEvent deleted(Transaction transaction) {
+        return new TransactionChangedEvent(Type.DELETED, transaction, null);
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public Transaction getTransaction() {
+        return transaction;
+    }
+    
+    public TransactionStatus getPreviousStatus() {
+        return previousStatus;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.payment.event;
+
+import com.example.payment.model.Transaction;
+
+/**
+ * Published after a new transaction has been persisted in PENDING status and
+ * is waiting for the payment processor.
+ */
+public class TransactionCreatedEvent {
+    
+    private final Transaction transaction;
+    
+    public TransactionCreatedEvent(Transaction transaction) {
+        this.transaction = transaction;
+    }
+    
+    public Transaction getTransaction() {
+        return transaction;
+    }
+}
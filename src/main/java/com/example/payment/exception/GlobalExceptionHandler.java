@@ -1,6 +1,9 @@
 package com.example.payment.exception;
 
 import com.example.payment.dto.ApiResponse;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -13,6 +16,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 @ControllerAdvice
+@Profile("!reactive")
 public class GlobalExceptionHandler {
     
     @ExceptionHandler(MethodArgumentNotValidException.class)
@@ -30,6 +34,39 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error("Validation failed"));
     }
     
+    @ExceptionHandler({InvalidStatusTransitionException.class, OptimisticLockingFailureException.class,
+            IdempotencyKeyInProgressException.class})
+    public ResponseEntity<ApiResponse<Void>> handleConflict(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error(ex.getMessage()));
+    }
+    
+    @ExceptionHandler(IdempotencyKeyReuseException.class)
+    public ResponseEntity<ApiResponse<Void>> handleIdempotencyKeyReuseException(IdempotencyKeyReuseException ex) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(ApiResponse.error(ex.getMessage()));
+    }
+    
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ApiResponse<Void>> handleIllegalArgumentException(IllegalArgumentException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(ex.getMessage()));
+    }
+    
+    @ExceptionHandler(MongoCapacityExceededException.class)
+    public ResponseEntity<ApiResponse<Void>> handleMongoCapacityExceededException(
+            MongoCapacityExceededException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiResponse.error(ex.getMessage()));
+    }
+    
+    @ExceptionHandler(ReportTimeoutException.class)
+    public ResponseEntity<ApiResponse<Void>> handleReportTimeoutException(ReportTimeoutException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(ApiResponse.error(ex.getMessage()));
+    }
+    
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiResponse<Void>> handleGlobalException(Exception ex, WebRequest request) {
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,10 @@
+package com.example.payment.exception;
+
+public class IdempotencyKeyInProgressException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public IdempotencyKeyInProgressException(String key) {
+        super("A request with Idempotency-Key " + key + " is still being processed");
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.payment.exception;
+
+public class IdempotencyKeyReuseException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public IdempotencyKeyReuseException(String key) {
+        super("Idempotency-Key " + key + " was already used with a different request body");
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.payment.exception;
+
+import com.example.payment.model.TransactionStatus;
+
+public class InvalidStatusTransitionException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final TransactionStatus from;
+    private final TransactionStatus to;
+    
+    public InvalidStatusTransitionException(TransactionStatus from, TransactionStatus to) {
+        super("Cannot change status from " + from + " to " + to);
+        this.from = from;
+        this.to = to;
+    }
+    
+    public TransactionStatus getFrom() {
+        return from;
+    }
+    
+    public TransactionStatus getTo() {
+        return to;
+    }
+}
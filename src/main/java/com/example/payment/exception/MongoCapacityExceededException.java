@@ -0,0 +1,10 @@
+package com.example.payment.exception;
+
+public class MongoCapacityExceededException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public MongoCapacityExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.payment.exception;
+
+public class ReportTimeoutException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public ReportTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
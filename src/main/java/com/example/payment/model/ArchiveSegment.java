@@ -0,0 +1,83 @@
+package com.example.payment.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Catalog entry for one archive collection: the UTC month it holds, how many
+ * transactions it has and the range of their {@code createdAt}. Lookups use
+ * the range to skip segments that cannot hold a transaction.
+ */
+@Document(collection = "transaction_archive_segments")
+public class ArchiveSegment {
+    
+    @Id
+    private String id;
+    
+    private String collectionName;
+    
+    private long count;
+    
+    private LocalDateTime minCreatedAt;
+    
+    private LocalDateTime maxCreatedAt;
+    
+    private LocalDateTime updatedAt;
+    
+    public ArchiveSegment() {}
+    
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return minCreatedAt != null && (from == null || !maxCreatedAt.isBefore(from))
+                && (to == null || !minCreatedAt.isAfter(to));
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getCollectionName() {
+        return collectionName;
+    }
+    
+    public void setCollectionName(String collectionName) {
+        this.collectionName = collectionName;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public void setCount(long count) {
+        this.count = count;
+    }
+    
+    public LocalDateTime getMinCreatedAt() {
+        return minCreatedAt;
+    }
+    
+    public void setMinCreatedAt(LocalDateTime minCreatedAt) {
+        this.minCreatedAt = minCreatedAt;
+    }
+    
+    public LocalDateTime getMaxCreatedAt() {
+        return maxCreatedAt;
+    }
+    
+    public void setMaxCreatedAt(LocalDateTime maxCreatedAt) {
+        this.maxCreatedAt = maxCreatedAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.payment.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+    
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+    
+    @Id
+    private String id;
+    
+    private String requestHash;
+    
+    private String state;
+    
+    private Integer statusCode;
+    
+    private String responseBody;
+    
+    private LocalDateTime lockedAt;
+    
+    @Indexed(name = "expires_at_ttl", expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+    
+    public IdempotencyRecord() {}
+    
+    public IdempotencyRecord(String id, String requestHash, LocalDateTime lockedAt, LocalDateTime expiresAt) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.state = IN_PROGRESS;
+        this.lockedAt = lockedAt;
+        this.expiresAt = expiresAt;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getRequestHash() {
+        return requestHash;
+    }
+    
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+    
+    public String getState() {
+        return state;
+    }
+    
+    public void setState(String state) {
+        this.state = state;
+    }
+    
+    public Integer getStatusCode() {
+        return statusCode;
+    }
+    
+    public void setStatusCode(Integer statusCode) {
+        this.statusCode = statusCode;
+    }
+    
+    public String getResponseBody() {
+        return responseBody;
+    }
+    
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+    
+    public LocalDateTime getLockedAt() {
+        return lockedAt;
+    }
+    
+    public void setLockedAt(LocalDateTime lockedAt) {
+        this.lockedAt = lockedAt;
+    }
+    
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.payment.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Document(collection = "merchant_totals")
+@CompoundIndex(name = "merchant_status", def = "{'merchantId': 1, 'status': 1}")
+public class MerchantTotal {
+    
+    @Id
+    private String id;
+    
+    private String merchantId;
+    
+    private TransactionStatus status;
+    
+    private String currency;
+    
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal total;
+    
+    private long count;
+    
+    private LocalDateTime updatedAt;
+    
+    public MerchantTotal() {}
+    
+    public static String key(String merchantId, TransactionStatus status, String currency) {
+        return merchantId + ":" + status + ":" + currency;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getMerchantId() {
+        return merchantId;
+    }
+    
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+    
+    public TransactionStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+    
+    public BigDecimal getTotal() {
+        return total;
+    }
+    
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public void setCount(long count) {
+        this.count = count;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
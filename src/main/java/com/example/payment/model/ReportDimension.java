@@ -0,0 +1,22 @@
+package com.example.payment.model;
+
+/**
+ * Transaction fields a report can group by, named by their entity property.
+ */
+public enum ReportDimension {
+    MERCHANT("merchantId"),
+    CUSTOMER("customerId"),
+    STATUS("status"),
+    CURRENCY("currency"),
+    PAYMENT_METHOD("paymentMethod");
+    
+    private final String property;
+    
+    ReportDimension(String property) {
+        this.property = property;
+    }
+    
+    public String getProperty() {
+        return property;
+    }
+}
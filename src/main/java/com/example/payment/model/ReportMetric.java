@@ -0,0 +1,27 @@
+package com.example.payment.model;
+
+/**
+ * Aggregates a report can compute per group. Amount metrics are computed as
+ * decimals, so sums carry no floating point error.
+ */
+public enum ReportMetric {
+    COUNT("$sum"),
+    SUM("$sum"),
+    AVG("$avg"),
+    MIN("$min"),
+    MAX("$max");
+    
+    private final String accumulator;
+    
+    ReportMetric(String accumulator) {
+        this.accumulator = accumulator;
+    }
+    
+    public String getAccumulator() {
+        return accumulator;
+    }
+    
+    public String getField() {
+        return name().toLowerCase();
+    }
+}
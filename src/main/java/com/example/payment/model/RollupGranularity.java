@@ -0,0 +1,48 @@
+package com.example.payment.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Bucket sizes kept in {@code transaction_rollups}. Buckets are aligned to
+ * UTC, matching {@code $dateTrunc} in the backfill pipeline, and exposed as
+ * local date-times like every other timestamp in the API.
+ */
+public enum RollupGranularity {
+    MINUTE(ChronoUnit.MINUTES, "minute"),
+    HOUR(ChronoUnit.HOURS, "hour"),
+    DAY(ChronoUnit.DAYS, "day");
+    
+    private final ChronoUnit unit;
+    private final String mongoUnit;
+    
+    RollupGranularity(ChronoUnit unit, String mongoUnit) {
+        this.unit = unit;
+        this.mongoUnit = mongoUnit;
+    }
+    
+    public Duration getSize() {
+        return unit.getDuration();
+    }
+    
+    public String getMongoUnit() {
+        return mongoUnit;
+    }
+    
+    public Instant truncate(Instant instant) {
+        return instant.truncatedTo(unit);
+    }
+    
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        return LocalDateTime.ofInstant(truncate(time.atZone(ZoneId.systemDefault()).toInstant()),
+                ZoneId.systemDefault());
+    }
+    
+    public long bucketCount(LocalDateTime from, LocalDateTime to) {
+        Duration range = Duration.between(bucketStart(from), to);
+        return Math.max(1, (range.toMillis() + getSize().toMillis() - 1) / getSize().toMillis());
+    }
+}
@@ -1,7 +1,12 @@
 package com.example.payment.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import org.springframework.data.mongodb.core.mapping.Sharded;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
@@ -9,51 +14,91 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
+/**
+ * Stored with short field keys, a binary UUID {@code _id} and a Decimal128
+ * amount; see {@link #FIELDS} for the key mapping. The JSON representation
+ * still uses the full property names.
+ *
+ * <p>The no-arg constructor assigns nothing, so documents read back from
+ * Mongo do not pay for defaults they overwrite. New transactions get their
+ * id, {@code createdAt} and PENDING status from the service layer.
+ *
+ * <p>On a sharded cluster the collection is sharded on the ranged key
+ * {@code {m: 1, _id: 1}}: a merchant's transactions stay together, and a
+ * large merchant can still be split across chunks by id.
+ */
 @Document(collection = "transactions")
+@Sharded(shardKey = {"merchantId", "id"}, immutableKey = true)
+@CompoundIndex(name = "ca_id", def = "{'ca': -1, '_id': -1}")
+@CompoundIndex(name = "m_ca_id", def = "{'m': 1, 'ca': -1, '_id': -1}")
+@CompoundIndex(name = "c_ca_id", def = "{'c': 1, 'ca': -1, '_id': -1}")
+@CompoundIndex(name = "s_ca_id", def = "{'s': 1, 'ca': -1, '_id': -1}")
+@CompoundIndex(name = "m_s_ca", def = "{'m': 1, 's': 1, 'ca': -1}")
 public class Transaction {
     
+    /** Property name to stored field key, for code that works on raw documents. */
+    public static final Map<String, String> FIELDS = Map.ofEntries(
+            Map.entry("merchantId", "m"),
+            Map.entry("customerId", "c"),
+            Map.entry("amount", "a"),
+            Map.entry("currency", "cur"),
+            Map.entry("paymentMethod", "pm"),
+            Map.entry("description", "d"),
+            Map.entry("status", "s"),
+            Map.entry("createdAt", "ca"),
+            Map.entry("updatedAt", "ua"),
+            Map.entry("version", "v"));
+    
     @Id
-    private String id;
+    private UUID id;
     
     @NotBlank(message = "Merchant ID is required")
+    @Field("m")
     private String merchantId;
     
     @NotBlank(message = "Customer ID is required")
+    @Field("c")
     private String customerId;
     
     @NotNull(message = "Amount is required")
     @Positive(message = "Amount must be positive")
+    @Field(name = "a", targetType = FieldType.DECIMAL128)
     private BigDecimal amount;
     
     @NotBlank(message = "Currency is required")
+    @Field("cur")
     private String currency;
     
     @NotBlank(message = "Payment method is required")
+    @Field("pm")
     private String paymentMethod;
     
+    @Field("d")
     private String description;
     
+    @Field("s")
     private TransactionStatus status;
     
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @Field("ca")
     private LocalDateTime createdAt;
     
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @Field("ua")
     private LocalDateTime updatedAt;
     
-    public Transaction() {
-        this.id = UUID.randomUUID().toString();
-        this.createdAt = LocalDateTime.now();
-        this.status = TransactionStatus.PENDING;
-    }
+    @Version
+    @Field("v")
+    private Long version;
     
-    public String getId() {
+    public UUID getId() {
         return id;
     }
     
-    public void setId(String id) {
+    public void setId(UUID id) {
         this.id = id;
     }
     
@@ -129,4 +174,12 @@ public class Transaction {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
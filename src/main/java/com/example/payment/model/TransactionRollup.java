@@ -0,0 +1,154 @@
+package com.example.payment.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+@Document(collection = "transaction_rollups")
+@CompoundIndexes({
+        @CompoundIndex(name = "merchant_bucket", def = "{'granularity': 1, 'merchantId': 1, 'bucketStart': 1}"),
+        @CompoundIndex(name = "bucket", def = "{'granularity': 1, 'bucketStart': 1}")
+})
+public class TransactionRollup {
+    
+    @Id
+    private String id;
+    
+    private RollupGranularity granularity;
+    
+    private String merchantId;
+    
+    private TransactionStatus status;
+    
+    private String currency;
+    
+    private LocalDateTime bucketStart;
+    
+    private long count;
+    
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal sum;
+    
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal min;
+    
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal max;
+    
+    private LocalDateTime updatedAt;
+    
+    @Indexed(name = "expires_at_ttl", expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+    
+    public TransactionRollup() {}
+    
+    public static String key(RollupGranularity granularity, String merchantId, TransactionStatus status,
+                             String currency, LocalDateTime bucketStart) {
+        return granularity + ":" + merchantId + ":" + status + ":" + currency + ":"
+                + bucketStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public RollupGranularity getGranularity() {
+        return granularity;
+    }
+    
+    public void setGranularity(RollupGranularity granularity) {
+        this.granularity = granularity;
+    }
+    
+    public String getMerchantId() {
+        return merchantId;
+    }
+    
+    public void setMerchantId(String merchantId) {
+        this.merchantId = merchantId;
+    }
+    
+    public TransactionStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+    
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+    
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+    
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public void setCount(long count) {
+        this.count = count;
+    }
+    
+    public BigDecimal getSum() {
+        return sum;
+    }
+    
+    public void setSum(BigDecimal sum) {
+        this.sum = sum;
+    }
+    
+    public BigDecimal getMin() {
+        return min;
+    }
+    
+    public void setMin(BigDecimal min) {
+        this.min = min;
+    }
+    
+    public BigDecimal getMax() {
+        return max;
+    }
+    
+    public void setMax(BigDecimal max) {
+        this.max = max;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,10 +1,47 @@
 package com.example.payment.model;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 public enum TransactionStatus {
     PENDING,
     PROCESSING,
     COMPLETED,
     FAILED,
     CANCELLED,
-    REFUNDED
+    REFUNDED;
+    
+    private static final Map<TransactionStatus, Set<TransactionStatus>> SOURCES =
+            new EnumMap<>(TransactionStatus.class);
+    
+    static {
+        allow(PENDING, PROCESSING, COMPLETED, FAILED, CANCELLED);
+        allow(PROCESSING, COMPLETED, FAILED, CANCELLED);
+        allow(COMPLETED, REFUNDED);
+    }
+    
+    private static void allow(TransactionStatus from, TransactionStatus... targets) {
+        for (TransactionStatus target : targets) {
+            SOURCES.computeIfAbsent(target, key -> EnumSet.noneOf(TransactionStatus.class)).add(from);
+        }
+    }
+    
+    /**
+     * Whether the payment outcome is settled. Only a refund can still change a
+     * terminal transaction.
+     */
+    public boolean isTerminal() {
+        return this != PENDING && this != PROCESSING;
+    }
+    
+    public boolean canTransitionTo(TransactionStatus target) {
+        return target.allowedSources().contains(this);
+    }
+    
+    public Set<TransactionStatus> allowedSources() {
+        return Collections.unmodifiableSet(SOURCES.getOrDefault(this, EnumSet.noneOf(TransactionStatus.class)));
+    }
 }
@@ -0,0 +1,14 @@
+package com.example.payment.repository;
+
+import com.example.payment.model.MerchantTotal;
+import com.example.payment.model.TransactionStatus;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MerchantTotalRepository extends MongoRepository<MerchantTotal, String> {
+    
+    List<MerchantTotal> findByMerchantIdAndStatus(String merchantId, TransactionStatus status);
+}
@@ -0,0 +1,30 @@
+package com.example.payment.repository;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Repository
+public interface ReactiveTransactionRepository extends ReactiveMongoRepository<Transaction, UUID> {
+    
+    Flux<Transaction> findByMerchantId(String merchantId);
+    
+    Flux<Transaction> findByCustomerId(String customerId);
+    
+    Flux<Transaction> findByStatus(TransactionStatus status);
+    
+    Flux<Transaction> findAllBy(Pageable pageable);
+    
+    @Query("{'createdAt': { $gte: ?0, $lte: ?1 }}")
+    Flux<Transaction> findByCreatedAtBetween(LocalDateTime startDate, LocalDateTime endDate);
+    
+    @Query("{'merchantId': ?0, 'status': ?1}")
+    Flux<Transaction> findByMerchantIdAndStatus(String merchantId, TransactionStatus status);
+}
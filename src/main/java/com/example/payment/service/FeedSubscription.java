@@ -0,0 +1,173 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.TransactionFeedEvent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * One subscriber's undelivered feed events. The buffer holds at most one
+ * event per transaction: a newer event for a transaction that is still
+ * waiting replaces the older one and moves to the back, so events always go
+ * out in sequence order. When the buffer is full the oldest event is dropped
+ * and the count is reported on the next delivery.
+ *
+ * <p>Transports drain the buffer from a single thread at a time, guarded by
+ * {@link #requestDrain()} and {@link #finishDrain(int)}.
+ */
+public class FeedSubscription {
+    
+    enum Offer {
+        ADDED,
+        COALESCED,
+        DROPPED_OLDEST
+    }
+    
+    private final String merchantId;
+    private final UUID transactionId;
+    private final int capacity;
+    private final Consumer<FeedSubscription> onAvailable;
+    private final LinkedHashMap<UUID, Entry> pending = new LinkedHashMap<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private long dropped;
+    private boolean resetRequired;
+    private boolean heartbeatDue;
+    
+    FeedSubscription(String merchantId, UUID transactionId, int capacity, Consumer<FeedSubscription> onAvailable) {
+        this.merchantId = merchantId;
+        this.transactionId = transactionId;
+        this.capacity = capacity;
+        this.onAvailable = onAvailable;
+    }
+    
+    public String getMerchantId() {
+        return merchantId;
+    }
+    
+    public UUID getTransactionId() {
+        return transactionId;
+    }
+    
+    /**
+     * Takes up to {@code max} buffered events, oldest first.
+     */
+    public synchronized List<Entry> poll(int max) {
+        List<Entry> entries = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<Entry> iterator = pending.values().iterator();
+        while (iterator.hasNext() && entries.size() < max) {
+            entries.add(iterator.next());
+            iterator.remove();
+        }
+        return entries;
+    }
+    
+    /**
+     * Returns how many events were dropped since the last call.
+     */
+    public synchronized long takeDropped() {
+        long count = dropped;
+        dropped = 0;
+        return count;
+    }
+    
+    /**
+     * Returns {@code true} once when the requested resume point was no longer
+     * available and the subscriber has to re-read current state.
+     */
+    public synchronized boolean takeReset() {
+        boolean reset = resetRequired;
+        resetRequired = false;
+        return reset;
+    }
+    
+    public synchronized boolean takeHeartbeat() {
+        boolean due = heartbeatDue;
+        heartbeatDue = false;
+        return due;
+    }
+    
+    /**
+     * Returns {@code true} when the caller must start a drain; otherwise the
+     * drain already running picks the new work up.
+     */
+    public boolean requestDrain() {
+        return drainRequests.getAndIncrement() == 0;
+    }
+    
+    /**
+     * Ends one drain pass. A non-zero result means more work arrived during
+     * the pass and the caller has to loop again with the returned value.
+     */
+    public int finishDrain(int passes) {
+        return drainRequests.addAndGet(-passes);
+    }
+    
+    boolean matches(TransactionFeedEvent event) {
+        return (merchantId == null || merchantId.equals(event.getMerchantId()))
+                && (transactionId == null || transactionId.equals(event.getTransactionId()));
+    }
+    
+    synchronized Offer offer(Entry entry) {
+        UUID key = entry.getEvent().getTransactionId();
+        Offer result = Offer.ADDED;
+        if (pending.remove(key) != null) {
+            result = Offer.COALESCED;
+        } else if (pending.size() >= capacity) {
+            Iterator<Map.Entry<UUID, Entry>> oldest = pending.entrySet().iterator();
+            oldest.next();
+            oldest.remove();
+            dropped++;
+            result = Offer.DROPPED_OLDEST;
+        }
+        pending.put(key, entry);
+        return result;
+    }
+    
+    synchronized void requestReset() {
+        resetRequired = true;
+    }
+    
+    synchronized void requestHeartbeat() {
+        heartbeatDue = true;
+    }
+    
+    void signal() {
+        onAvailable.accept(this);
+    }
+    
+    /**
+     * A feed event with its SSE id, {@code <epoch>-<sequence>}. The epoch
+     * changes on every restart, so ids from an earlier run are never mistaken
+     * for a resume point in this one.
+     */
+    public static final class Entry {
+        
+        private final String id;
+        private final long sequence;
+        private final TransactionFeedEvent event;
+        
+        Entry(String id, long sequence, TransactionFeedEvent event) {
+            this.id = id;
+            this.sequence = sequence;
+            this.event = event;
+        }
+        
+        public String getId() {
+            return id;
+        }
+        
+        public long getSequence() {
+            return sequence;
+        }
+        
+        public TransactionFeedEvent getEvent() {
+            return event;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.CursorPage;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The most recently created transactions, held in a fixed-size ring of
+ * columns: ids, timestamps and versions as {@code long}s, the status as a
+ * {@code byte}, and shared references for the strings and the amount. Rows
+ * leave the ring when it is full or once they are older than
+ * {@code duration}. Status changes and deletes made through
+ * {@link TransactionService} are applied in place.
+ *
+ * <p>Indexes: an open-addressing table from id to row, per-merchant and
+ * per-customer chains linking each row to the previous row with the same
+ * key, and one bit set of rows per status. Every transaction created after
+ * the newest evicted row (or after startup) is in the ring, so a query is
+ * answered here when its result provably lies in that range; otherwise the
+ * caller goes to Mongo. That only holds while this instance sees every
+ * write, so the window is meant for a single instance or merchant-sticky
+ * routing.
+ *
+ * <p>Results match Mongo's order: {@code createdAt} at millisecond
+ * precision, then the id compared as unsigned bytes.
+ */
+@Service
+public class HotTransactionWindow implements MeterBinder {
+    
+    private static final byte DELETED = -1;
+    private static final long NONE = Long.MIN_VALUE;
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    
+    private final boolean enabled;
+    private final int capacity;
+    private final long durationMillis;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final long[] idHigh;
+    private final long[] idLow;
+    private final long[] createdAt;
+    private final long[] updatedAt;
+    private final long[] version;
+    private final long[] previousForMerchant;
+    private final long[] previousForCustomer;
+    private final byte[] status;
+    private final String[] merchantId;
+    private final String[] customerId;
+    private final String[] currency;
+    private final String[] paymentMethod;
+    private final String[] description;
+    private final BigDecimal[] amount;
+    private final BitSet[] byStatus;
+    private final Map<String, Long> merchantHeads = new HashMap<>();
+    private final Map<String, Long> customerHeads = new HashMap<>();
+    private final long[] idTable;
+    private int idTableUsed;
+    
+    private long nextSequence;
+    private long oldestSequence;
+    private long newestCreatedAt = Long.MIN_VALUE;
+    private long maxSkew;
+    private long completeAfter;
+    private final Map<String, Counter[]> queries = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public HotTransactionWindow(MeterRegistry meterRegistry,
+                                @Value("${payment.hot-window.enabled:false}") boolean enabled,
+                                @Value("${payment.hot-window.capacity:100000}") int capacity,
+                                @Value("${payment.hot-window.duration:5m}") Duration duration) {
+        this.enabled = enabled;
+        this.capacity = enabled ? Math.max(1, capacity) : 1;
+        this.durationMillis = duration.toMillis();
+        this.meterRegistry = meterRegistry;
+        int rows = this.capacity;
+        this.idHigh = new long[rows];
+        this.idLow = new long[rows];
+        this.createdAt = new long[rows];
+        this.updatedAt = new long[rows];
+        this.version = new long[rows];
+        this.previousForMerchant = new long[rows];
+        this.previousForCustomer = new long[rows];
+        this.status = new byte[rows];
+        this.merchantId = new String[rows];
+        this.customerId = new String[rows];
+        this.currency = new String[rows];
+        this.paymentMethod = new String[rows];
+        this.description = new String[rows];
+        this.amount = new BigDecimal[rows];
+        this.byStatus = new BitSet[STATUSES.length];
+        for (int i = 0; i < byStatus.length; i++) {
+            byStatus[i] = new BitSet(rows);
+        }
+        this.idTable = new long[Integer.highestOneBit(rows) * 4];
+        this.completeAfter = millis(LocalDateTime.now());
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("payment.hot-window.size", this, HotTransactionWindow::size)
+                .description("Transactions held in the hot window")
+                .register(registry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void put(Transaction transaction) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            add(transaction);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void putAll(List<Transaction> transactions) {
+        if (!enabled || transactions.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            transactions.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Applies a status change, if the transaction is still in the window and
+     * the change is newer than the row; changes applied out of order by
+     * concurrent requests never roll a row back.
+     */
+    public void update(Transaction transaction) {
+        if (!enabled || transaction.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long sequence = find(transaction.getId());
+            if (sequence < 0) {
+                return;
+            }
+            int row = row(sequence);
+            if (transaction.getVersion() == null || transaction.getVersion() <= version[row]) {
+                return;
+            }
+            byStatus[status[row]].clear(row);
+            status[row] = (byte) transaction.getStatus().ordinal();
+            byStatus[status[row]].set(row);
+            updatedAt[row] = transaction.getUpdatedAt() == null ? NONE : millis(transaction.getUpdatedAt());
+            version[row] = transaction.getVersion() == null ? NONE : transaction.getVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(UUID id) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long sequence = find(id);
+            if (sequence >= 0) {
+                int row = row(sequence);
+                byStatus[status[row]].clear(row);
+                status[row] = DELETED;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public Optional<CursorPage<Transaction>> pageAll(String cursor, int pageSize, Sort.Direction direction) {
+        return page("all", Source.ALL, null, cursor, pageSize, direction);
+    }
+    
+    public Optional<CursorPage<Transaction>> pageByMerchant(String merchantId, String cursor, int pageSize,
+                                                            Sort.Direction direction) {
+        return page("merchant", Source.MERCHANT, merchantId, cursor, pageSize, direction);
+    }
+    
+    public Optional<CursorPage<Transaction>> pageByCustomer(String customerId, String cursor, int pageSize,
+                                                            Sort.Direction direction) {
+        return page("customer", Source.CUSTOMER, customerId, cursor, pageSize, direction);
+    }
+    
+    public Optional<CursorPage<Transaction>> pageByStatus(TransactionStatus inStatus, String cursor, int pageSize,
+                                                          Sort.Direction direction) {
+        return page("status", Source.STATUS, inStatus, cursor, pageSize, direction);
+    }
+    
+    /**
+     * The newest transactions created in {@code [from, to]}, optionally
+     * {@code inStatus}, newest first. Null bounds are open. Without a
+     * {@code limit}, only ranges that start inside the window are answered.
+     */
+    public Optional<List<Transaction>> findNewest(String queryName, TransactionStatus inStatus, LocalDateTime from,
+                                                  LocalDateTime to, Integer limit) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long fromMillis = from == null ? Long.MIN_VALUE : millis(from);
+        long toMillis = to == null ? Long.MAX_VALUE : millis(to);
+        lock.readLock().lock();
+        try {
+            boolean complete = fromMillis > completeAfter;
+            if (!complete && limit == null) {
+                return miss(queryName);
+            }
+            long lower = Math.max(fromMillis, completeAfter + 1);
+            int wanted = limit == null ? Integer.MAX_VALUE : limit;
+            Scan scan = inStatus == null ? new Scan(Source.ALL, null) : new Scan(Source.STATUS, inStatus);
+            Selection selection = new Selection(wanted);
+            for (long sequence = scan.next(); sequence >= 0; sequence = scan.next()) {
+                int row = row(sequence);
+                long created = createdAt[row];
+                if (created < lower - maxSkew || selection.full(created, maxSkew)) {
+                    break;
+                }
+                if (status[row] != DELETED && created >= lower && created <= toMillis) {
+                    selection.add(row, created);
+                }
+            }
+            Integer[] rows = selection.sorted(newestFirst());
+            if (!complete && rows.length < wanted) {
+                return miss(queryName);
+            }
+            return hit(queryName, materialize(rows, Math.min(rows.length, wanted)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private Optional<CursorPage<Transaction>> page(String queryName, Source source, Object key, String cursor,
+                                                   int pageSize, Sort.Direction direction) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        KeysetCursor after = cursor == null || cursor.isBlank() ? null : KeysetCursor.decode(cursor);
+        long afterMillis = after == null ? 0 : millis(after.createdAt());
+        int fetch = pageSize + 1;
+        lock.readLock().lock();
+        try {
+            Scan scan = new Scan(source, key);
+            if (direction.isAscending()) {
+                // everything after the cursor is here once the cursor itself is
+                if (after == null || afterMillis <= completeAfter) {
+                    return miss(queryName);
+                }
+                Selection selection = new Selection(Integer.MAX_VALUE);
+                for (long sequence = scan.next(); sequence >= 0; sequence = scan.next()) {
+                    int row = row(sequence);
+                    if (createdAt[row] < afterMillis - maxSkew) {
+                        break;
+                    }
+                    if (status[row] != DELETED && compare(row, afterMillis, after.id()) > 0) {
+                        selection.add(row, createdAt[row]);
+                    }
+                }
+                Integer[] rows = selection.sorted(newestFirst().reversed());
+                return hit(queryName, KeysetCursor.toPage(materialize(rows, Math.min(rows.length, fetch)),
+                        pageSize, null));
+            }
+            
+            if (after != null && afterMillis <= completeAfter) {
+                return miss(queryName);
+            }
+            Selection selection = new Selection(fetch);
+            for (long sequence = scan.next(); sequence >= 0; sequence = scan.next()) {
+                int row = row(sequence);
+                long created = createdAt[row];
+                if (created <= completeAfter - maxSkew || selection.full(created, maxSkew)) {
+                    break;
+                }
+                if (status[row] != DELETED && created > completeAfter
+                        && (after == null || compare(row, afterMillis, after.id()) < 0)) {
+                    selection.add(row, created);
+                }
+            }
+            Integer[] rows = selection.sorted(newestFirst());
+            if (rows.length < fetch) {
+                return miss(queryName);
+            }
+            return hit(queryName, KeysetCursor.toPage(materialize(rows, fetch), pageSize, null));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void add(Transaction transaction) {
+        if (transaction.getId() == null || transaction.getCreatedAt() == null || transaction.getStatus() == null) {
+            return;
+        }
+        long created = millis(transaction.getCreatedAt());
+        long sequence = nextSequence++;
+        if (sequence - oldestSequence >= capacity) {
+            evictOldest();
+        }
+        long cutoff = created - durationMillis;
+        while (oldestSequence < sequence && createdAt[row(oldestSequence)] < cutoff) {
+            evictOldest();
+        }
+        
+        int row = row(sequence);
+        idHigh[row] = transaction.getId().getMostSignificantBits();
+        idLow[row] = transaction.getId().getLeastSignificantBits();
+        createdAt[row] = created;
+        updatedAt[row] = transaction.getUpdatedAt() == null ? NONE : millis(transaction.getUpdatedAt());
+        version[row] = transaction.getVersion() == null ? NONE : transaction.getVersion();
+        status[row] = (byte) transaction.getStatus().ordinal();
+        merchantId[row] = transaction.getMerchantId();
+        customerId[row] = transaction.getCustomerId();
+        currency[row] = transaction.getCurrency();
+        paymentMethod[row] = transaction.getPaymentMethod();
+        description[row] = transaction.getDescription();
+        amount[row] = transaction.getAmount();
+        byStatus[status[row]].set(row);
+        Long previous = merchantHeads.put(transaction.getMerchantId(), sequence);
+        previousForMerchant[row] = previous == null ? -1 : previous;
+        previous = customerHeads.put(transaction.getCustomerId(), sequence);
+        previousForCustomer[row] = previous == null ? -1 : previous;
+        
+        if (created < newestCreatedAt) {
+            maxSkew = Math.max(maxSkew, newestCreatedAt - created);
+        } else {
+            newestCreatedAt = created;
+        }
+        index(sequence);
+    }
+    
+    private void evictOldest() {
+        int row = row(oldestSequence++);
+        if (status[row] != DELETED) {
+            byStatus[status[row]].clear(row);
+            completeAfter = Math.max(completeAfter, createdAt[row]);
+        }
+        status[row] = DELETED;
+        merchantId[row] = null;
+        customerId[row] = null;
+        currency[row] = null;
+        paymentMethod[row] = null;
+        description[row] = null;
+        amount[row] = null;
+    }
+    
+    /**
+     * Adds the row to the id table. Entries of evicted rows are reused when
+     * a probe passes them; once three quarters of the table is in use, it is
+     * rebuilt from the live rows.
+     */
+    private void index(long sequence) {
+        if (idTableUsed >= idTable.length / 4 * 3) {
+            Arrays.fill(idTable, 0);
+            idTableUsed = 0;
+            for (long live = oldestSequence; live < sequence; live++) {
+                if (status[row(live)] != DELETED) {
+                    index(live);
+                }
+            }
+            merchantHeads.values().removeIf(head -> head < oldestSequence);
+            customerHeads.values().removeIf(head -> head < oldestSequence);
+        }
+        int mask = idTable.length - 1;
+        int row = row(sequence);
+        for (int slot = hash(idHigh[row], idLow[row]) & mask; ; slot = (slot + 1) & mask) {
+            long entry = idTable[slot];
+            if (entry == 0) {
+                idTableUsed++;
+            } else if (entry - 1 >= oldestSequence) {
+                continue;
+            }
+            idTable[slot] = sequence + 1;
+            return;
+        }
+    }
+    
+    /**
+     * The sequence of the live row with this id, or {@code -1}.
+     */
+    private long find(UUID id) {
+        long high = id.getMostSignificantBits();
+        long low = id.getLeastSignificantBits();
+        int mask = idTable.length - 1;
+        for (int slot = hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+            long entry = idTable[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            long sequence = entry - 1;
+            int row = row(sequence);
+            if (sequence >= oldestSequence && idHigh[row] == high && idLow[row] == low) {
+                return status[row] == DELETED ? -1 : sequence;
+            }
+        }
+    }
+    
+    private int compare(int row, long otherCreatedAt, UUID otherId) {
+        int result = Long.compare(createdAt[row], otherCreatedAt);
+        if (result == 0) {
+            result = Long.compareUnsigned(idHigh[row], otherId.getMostSignificantBits());
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(idLow[row], otherId.getLeastSignificantBits());
+        }
+        return result;
+    }
+    
+    private Comparator<Integer> newestFirst() {
+        return (a, b) -> {
+            int result = Long.compare(createdAt[b], createdAt[a]);
+            if (result == 0) {
+                result = Long.compareUnsigned(idHigh[b], idHigh[a]);
+            }
+            return result != 0 ? result : Long.compareUnsigned(idLow[b], idLow[a]);
+        };
+    }
+    
+    private List<Transaction> materialize(Integer[] rows, int count) {
+        Transaction[] transactions = new Transaction[count];
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            Transaction transaction = new Transaction();
+            transaction.setId(new UUID(idHigh[row], idLow[row]));
+            transaction.setMerchantId(merchantId[row]);
+            transaction.setCustomerId(customerId[row]);
+            transaction.setAmount(amount[row]);
+            transaction.setCurrency(currency[row]);
+            transaction.setPaymentMethod(paymentMethod[row]);
+            transaction.setDescription(description[row]);
+            transaction.setStatus(STATUSES[status[row]]);
+            transaction.setCreatedAt(timestamp(createdAt[row]));
+            transaction.setUpdatedAt(updatedAt[row] == NONE ? null : timestamp(updatedAt[row]));
+            transaction.setVersion(version[row] == NONE ? null : version[row]);
+            transactions[i] = transaction;
+        }
+        return Arrays.asList(transactions);
+    }
+    
+    private <T> Optional<T> hit(String queryName, T result) {
+        counters(queryName)[0].increment();
+        return Optional.of(result);
+    }
+    
+    private <T> Optional<T> miss(String queryName) {
+        counters(queryName)[1].increment();
+        return Optional.empty();
+    }
+    
+    private Counter[] counters(String queryName) {
+        return queries.computeIfAbsent(queryName, name -> new Counter[] {
+                Counter.builder("payment.hot-window.queries")
+                        .description("Queries the hot window answered (hit) or passed on to Mongo (miss)")
+                        .tag("query", name)
+                        .tag("result", "hit")
+                        .register(meterRegistry),
+                Counter.builder("payment.hot-window.queries")
+                        .description("Queries the hot window answered (hit) or passed on to Mongo (miss)")
+                        .tag("query", name)
+                        .tag("result", "miss")
+                        .register(meterRegistry)});
+    }
+    
+    private double size() {
+        lock.readLock().lock();
+        try {
+            return nextSequence - oldestSequence;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private int row(long sequence) {
+        return (int) (sequence % capacity);
+    }
+    
+    private static int hash(long high, long low) {
+        long mixed = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+    
+    /**
+     * Mongo stores timestamps as UTC milliseconds; compare at that precision.
+     */
+    private static long millis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+    
+    private static LocalDateTime timestamp(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+    
+    private enum Source { ALL, MERCHANT, CUSTOMER, STATUS }
+    
+    /**
+     * Walks the rows of one index from newest to oldest sequence.
+     */
+    private final class Scan {
+        
+        private final Source source;
+        private final BitSet bits;
+        private long sequence;
+        
+        private Scan(Source source, Object key) {
+            this.source = source;
+            this.bits = source == Source.STATUS ? byStatus[((TransactionStatus) key).ordinal()] : null;
+            this.sequence = switch (source) {
+                case MERCHANT -> merchantHeads.getOrDefault((String) key, -1L);
+                case CUSTOMER -> customerHeads.getOrDefault((String) key, -1L);
+                default -> nextSequence - 1;
+            };
+            if (source == Source.STATUS && sequence >= oldestSequence) {
+                sequence = nextSet(sequence);
+            }
+        }
+        
+        /**
+         * The next sequence, or {@code -1} when the index is exhausted.
+         */
+        private long next() {
+            long current = sequence;
+            if (current < oldestSequence) {
+                return -1;
+            }
+            int row = row(current);
+            sequence = switch (source) {
+                case ALL -> current - 1;
+                case MERCHANT -> previousForMerchant[row];
+                case CUSTOMER -> previousForCustomer[row];
+                case STATUS -> current == oldestSequence ? -1 : nextSet(current - 1);
+            };
+            return current;
+        }
+        
+        /**
+         * The highest sequence at or below {@code from} whose row is set.
+         */
+        private long nextSet(long from) {
+            int row = row(from);
+            int found = bits.previousSetBit(row);
+            long sequence = found >= 0 ? from - (row - found) : -1;
+            if (found < 0 && from - row - 1 >= oldestSequence) {
+                // wrap around to the end of the ring
+                long wrapped = from - row - 1;
+                found = bits.previousSetBit(capacity - 1);
+                sequence = found >= 0 ? wrapped - (capacity - 1 - found) : -1;
+            }
+            return sequence >= oldestSequence ? sequence : -1;
+        }
+    }
+    
+    /**
+     * Rows collected by a scan. Scans run in sequence order, which follows
+     * {@code createdAt} to within the largest skew seen between concurrent
+     * writers, so once {@code limit} rows are collected the scan can stop at
+     * the first row older than all of them by more than that skew.
+     */
+    private static final class Selection {
+        
+        private final int limit;
+        private int[] rows = new int[16];
+        private int count;
+        private long oldestOfFirst = Long.MAX_VALUE;
+        
+        private Selection(int limit) {
+            this.limit = limit;
+        }
+        
+        private void add(int row, long createdAt) {
+            if (count < limit) {
+                oldestOfFirst = Math.min(oldestOfFirst, createdAt);
+            }
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            rows[count++] = row;
+        }
+        
+        private boolean full(long createdAt, long skew) {
+            return count >= limit && createdAt < oldestOfFirst - skew;
+        }
+        
+        private Integer[] sorted(Comparator<Integer> order) {
+            Integer[] sorted = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = rows[i];
+            }
+            Arrays.sort(sorted, order);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.ApiResponse;
+import com.example.payment.dto.IdempotentResponse;
+import com.example.payment.exception.IdempotencyKeyInProgressException;
+import com.example.payment.exception.IdempotencyKeyReuseException;
+import com.example.payment.model.IdempotencyRecord;
+import com.example.payment.model.Transaction;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a create request at most once per {@code Idempotency-Key}. Recent keys
+ * live in a bounded Caffeine map of response futures: a replay is a single
+ * hash lookup, and a concurrent duplicate waits on the original's future.
+ * Keys are also claimed in the {@code idempotency_keys} collection, whose
+ * {@code _id} is the key, so duplicates arriving at another instance or after
+ * eviction still see the stored response. A first-time key costs one
+ * synchronous insert to claim it; the response is written to the record in
+ * the background. Responses with a 5xx status are not stored, so the client
+ * can retry them; a key is only released when the request itself failed,
+ * never after it has run.
+ */
+@Service
+public class IdempotencyService {
+    
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+    
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int COMPLETE_ATTEMPTS = 4;
+    private static final TypeReference<ApiResponse<Transaction>> RESPONSE_TYPE = new TypeReference<>() {};
+    
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentMap<String, CompletableFuture<IdempotentResponse<Transaction>>> recent;
+    private final Duration retention;
+    private final Duration lockTimeout;
+    
+    @Autowired
+    public IdempotencyService(MongoTemplate mongoTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${payment.idempotency.maximum-size:100000}") long maximumSize,
+                              @Value("${payment.idempotency.memory-ttl:10m}") Duration memoryTtl,
+                              @Value("${payment.idempotency.retention:24h}") Duration retention,
+                              @Value("${payment.idempotency.lock-timeout:30s}") Duration lockTimeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.retention = retention;
+        this.lockTimeout = lockTimeout;
+        Cache<String, CompletableFuture<IdempotentResponse<Transaction>>> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(memoryTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "idempotency-keys");
+        this.recent = cache.asMap();
+    }
+    
+    public IdempotentResponse<Transaction> execute(String key, Object request,
+                                                   Supplier<IdempotentResponse<Transaction>> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String requestHash = fingerprint(request);
+        CompletableFuture<IdempotentResponse<Transaction>> claim = new CompletableFuture<>();
+        CompletableFuture<IdempotentResponse<Transaction>> existing;
+        while ((existing = recent.putIfAbsent(key, claim)) != null) {
+            IdempotentResponse<Transaction> response = await(key, existing);
+            if (response != null) {
+                return replay(key, requestHash, response);
+            }
+            // the original attempt failed and released the key; compete for it again
+            recent.remove(key, existing);
+        }
+        
+        boolean ownsStoredKey = false;
+        IdempotentResponse<Transaction> response;
+        try {
+            IdempotentResponse<Transaction> stored = claimInStore(key, requestHash);
+            if (stored != null) {
+                claim.complete(stored);
+                return replay(key, requestHash, stored);
+            }
+            ownsStoredKey = true;
+            response = action.get().forRequest(requestHash);
+        } catch (RuntimeException e) {
+            release(key, claim, ownsStoredKey, e);
+            throw e;
+        }
+        if (response.getStatusCode() >= 500) {
+            release(key, claim, true,
+                    new IllegalStateException("Request failed with status " + response.getStatusCode()));
+            return response;
+        }
+        // the action ran, so the key stays claimed even if storing the response fails
+        claim.complete(response);
+        Update completed = new Update()
+                .set("state", IdempotencyRecord.COMPLETED)
+                .set("statusCode", response.getStatusCode())
+                .set("responseBody", serialize(response.getBody()));
+        CompletableFuture.runAsync(() -> complete(key, completed, 1));
+        return response;
+    }
+    
+    private IdempotentResponse<Transaction> await(String key,
+                                                  CompletableFuture<IdempotentResponse<Transaction>> inFlight) {
+        try {
+            return inFlight.get(lockTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException(key);
+        }
+    }
+    
+    private IdempotentResponse<Transaction> replay(String key, String requestHash,
+                                                   IdempotentResponse<Transaction> response) {
+        if (!response.getRequestHash().equals(requestHash)) {
+            throw new IdempotencyKeyReuseException(key);
+        }
+        return response.asReplay();
+    }
+    
+    /**
+     * Inserts an in-progress record for the key. Returns {@code null} when
+     * this caller now owns the key, or the stored response when the key was
+     * already completed.
+     */
+    private IdempotentResponse<Transaction> claimInStore(String key, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            mongoTemplate.insert(new IdempotencyRecord(key, requestHash, now, now.plus(retention)));
+            return null;
+        } catch (DuplicateKeyException e) {
+            IdempotencyRecord record = mongoTemplate.findById(key, IdempotencyRecord.class);
+            if (record == null) {
+                return claimInStore(key, requestHash);
+            }
+            if (!record.getRequestHash().equals(requestHash)) {
+                throw new IdempotencyKeyReuseException(key);
+            }
+            if (IdempotencyRecord.COMPLETED.equals(record.getState())) {
+                return new IdempotentResponse<>(record.getRequestHash(), record.getStatusCode(),
+                        deserialize(record.getResponseBody()), true);
+            }
+            Query abandoned = Query.query(Criteria.where("id").is(key)
+                    .and("state").is(IdempotencyRecord.IN_PROGRESS)
+                    .and("lockedAt").lt(now.minus(lockTimeout)));
+            if (mongoTemplate.updateFirst(abandoned, Update.update("lockedAt", now), IdempotencyRecord.class)
+                    .getModifiedCount() == 1) {
+                return null;
+            }
+            throw new IdempotencyKeyInProgressException(key);
+        }
+    }
+    
+    /**
+     * Stores the response under the key, off the request thread. A failed
+     * write is retried within the lock timeout, so the in-progress record is
+     * not taken over and the action run again; until the write lands,
+     * replays on this instance are served from the completed in-memory claim
+     * and other instances see the key as in progress.
+     */
+    private void complete(String key, Update update, int attempt) {
+        try {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(key)), update, IdempotencyRecord.class);
+        } catch (DataAccessException e) {
+            if (attempt >= COMPLETE_ATTEMPTS) {
+                log.error("Could not store the response for Idempotency-Key {} after {} attempts: {}",
+                        key, attempt, e.getMessage());
+                return;
+            }
+            log.warn("Could not store the response for Idempotency-Key {}, retrying: {}", key, e.getMessage());
+            long delay = lockTimeout.toMillis() / (COMPLETE_ATTEMPTS + 1);
+            CompletableFuture.runAsync(() -> complete(key, update, attempt + 1),
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+        }
+    }
+    
+    private void release(String key, CompletableFuture<IdempotentResponse<Transaction>> claim,
+                         boolean ownsStoredKey, Throwable cause) {
+        recent.remove(key, claim);
+        claim.completeExceptionally(cause);
+        if (!ownsStoredKey) {
+            return;
+        }
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("id").is(key)
+                    .and("state").is(IdempotencyRecord.IN_PROGRESS)), IdempotencyRecord.class);
+        } catch (DataAccessException e) {
+            log.warn("Could not release Idempotency-Key {}, it frees up after the lock timeout: {}",
+                    key, e.getMessage());
+        }
+    }
+    
+    private String fingerprint(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint request", e);
+        }
+    }
+    
+    private String serialize(ApiResponse<Transaction> body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not store idempotent response", e);
+        }
+    }
+    
+    private ApiResponse<Transaction> deserialize(String body) {
+        try {
+            return objectMapper.readValue(body, RESPONSE_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read stored idempotent response", e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.CursorPage;
+import com.example.payment.model.Transaction;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Opaque position in the {@code (createdAt, id)} ordering used by keyset
+ * pagination. Clients only ever see the URL-safe Base64 token.
+ */
+final class KeysetCursor {
+    
+    static final int MAX_PAGE_SIZE = 1000;
+    
+    private static final char SEPARATOR = '|';
+    
+    private final LocalDateTime createdAt;
+    private final UUID id;
+    
+    private KeysetCursor(LocalDateTime createdAt, UUID id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+    
+    static int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+    
+    static Query pageQuery(Query filter, String cursor, int pageSize, Sort.Direction direction) {
+        Query query = Query.of(filter)
+                .with(Sort.by(direction, "createdAt", "id"))
+                .limit(pageSize + 1);
+        if (cursor != null && !cursor.isBlank()) {
+            query.addCriteria(decode(cursor).seekCriteria(direction));
+        }
+        return query;
+    }
+    
+    static CursorPage<Transaction> toPage(List<Transaction> fetched, int pageSize, Long total) {
+        boolean hasNext = fetched.size() > pageSize;
+        List<Transaction> content = hasNext ? fetched.subList(0, pageSize) : fetched;
+        String nextCursor = hasNext ? after(content.get(content.size() - 1)).encode() : null;
+        return new CursorPage<>(content, content.size(), hasNext, nextCursor, total);
+    }
+    
+    static KeysetCursor after(Transaction transaction) {
+        return new KeysetCursor(transaction.getCreatedAt(), transaction.getId());
+    }
+    
+    static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new KeysetCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+    
+    LocalDateTime createdAt() {
+        return createdAt;
+    }
+    
+    UUID id() {
+        return id;
+    }
+    
+    String encode() {
+        String raw = createdAt.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private Criteria seekCriteria(Sort.Direction direction) {
+        if (direction.isAscending()) {
+            return new Criteria().orOperator(
+                    Criteria.where("createdAt").gt(createdAt),
+                    Criteria.where("createdAt").is(createdAt).and("id").gt(id));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(createdAt),
+                Criteria.where("createdAt").is(createdAt).and("id").lt(id));
+    }
+}
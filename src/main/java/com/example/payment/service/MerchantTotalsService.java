@@ -0,0 +1,179 @@
+package com.example.payment.service;
+
+import com.example.payment.model.MerchantTotal;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.example.payment.repository.MerchantTotalRepository;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps running totals per (merchantId, status, currency) so that merchant
+ * totals are a single indexed read instead of a scan over every transaction.
+ * Every write path applies a {@code $inc} upsert; {@link #rebuild()}
+ * recomputes the whole store from the transactions collection and the
+ * archive to repair any drift.
+ */
+@Service
+public class MerchantTotalsService {
+    
+    private static final Logger log = LoggerFactory.getLogger(MerchantTotalsService.class);
+    
+    private final MongoTemplate mongoTemplate;
+    private final MerchantTotalRepository merchantTotalRepository;
+    private final TransactionArchive transactionArchive;
+    
+    @Autowired
+    public MerchantTotalsService(MongoTemplate mongoTemplate, MerchantTotalRepository merchantTotalRepository,
+                                 TransactionArchive transactionArchive) {
+        this.mongoTemplate = mongoTemplate;
+        this.merchantTotalRepository = merchantTotalRepository;
+        this.transactionArchive = transactionArchive;
+    }
+    
+    public Map<String, BigDecimal> getTotalsByCurrency(String merchantId, TransactionStatus status) {
+        Map<String, BigDecimal> totals = new TreeMap<>();
+        for (MerchantTotal total : merchantTotalRepository.findByMerchantIdAndStatus(merchantId, status)) {
+            totals.put(total.getCurrency(), total.getTotal());
+        }
+        return totals;
+    }
+    
+    public void recordCreated(Transaction transaction) {
+        mongoTemplate.upsert(keyQuery(transaction, transaction.getStatus()),
+                increment(transaction, transaction.getStatus(), transaction.getAmount(), 1),
+                MerchantTotal.class);
+    }
+    
+    public void recordCreated(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MerchantTotal.class);
+        for (Transaction transaction : transactions) {
+            operations.upsert(keyQuery(transaction, transaction.getStatus()),
+                    increment(transaction, transaction.getStatus(), transaction.getAmount(), 1));
+        }
+        operations.execute();
+    }
+    
+    public void recordStatusChange(Transaction transaction, TransactionStatus previousStatus) {
+        if (previousStatus == transaction.getStatus()) {
+            return;
+        }
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MerchantTotal.class)
+                .upsert(keyQuery(transaction, previousStatus),
+                        increment(transaction, previousStatus, transaction.getAmount().negate(), -1))
+                .upsert(keyQuery(transaction, transaction.getStatus()),
+                        increment(transaction, transaction.getStatus(), transaction.getAmount(), 1))
+                .execute();
+    }
+    
+    public void recordStatusChanges(List<Transaction> transactions, List<TransactionStatus> previousStatuses) {
+        BulkOperations operations = null;
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            TransactionStatus previousStatus = previousStatuses.get(i);
+            if (previousStatus == transaction.getStatus()) {
+                continue;
+            }
+            if (operations == null) {
+                operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MerchantTotal.class);
+            }
+            operations.upsert(keyQuery(transaction, previousStatus),
+                            increment(transaction, previousStatus, transaction.getAmount().negate(), -1))
+                    .upsert(keyQuery(transaction, transaction.getStatus()),
+                            increment(transaction, transaction.getStatus(), transaction.getAmount(), 1));
+        }
+        if (operations != null) {
+            operations.execute();
+        }
+    }
+    
+    public void recordDeleted(Transaction transaction) {
+        mongoTemplate.upsert(keyQuery(transaction, transaction.getStatus()),
+                increment(transaction, transaction.getStatus(), transaction.getAmount().negate(), -1),
+                MerchantTotal.class);
+    }
+    
+    /**
+     * Recomputes every total from the transactions collection and the archive
+     * and atomically swaps the result in with {@code $out}. Increments that
+     * land while the pipeline runs are overwritten, so this is meant for
+     * off-peak schedules.
+     */
+    @Scheduled(cron = "${payment.totals.reconcile-cron:0 0 3 * * *}")
+    public void rebuild() {
+        long started = System.currentTimeMillis();
+        List<AggregationOperation> operations = new ArrayList<>();
+        for (Document union : transactionArchive.unionWith(null, null, null)) {
+            operations.add(Aggregation.stage(union));
+        }
+        operations.add(Aggregation.group("merchantId", "status", "currency")
+                .sum(ConvertOperators.valueOf("amount").convertToDecimal()).as("total")
+                .count().as("count"));
+        operations.add(Aggregation.stage(new Document("$project", new Document()
+                .append("_id", new Document("$concat",
+                        List.of("$_id.merchantId", ":", "$_id.status", ":", "$_id.currency")))
+                .append("merchantId", "$_id.merchantId")
+                .append("status", "$_id.status")
+                .append("currency", "$_id.currency")
+                .append("total", 1)
+                .append("count", 1)
+                .append("updatedAt", "$$NOW"))));
+        operations.add(Aggregation.out(mongoTemplate.getCollectionName(MerchantTotal.class)));
+        TypedAggregation<Transaction> aggregation = Aggregation.newAggregation(Transaction.class, operations);
+        mongoTemplate.aggregate(aggregation, Document.class);
+        log.info("Rebuilt merchant totals in {} ms", System.currentTimeMillis() - started);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        try {
+            if (merchantTotalRepository.count() == 0 && mongoTemplate.estimatedCount(Transaction.class) > 0) {
+                rebuild();
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not seed merchant totals at startup: {}", e.getMessage());
+        }
+    }
+    
+    static Query keyQuery(Transaction transaction, TransactionStatus status) {
+        String key = MerchantTotal.key(transaction.getMerchantId(), status, transaction.getCurrency());
+        return Query.query(Criteria.where("id").is(key));
+    }
+    
+    static Update increment(Transaction transaction, TransactionStatus status, BigDecimal amount, long count) {
+        return new Update()
+                .inc("total", new Decimal128(amount))
+                .inc("count", count)
+                .set("updatedAt", LocalDateTime.now())
+                .setOnInsert("merchantId", transaction.getMerchantId())
+                .setOnInsert("status", status)
+                .setOnInsert("currency", transaction.getCurrency());
+    }
+}
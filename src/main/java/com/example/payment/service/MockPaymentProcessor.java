@@ -0,0 +1,43 @@
+package com.example.payment.service;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Simulates a payment provider with an 80% success rate and an optional fixed
+ * latency per call.
+ */
+@Component
+public class MockPaymentProcessor implements PaymentProcessor {
+    
+    private final Duration latency;
+    
+    @Autowired
+    public MockPaymentProcessor(@Value("${payment.processor.mock.latency:0ms}") Duration latency) {
+        this.latency = latency;
+    }
+    
+    @Override
+    public TransactionStatus process(Transaction transaction) {
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while processing " + transaction.getId(), e);
+            }
+        }
+        double successRate = 0.8;
+        if (ThreadLocalRandom.current().nextDouble() <= successRate) {
+            return TransactionStatus.COMPLETED;
+        } else {
+            return TransactionStatus.FAILED;
+        }
+    }
+}
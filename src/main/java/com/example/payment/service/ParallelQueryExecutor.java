@@ -0,0 +1,263 @@
+package com.example.payment.service;
+
+import com.example.payment.model.Transaction;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a cross-merchant transaction scan as consecutive {@code createdAt}
+ * sub-ranges, newest first, with up to {@code parallelism} of them in flight
+ * at once. The sub-ranges are disjoint and ordered, so concatenating their
+ * sorted results gives the overall {@code (createdAt, id)} order without a
+ * merge step. Results stream out as soon as the newest pending split is
+ * done, and a limit stops scheduling further splits once it is met.
+ */
+@Service
+public class ParallelQueryExecutor {
+    
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int parallelism;
+    private final Duration splitSize;
+    private final int maxSplits;
+    private final ExecutorService executor;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public ParallelQueryExecutor(MongoTemplate mongoTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${payment.parallel-query.enabled:false}") boolean enabled,
+                                 @Value("${payment.parallel-query.parallelism:4}") int parallelism,
+                                 @Value("${payment.parallel-query.split-size:6h}") Duration splitSize,
+                                 @Value("${payment.parallel-query.max-splits:256}") int maxSplits,
+                                 @Value("${payment.parallel-query.threads:16}") int threads,
+                                 @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.parallelism = Math.max(1, parallelism);
+        this.splitSize = splitSize;
+        this.maxSplits = Math.max(1, maxSplits);
+        if (!enabled) {
+            this.executor = null;
+        } else if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("query-split-", 0).factory());
+        } else {
+            this.executor = Executors.newFixedThreadPool(threads,
+                    Thread.ofPlatform().name("query-split-", 0).daemon(true).factory());
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Finds the transactions matching {@code filter} created in
+     * {@code [from, to]}, newest first. Null bounds are taken from the oldest
+     * and newest matching transaction.
+     */
+    public List<Transaction> find(String queryName, Query filter, LocalDateTime from, LocalDateTime to,
+                                  Integer limit) {
+        try (Stream<Transaction> results = stream(queryName, filter, from, to, limit)) {
+            return results.toList();
+        }
+    }
+    
+    /**
+     * Like {@link #find}, but hands each split's results on as soon as it and
+     * all newer splits are done. Closing the stream cancels splits still in
+     * flight.
+     */
+    public Stream<Transaction> stream(String queryName, Query filter, LocalDateTime from, LocalDateTime to,
+                                      Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        if (from == null || to == null) {
+            LocalDateTime oldest = from != null ? from : boundary(filter, Sort.Direction.ASC);
+            LocalDateTime newest = to != null ? to : boundary(filter, Sort.Direction.DESC);
+            if (oldest == null || newest == null) {
+                return Stream.empty();
+            }
+            from = oldest;
+            to = newest;
+        }
+        if (to.isBefore(from)) {
+            return Stream.empty();
+        }
+        
+        Duration range = Duration.between(from, to);
+        long wanted = (range.toNanos() + splitSize.toNanos() - 1) / splitSize.toNanos();
+        long splits = Math.min(maxSplits, Math.max(1, wanted));
+        Duration step = range.dividedBy(splits);
+        SplitIterator iterator = new SplitIterator(meters(queryName), filter, from, to, step, (int) splits,
+                limit == null ? Integer.MAX_VALUE : limit);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::cancel);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+    
+    private LocalDateTime boundary(Query filter, Sort.Direction direction) {
+        Query query = Query.of(filter).with(Sort.by(direction, "createdAt")).limit(1);
+        query.fields().include("createdAt");
+        Transaction boundary = mongoTemplate.findOne(query, Transaction.class);
+        return boundary == null ? null : boundary.getCreatedAt();
+    }
+    
+    private Meters meters(String queryName) {
+        return meters.computeIfAbsent(queryName, name -> new Meters(
+                Timer.builder("payment.parallel-query.split")
+                        .description("Time to run one createdAt split of a parallel query")
+                        .tag("query", name)
+                        .register(meterRegistry),
+                DistributionSummary.builder("payment.parallel-query.splits")
+                        .description("Splits a parallel query was cut into")
+                        .tag("query", name)
+                        .register(meterRegistry)));
+    }
+    
+    private static final class Meters {
+        
+        private final Timer split;
+        private final DistributionSummary splits;
+        
+        private Meters(Timer split, DistributionSummary splits) {
+            this.split = split;
+            this.splits = splits;
+        }
+    }
+    
+    /**
+     * Yields split results in order while keeping the next
+     * {@code parallelism} splits running.
+     */
+    private final class SplitIterator implements Iterator<Transaction> {
+        
+        private final Meters meters;
+        private final Query filter;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final Duration step;
+        private final int splits;
+        private final int limit;
+        private final Deque<Future<List<Transaction>>> inFlight = new ArrayDeque<>();
+        private int submitted;
+        private int remaining;
+        private List<Transaction> current = List.of();
+        private int position;
+        
+        private SplitIterator(Meters meters, Query filter, LocalDateTime from, LocalDateTime to, Duration step,
+                              int splits, int limit) {
+            this.meters = meters;
+            this.filter = filter;
+            this.from = from;
+            this.to = to;
+            this.step = step;
+            this.splits = splits;
+            this.limit = limit;
+            this.remaining = limit;
+            while (submitted < Math.min(parallelism, splits)) {
+                submitNext();
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (position == current.size()) {
+                if (remaining == 0 || inFlight.isEmpty()) {
+                    cancel();
+                    return false;
+                }
+                current = await(inFlight.poll());
+                position = 0;
+                if (submitted < splits && current.size() < remaining) {
+                    submitNext();
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public Transaction next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return current.get(position++);
+        }
+        
+        private void submitNext() {
+            int index = submitted++;
+            // newest split first; the oldest one is closed at from, the others open below
+            LocalDateTime upper = to.minus(step.multipliedBy(index));
+            Criteria range = index == splits - 1
+                    ? Criteria.where("createdAt").gte(from).lte(upper)
+                    : Criteria.where("createdAt").gt(upper.minus(step)).lte(upper);
+            Query query = Query.of(filter).addCriteria(range).with(ShardRouter.MERGE_ORDER);
+            if (limit != Integer.MAX_VALUE) {
+                query.limit(limit);
+            }
+            if (index == 0) {
+                meters.splits.record(splits);
+            }
+            inFlight.add(executor.submit(() -> meters.split.recordCallable(
+                    () -> mongoTemplate.find(query, Transaction.class))));
+        }
+        
+        private List<Transaction> await(Future<List<Transaction>> future) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                cancel();
+                throw e.getCause() instanceof RuntimeException cause ? cause : new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+        
+        private void cancel() {
+            Future<List<Transaction>> future;
+            while ((future = inFlight.poll()) != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.payment.service;
+
+import com.example.payment.config.PaymentMetrics;
+import com.example.payment.event.TransactionCreatedEvent;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves newly created transactions through PENDING, PROCESSING and
+ * COMPLETED or FAILED, off the request thread. Work sits in a bounded
+ * in-memory queue that a fixed pool of workers drains in batches. Status
+ * writes for a batch share a single merchant-totals bulk write. Failed
+ * processor calls are retried with exponential backoff.
+ *
+ * <p>The queue is not durable. Anything lost to a full queue or a restart
+ * stays PENDING or PROCESSING in Mongo, and {@link #recoverStuckTransactions()}
+ * picks it up again once it is older than {@code stuck-after}.
+ */
+@Service
+@ConditionalOnProperty(name = "payment.pipeline.enabled", havingValue = "true", matchIfMissing = true)
+public class PaymentPipeline {
+    
+    private static final Logger log = LoggerFactory.getLogger(PaymentPipeline.class);
+    
+    private final TransactionService transactionService;
+    private final MongoTemplate mongoTemplate;
+    private final PaymentProcessor paymentProcessor;
+    private final PaymentMetrics paymentMetrics;
+    private final BlockingQueue<WorkItem> queue;
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+    private final int workerCount;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration stuckAfter;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryScheduler;
+    private final Counter rejected;
+    private final Counter retried;
+    private final Counter recovered;
+    private volatile boolean running;
+    
+    @Autowired
+    public PaymentPipeline(TransactionService transactionService,
+                           MongoTemplate mongoTemplate,
+                           PaymentProcessor paymentProcessor,
+                           PaymentMetrics paymentMetrics,
+                           MeterRegistry meterRegistry,
+                           @Value("${payment.pipeline.queue-capacity:10000}") int queueCapacity,
+                           @Value("${payment.pipeline.workers:8}") int workerCount,
+                           @Value("${payment.pipeline.batch-size:50}") int batchSize,
+                           @Value("${payment.pipeline.max-attempts:3}") int maxAttempts,
+                           @Value("${payment.pipeline.initial-backoff:200ms}") Duration initialBackoff,
+                           @Value("${payment.pipeline.max-backoff:10s}") Duration maxBackoff,
+                           @Value("${payment.pipeline.stuck-after:2m}") Duration stuckAfter,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.transactionService = transactionService;
+        this.mongoTemplate = mongoTemplate;
+        this.paymentProcessor = paymentProcessor;
+        this.paymentMetrics = paymentMetrics;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.stuckAfter = stuckAfter;
+        ThreadFactory workerThreads = virtualThreads
+                ? Thread.ofVirtual().name("payment-worker-", 0).factory()
+                : Thread.ofPlatform().name("payment-worker-", 0).daemon(true).factory();
+        this.workers = Executors.newFixedThreadPool(workerCount, workerThreads);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("payment-retry").daemon(true).factory());
+        
+        Gauge.builder("payment.pipeline.queue.depth", queue, BlockingQueue::size)
+                .description("Transactions waiting for a payment worker")
+                .register(meterRegistry);
+        Gauge.builder("payment.pipeline.queue.capacity", queue, q -> q.size() + q.remainingCapacity())
+                .register(meterRegistry);
+        Gauge.builder("payment.pipeline.in-flight", inFlight, Set::size)
+                .description("Transactions queued, processing or waiting for a retry")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("payment.pipeline.rejected")
+                .description("Transactions left PENDING because the queue was full")
+                .register(meterRegistry);
+        this.retried = Counter.builder("payment.pipeline.retries")
+                .description("Processor calls retried after a transient error")
+                .register(meterRegistry);
+        this.recovered = Counter.builder("payment.pipeline.recovered")
+                .description("Stuck PENDING or PROCESSING transactions re-queued by the recovery sweep")
+                .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::runWorker);
+        }
+        log.info("Payment pipeline started with {} workers", workerCount);
+        recoverStuckTransactions();
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        retryScheduler.shutdownNow();
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+    
+    @EventListener
+    public void onTransactionCreated(TransactionCreatedEvent event) {
+        submit(event.getTransaction());
+    }
+    
+    public boolean submit(Transaction transaction) {
+        if (!inFlight.add(transaction.getId())) {
+            return false;
+        }
+        if (!queue.offer(new WorkItem(transaction, 0))) {
+            inFlight.remove(transaction.getId());
+            rejected.increment();
+            log.warn("Payment queue full, transaction {} stays {} until recovery", transaction.getId(),
+                    transaction.getStatus());
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Re-queues transactions that have sat in PENDING or PROCESSING for longer
+     * than {@code stuck-after}. PROCESSING rows go straight back to the
+     * processor, which is why processors must be idempotent.
+     */
+    @Scheduled(fixedDelayString = "${payment.pipeline.recovery-interval:PT1M}",
+            initialDelayString = "${payment.pipeline.recovery-interval:PT1M}")
+    public void recoverStuckTransactions() {
+        int capacity = queue.remainingCapacity();
+        if (!running || capacity == 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(stuckAfter);
+        Query query = Query.query(new Criteria().orOperator(
+                        Criteria.where("status").is(TransactionStatus.PENDING).and("createdAt").lt(cutoff),
+                        Criteria.where("status").is(TransactionStatus.PROCESSING).and("updatedAt").lt(cutoff)))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(capacity);
+        try {
+            int count = 0;
+            for (Transaction transaction : mongoTemplate.find(query, Transaction.class)) {
+                if (submit(transaction)) {
+                    count++;
+                }
+            }
+            if (count > 0) {
+                recovered.increment(count);
+                log.info("Re-queued {} stuck transactions", count);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Stuck transaction recovery failed: {}", e.getMessage());
+        }
+    }
+    
+    private void runWorker() {
+        List<WorkItem> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                WorkItem first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                processBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Payment batch of {} failed, leaving it for recovery", batch.size(), e);
+                for (WorkItem item : batch) {
+                    inFlight.remove(item.transaction.getId());
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void processBatch(List<WorkItem> batch) {
+        Map<UUID, TransactionStatus> claims = new LinkedHashMap<>();
+        for (WorkItem item : batch) {
+            if (item.transaction.getStatus() == TransactionStatus.PENDING) {
+                claims.put(item.transaction.getId(), TransactionStatus.PROCESSING);
+            }
+        }
+        Map<UUID, Transaction> claimed = new HashMap<>();
+        for (Transaction transaction : transactionService.updateTransactionStatuses(claims)) {
+            claimed.put(transaction.getId(), transaction);
+        }
+        
+        Map<UUID, TransactionStatus> outcomes = new LinkedHashMap<>();
+        for (WorkItem item : batch) {
+            Transaction transaction = item.transaction;
+            if (transaction.getStatus() == TransactionStatus.PENDING) {
+                transaction = claimed.get(transaction.getId());
+                if (transaction == null) {
+                    // cancelled or deleted while queued
+                    inFlight.remove(item.transaction.getId());
+                    continue;
+                }
+            }
+            long started = System.nanoTime();
+            try {
+                TransactionStatus outcome = paymentProcessor.process(transaction);
+                paymentMetrics.recordProcessing(outcome, System.nanoTime() - started);
+                outcomes.put(transaction.getId(), outcome);
+            } catch (RuntimeException e) {
+                if (item.attempt + 1 < maxAttempts && running) {
+                    scheduleRetry(new WorkItem(transaction, item.attempt + 1), e);
+                } else {
+                    log.warn("Payment for transaction {} failed after {} attempts: {}", transaction.getId(),
+                            item.attempt + 1, e.getMessage());
+                    paymentMetrics.recordProcessing(TransactionStatus.FAILED, System.nanoTime() - started);
+                    outcomes.put(transaction.getId(), TransactionStatus.FAILED);
+                }
+            }
+        }
+        
+        try {
+            transactionService.updateTransactionStatuses(outcomes);
+        } finally {
+            inFlight.removeAll(outcomes.keySet());
+        }
+    }
+    
+    private void scheduleRetry(WorkItem item, RuntimeException cause) {
+        long backoff = Math.min(initialBackoff.toMillis() << (item.attempt - 1), maxBackoff.toMillis());
+        retried.increment();
+        log.debug("Retrying transaction {} in {} ms (attempt {}): {}", item.transaction.getId(), backoff,
+                item.attempt + 1, cause.getMessage());
+        retryScheduler.schedule(() -> {
+            if (!queue.offer(item)) {
+                inFlight.remove(item.transaction.getId());
+                rejected.increment();
+            }
+        }, backoff, TimeUnit.MILLISECONDS);
+    }
+    
+    private static final class WorkItem {
+        
+        private final Transaction transaction;
+        private final int attempt;
+        
+        private WorkItem(Transaction transaction, int attempt) {
+            this.transaction = transaction;
+            this.attempt = attempt;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.payment.service;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+
+/**
+ * Charges a transaction against the external payment provider and returns the
+ * final status, {@link TransactionStatus#COMPLETED} or
+ * {@link TransactionStatus#FAILED}. Throwing signals a transient error and the
+ * pipeline retries the call. A transaction recovered after a restart may be
+ * submitted again, so implementations must be idempotent per transaction id.
+ */
+public interface PaymentProcessor {
+    
+    TransactionStatus process(Transaction transaction);
+}
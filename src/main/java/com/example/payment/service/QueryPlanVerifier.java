@@ -0,0 +1,134 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.QueryPlanReport;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Runs {@code explain} for every query shape the service issues against the
+ * transactions collection and reports the winning plan. Any shape that falls
+ * back to a collection scan is missing an index.
+ */
+@Service
+public class QueryPlanVerifier {
+    
+    private static final Logger log = LoggerFactory.getLogger(QueryPlanVerifier.class);
+    
+    private final MongoTemplate mongoTemplate;
+    private final QueryMapper queryMapper;
+    private final boolean verifyOnStartup;
+    
+    @Autowired
+    public QueryPlanVerifier(MongoTemplate mongoTemplate,
+                             @Value("${payment.diagnostics.verify-query-plans-on-startup:false}")
+                             boolean verifyOnStartup) {
+        this.mongoTemplate = mongoTemplate;
+        this.queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        this.verifyOnStartup = verifyOnStartup;
+    }
+    
+    public List<QueryPlanReport> explainAll() {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Transaction.class);
+        List<QueryPlanReport> reports = new ArrayList<>();
+        for (Map.Entry<String, Query> entry : queryShapes().entrySet()) {
+            Document filter = queryMapper.getMappedObject(entry.getValue().getQueryObject(), entity);
+            Document sort = queryMapper.getMappedSort(entry.getValue().getSortObject(), entity);
+            Document explain = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class))
+                    .find(filter)
+                    .sort(sort)
+                    .explain();
+            Object winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan");
+            List<String> stages = new ArrayList<>();
+            List<String> indexes = new ArrayList<>();
+            collectStages(winningPlan, stages, indexes);
+            reports.add(new QueryPlanReport(entry.getKey(), filter.toJson(), sort.toJson(), stages, indexes));
+        }
+        return reports;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyOnStartup() {
+        if (!verifyOnStartup) {
+            return;
+        }
+        List<String> scans = explainAll().stream()
+                .filter(QueryPlanReport::isCollectionScan)
+                .map(QueryPlanReport::getQuery)
+                .toList();
+        if (!scans.isEmpty()) {
+            throw new IllegalStateException("Queries without a supporting index: " + scans);
+        }
+        log.info("All transaction query shapes are index-backed");
+    }
+    
+    private Map<String, Query> queryShapes() {
+        LocalDateTime now = LocalDateTime.now();
+        Sort keyset = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+        Criteria seek = new Criteria().orOperator(
+                Criteria.where("createdAt").lt(now),
+                Criteria.where("createdAt").is(now).and("id").lt(new UUID(-1L, -1L)));
+        
+        Map<String, Query> shapes = new LinkedHashMap<>();
+        shapes.put("findByMerchantId", Query.query(Criteria.where("merchantId").is("merchant")));
+        shapes.put("findByCustomerId", Query.query(Criteria.where("customerId").is("customer")));
+        shapes.put("findByStatus", Query.query(Criteria.where("status").is(TransactionStatus.PENDING)));
+        shapes.put("findByCreatedAtBetween", Query.query(Criteria.where("createdAt").gte(now.minusDays(1)).lte(now)));
+        shapes.put("findByMerchantIdAndStatus", Query.query(
+                Criteria.where("merchantId").is("merchant").and("status").is(TransactionStatus.COMPLETED)));
+        shapes.put("findAll(sort=createdAt)", new Query().with(Sort.by(Sort.Direction.DESC, "createdAt")));
+        shapes.put("keyset(all)", new Query().addCriteria(seek).with(keyset));
+        shapes.put("keyset(merchantId)", Query.query(Criteria.where("merchantId").is("merchant"))
+                .addCriteria(seek).with(keyset));
+        shapes.put("keyset(customerId)", Query.query(Criteria.where("customerId").is("customer"))
+                .addCriteria(seek).with(keyset));
+        shapes.put("keyset(status)", Query.query(Criteria.where("status").is(TransactionStatus.PENDING))
+                .addCriteria(seek).with(keyset));
+        shapes.put("stuckTransactions", Query.query(new Criteria().orOperator(
+                        Criteria.where("status").is(TransactionStatus.PENDING).and("createdAt").lt(now),
+                        Criteria.where("status").is(TransactionStatus.PROCESSING).and("updatedAt").lt(now)))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt")));
+        return shapes;
+    }
+    
+    private void collectStages(Object node, List<String> stages, List<String> indexes) {
+        if (node instanceof Document document) {
+            Object stage = document.get("stage");
+            if (stage instanceof String name) {
+                stages.add(name);
+            }
+            Object indexName = document.get("indexName");
+            if (indexName instanceof String name) {
+                indexes.add(name);
+            }
+            for (Object value : document.values()) {
+                collectStages(value, stages, indexes);
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object value : list) {
+                collectStages(value, stages, indexes);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.payment.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Version 4 UUIDs from {@link UUID#randomUUID()}. Ids are unpredictable, at
+ * the cost of a {@code SecureRandom} call per id and inserts scattered across
+ * the {@code _id} index.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.id-generator", havingValue = "random")
+public class RandomIdGenerator implements TransactionIdGenerator {
+    
+    @Override
+    public UUID nextId() {
+        return UUID.randomUUID();
+    }
+}
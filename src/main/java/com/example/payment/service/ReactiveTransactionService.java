@@ -0,0 +1,367 @@
+package com.example.payment.service;
+
+import com.example.payment.config.PaymentMetrics;
+import com.example.payment.dto.CreateTransactionRequest;
+import com.example.payment.dto.CursorPage;
+import com.example.payment.dto.ReportRequest;
+import com.example.payment.dto.TransactionReport;
+import com.example.payment.dto.TransactionStats;
+import com.example.payment.event.TransactionChangedEvent;
+import com.example.payment.event.TransactionCreatedEvent;
+import com.example.payment.model.MerchantTotal;
+import com.example.payment.model.RollupGranularity;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionRollup;
+import com.example.payment.model.TransactionStatus;
+import com.example.payment.repository.ReactiveTransactionRepository;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Service
+@Profile("reactive")
+public class ReactiveTransactionService {
+    
+    private static final int ARCHIVE_DEDUPE_BATCH = 500;
+    
+    private final ReactiveTransactionRepository transactionRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final RollupService rollupService;
+    private final ReportService reportService;
+    private final TransactionArchive transactionArchive;
+    private final TransactionLayoutMigration layoutMigration;
+    private final PaymentProcessor paymentProcessor;
+    private final TransactionIdGenerator idGenerator;
+    private final PaymentMetrics paymentMetrics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean asyncProcessing;
+    
+    @Autowired
+    public ReactiveTransactionService(ReactiveTransactionRepository transactionRepository,
+                                      ReactiveMongoTemplate mongoTemplate,
+                                      RollupService rollupService,
+                                      ReportService reportService,
+                                      TransactionArchive transactionArchive,
+                                      TransactionLayoutMigration layoutMigration,
+                                      PaymentProcessor paymentProcessor,
+                                      TransactionIdGenerator idGenerator,
+                                      PaymentMetrics paymentMetrics,
+                                      ApplicationEventPublisher eventPublisher,
+                                      @Value("${payment.pipeline.enabled:true}") boolean asyncProcessing) {
+        this.transactionRepository = transactionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.rollupService = rollupService;
+        this.reportService = reportService;
+        this.transactionArchive = transactionArchive;
+        this.layoutMigration = layoutMigration;
+        this.paymentProcessor = paymentProcessor;
+        this.idGenerator = idGenerator;
+        this.paymentMetrics = paymentMetrics;
+        this.eventPublisher = eventPublisher;
+        this.asyncProcessing = asyncProcessing;
+    }
+    
+    public Mono<Transaction> createTransaction(CreateTransactionRequest request) {
+        Transaction transaction = TransactionService.newTransaction(request, idGenerator);
+        
+        Mono<Transaction> processed = asyncProcessing
+                ? Mono.just(transaction)
+                : Mono.fromCallable(() -> {
+                    transaction.setStatus(processPayment(transaction));
+                    return transaction;
+                }).subscribeOn(Schedulers.boundedElastic());
+        
+        return processed.flatMap(transactionRepository::save)
+                .flatMap(saved -> mongoTemplate.upsert(
+                                MerchantTotalsService.keyQuery(saved, saved.getStatus()),
+                                MerchantTotalsService.increment(saved, saved.getStatus(), saved.getAmount(), 1),
+                                MerchantTotal.class)
+                        .then(recordRollups(saved, null, saved.getStatus()))
+                        .thenReturn(saved))
+                .doOnNext(saved -> {
+                    eventPublisher.publishEvent(TransactionChangedEvent.created(saved));
+                    if (asyncProcessing) {
+                        eventPublisher.publishEvent(new TransactionCreatedEvent(saved));
+                    }
+                });
+    }
+    
+    public Mono<Transaction> getTransactionById(String id, String merchantId) {
+        return Mono.justOrEmpty(TransactionService.parseId(id))
+                .flatMap(transactionId -> mongoTemplate.findOne(
+                                Query.query(ShardRouter.byId(transactionId, merchantId)), Transaction.class)
+                        .switchIfEmpty(migrateLegacy(transactionId).flatMap(migrated -> mongoTemplate.findOne(
+                                Query.query(ShardRouter.byId(transactionId, merchantId)), Transaction.class)))
+                        .switchIfEmpty(Mono.fromCallable(() -> transactionArchive.findById(transactionId, merchantId))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .flatMap(Mono::justOrEmpty)));
+    }
+    
+    public Mono<Page<Transaction>> getAllTransactions(Pageable pageable) {
+        return transactionRepository.findAllBy(pageable)
+                .collectList()
+                .zipWith(transactionRepository.count())
+                .map(result -> new PageImpl<>(result.getT1(), pageable, result.getT2()));
+    }
+    
+    public Mono<CursorPage<Transaction>> getAllTransactions(String cursor, int size, Sort.Direction direction,
+                                                            boolean includeTotal) {
+        return getCursorPage(new Query(), cursor, size, direction, includeTotal);
+    }
+    
+    public Mono<CursorPage<Transaction>> getTransactionsByMerchant(String merchantId, String cursor, int size,
+                                                                   Sort.Direction direction, boolean includeTotal) {
+        return getCursorPage(Query.query(Criteria.where("merchantId").is(merchantId)),
+                cursor, size, direction, includeTotal);
+    }
+    
+    public Mono<CursorPage<Transaction>> getTransactionsByCustomer(String customerId, String cursor, int size,
+                                                                   Sort.Direction direction, boolean includeTotal) {
+        return getCursorPage(Query.query(Criteria.where("customerId").is(customerId)),
+                cursor, size, direction, includeTotal);
+    }
+    
+    public Mono<CursorPage<Transaction>> getTransactionsByStatus(TransactionStatus status, String cursor, int size,
+                                                                 Sort.Direction direction, boolean includeTotal) {
+        return getCursorPage(Query.query(Criteria.where("status").is(status)),
+                cursor, size, direction, includeTotal);
+    }
+    
+    public Flux<Transaction> getTransactionsByMerchant(String merchantId) {
+        return transactionRepository.findByMerchantId(merchantId);
+    }
+    
+    public Flux<Transaction> getTransactionsByCustomer(String customerId) {
+        return transactionRepository.findByCustomerId(customerId);
+    }
+    
+    public Flux<Transaction> getTransactionsByStatus(TransactionStatus status) {
+        return transactionRepository.findByStatus(status);
+    }
+    
+    public Mono<Transaction> updateTransactionStatus(String id, TransactionStatus status, Long expectedVersion,
+                                                     String merchantId) {
+        UUID transactionId = TransactionService.parseId(id);
+        if (transactionId == null) {
+            return Mono.empty();
+        }
+        Criteria target = ShardRouter.byId(transactionId, merchantId);
+        LocalDateTime now = LocalDateTime.now();
+        return mongoTemplate.findAndModify(
+                        TransactionService.transitionQuery(target, status, expectedVersion),
+                        TransactionService.transitionUpdate(status, now),
+                        FindAndModifyOptions.options().returnNew(false),
+                        Transaction.class)
+                .flatMap(previous -> {
+                    TransactionStatus previousStatus = previous.getStatus();
+                    Transaction updated = TransactionService.applyTransition(previous, status, now);
+                    return recordStatusChange(updated, previousStatus)
+                            .then(Mono.fromRunnable(() -> eventPublisher.publishEvent(
+                                    TransactionChangedEvent.statusChanged(updated, previousStatus))))
+                            .thenReturn(updated);
+                })
+                .switchIfEmpty(Mono.defer(() -> mongoTemplate.findOne(Query.query(target), Transaction.class)
+                        .flatMap(current -> Mono.<Transaction>error(
+                                TransactionService.transitionFailure(current, status, expectedVersion)))
+                        .switchIfEmpty(migrateLegacy(transactionId).flatMap(migrated ->
+                                updateTransactionStatus(id, status, expectedVersion, merchantId)))
+                        .switchIfEmpty(restore(transactionId, merchantId).flatMap(restored ->
+                                updateTransactionStatus(id, status, expectedVersion, merchantId)))));
+    }
+    
+    /**
+     * Streams the hot transactions in the range, then the archived ones. An
+     * archived transaction can still be in the hot collection for the length
+     * of one archive batch, so each chunk of archived ids is checked against
+     * the hot collection and the ones found there are skipped.
+     */
+    public Flux<Transaction> getTransactionsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        Query range = Query.query(Criteria.where("createdAt").gte(startDate).lte(endDate));
+        Flux<Transaction> archived = Mono.fromCallable(transactionArchive::segments)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(segments -> segments)
+                .filter(segment -> segment.overlaps(startDate, endDate))
+                .concatMap(segment -> mongoTemplate.find(range, Transaction.class, segment.getCollectionName()))
+                .buffer(ARCHIVE_DEDUPE_BATCH)
+                .concatMap(this::withoutHot);
+        return Flux.concat(transactionRepository.findByCreatedAtBetween(startDate, endDate), archived);
+    }
+    
+    public Mono<Map<String, BigDecimal>> getTotalAmountByMerchantAndStatus(String merchantId,
+                                                                          TransactionStatus status) {
+        Query query = Query.query(Criteria.where("merchantId").is(merchantId).and("status").is(status));
+        return mongoTemplate.find(query, MerchantTotal.class)
+                .collectMap(MerchantTotal::getCurrency, MerchantTotal::getTotal, TreeMap::new);
+    }
+    
+    public Mono<TransactionStats> getStats(String merchantId, TransactionStatus status, String currency,
+                                           LocalDateTime startDate, LocalDateTime endDate,
+                                           RollupGranularity granularity) {
+        return Mono.fromCallable(() -> rollupService.describe(merchantId, status, currency, startDate, endDate,
+                        granularity))
+                .flatMap(stats -> mongoTemplate.aggregate(RollupService.statsAggregation(stats), Document.class)
+                        .map(RollupService::toBucket)
+                        .collectList()
+                        .map(buckets -> {
+                            stats.setBuckets(buckets);
+                            return stats;
+                        }));
+    }
+    
+    /**
+     * Runs the report on a worker thread; reports share the blocking
+     * {@link ReportService} so that its result cache serves both stacks.
+     */
+    public Mono<TransactionReport> runReport(ReportRequest request) {
+        return Mono.fromCallable(() -> reportService.run(request))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    /**
+     * Deletes the transaction from the hot collection and, when it is not
+     * there or is terminal and so may also have been archived, from the
+     * archive, as {@link TransactionService#deleteTransaction} does.
+     */
+    public Mono<Boolean> deleteTransaction(String id, String merchantId) {
+        return Mono.justOrEmpty(TransactionService.parseId(id))
+                .flatMap(transactionId -> mongoTemplate.findAndRemove(
+                                Query.query(ShardRouter.byId(transactionId, merchantId)), Transaction.class)
+                        .switchIfEmpty(migrateLegacy(transactionId).flatMap(migrated -> mongoTemplate.findAndRemove(
+                                Query.query(ShardRouter.byId(transactionId, merchantId)), Transaction.class)))
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(deleted -> deleted.isPresent() && !deleted.get().getStatus().isTerminal()
+                                ? Mono.just(deleted.get())
+                                : Mono.fromCallable(() -> transactionArchive.remove(transactionId, merchantId))
+                                        .subscribeOn(Schedulers.boundedElastic())
+                                        .flatMap(archived -> Mono.justOrEmpty(deleted.or(() -> archived)))))
+                .flatMap(deleted -> mongoTemplate.upsert(
+                                MerchantTotalsService.keyQuery(deleted, deleted.getStatus()),
+                                MerchantTotalsService.increment(deleted, deleted.getStatus(),
+                                        deleted.getAmount().negate(), -1),
+                                MerchantTotal.class)
+                        .then(recordRollups(deleted, deleted.getStatus(), null))
+                        .then(Mono.fromRunnable(() -> eventPublisher.publishEvent(
+                                TransactionChangedEvent.deleted(deleted))))
+                        .thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+    
+    /**
+     * Converts the transaction if it is still stored in the original layout.
+     * Completes empty when there was nothing to convert, so callers only
+     * repeat their lookup after a conversion.
+     */
+    private Mono<Boolean> migrateLegacy(UUID transactionId) {
+        return Mono.fromCallable(() -> layoutMigration.migrateOne(transactionId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .filter(Boolean::booleanValue);
+    }
+    
+    /**
+     * Moves the transaction back from the archive. Completes empty when it
+     * is not archived, so callers only repeat their write after a restore.
+     */
+    private Mono<Transaction> restore(UUID transactionId, String merchantId) {
+        return Mono.fromCallable(() -> transactionArchive.restore(transactionId, merchantId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty);
+    }
+    
+    private Flux<Transaction> withoutHot(List<Transaction> archived) {
+        List<UUID> ids = archived.stream().map(Transaction::getId).toList();
+        Query inHot = Query.query(Criteria.where("id").in(ids));
+        inHot.fields().include("id");
+        return mongoTemplate.find(inHot, Transaction.class)
+                .map(Transaction::getId)
+                .collect(Collectors.toSet())
+                .flatMapIterable(hot -> archived.stream()
+                        .filter(transaction -> !hot.contains(transaction.getId()))
+                        .toList());
+    }
+    
+    private Mono<CursorPage<Transaction>> getCursorPage(Query filter, String cursor, int size,
+                                                        Sort.Direction direction, boolean includeTotal) {
+        int pageSize = KeysetCursor.clampPageSize(size);
+        Mono<Query> pageQuery = Mono.fromCallable(() -> KeysetCursor.pageQuery(filter, cursor, pageSize, direction));
+        Mono<List<Transaction>> page = pageQuery
+                .flatMap(query -> mongoTemplate.find(query, Transaction.class).collectList());
+        if (!includeTotal) {
+            return page.map(transactions -> KeysetCursor.toPage(transactions, pageSize, null));
+        }
+        return page.zipWith(mongoTemplate.count(Query.of(filter), Transaction.class))
+                .map(result -> KeysetCursor.toPage(result.getT1(), pageSize, result.getT2()));
+    }
+    
+    private Mono<Void> recordStatusChange(Transaction transaction, TransactionStatus previousStatus) {
+        if (previousStatus == transaction.getStatus()) {
+            return Mono.empty();
+        }
+        return mongoTemplate.upsert(
+                        MerchantTotalsService.keyQuery(transaction, previousStatus),
+                        MerchantTotalsService.increment(transaction, previousStatus,
+                                transaction.getAmount().negate(), -1),
+                        MerchantTotal.class)
+                .then(mongoTemplate.upsert(
+                        MerchantTotalsService.keyQuery(transaction, transaction.getStatus()),
+                        MerchantTotalsService.increment(transaction, transaction.getStatus(),
+                                transaction.getAmount(), 1),
+                        MerchantTotal.class))
+                .then(recordRollups(transaction, previousStatus, transaction.getStatus()));
+    }
+    
+    private Mono<Void> recordRollups(Transaction transaction, TransactionStatus from, TransactionStatus to) {
+        List<Pair<Query, Update>> changes = rollupService.changes(transaction, from, to);
+        if (changes.isEmpty()) {
+            return Mono.empty();
+        }
+        ReactiveBulkOperations operations =
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TransactionRollup.class);
+        for (Pair<Query, Update> change : changes) {
+            operations.upsert(change.getFirst(), change.getSecond());
+        }
+        Mono<Void> extremes = from == null ? Mono.empty()
+                : Mono.<Void>fromRunnable(() -> rollupService.repairExtremes(List.of(transaction), List.of(from)))
+                        .subscribeOn(Schedulers.boundedElastic());
+        return operations.execute().then(extremes);
+    }
+    
+    private TransactionStatus processPayment(Transaction transaction) {
+        long started = System.nanoTime();
+        TransactionStatus outcome;
+        try {
+            outcome = paymentProcessor.process(transaction);
+        } catch (RuntimeException e) {
+            outcome = TransactionStatus.FAILED;
+        }
+        paymentMetrics.recordProcessing(outcome, System.nanoTime() - started);
+        return outcome;
+    }
+}
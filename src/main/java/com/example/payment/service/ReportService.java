@@ -0,0 +1,220 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.ReportRequest;
+import com.example.payment.dto.ReportRow;
+import com.example.payment.dto.TransactionReport;
+import com.example.payment.exception.ReportTimeoutException;
+import com.example.payment.model.ReportDimension;
+import com.example.payment.model.ReportMetric;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.MongoExecutionTimeoutException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link ReportRequest}s as a single aggregation pipeline on the
+ * transactions collection: a {@code $match} on the creation range plus the
+ * filters, which the {@code createdAt} indexes bound, then {@code $group},
+ * {@code $sort} and {@code $limit}. Archive segments that overlap the range
+ * are brought in with {@code $unionWith} and the same {@code $match}. Only
+ * the grouped rows leave Mongo.
+ *
+ * <p>Each pipeline runs with {@code maxTimeMS} set to {@code timeout} and
+ * fetches one row past the limit to tell whether the report was truncated.
+ * Identical requests compile to identical pipelines, and the result of a
+ * pipeline is reused for {@code cache-ttl}; {@code allowDiskUse} does not
+ * change the result, so it is not part of the key.
+ */
+@Service
+public class ReportService {
+    
+    private final MongoTemplate mongoTemplate;
+    private final TransactionArchive transactionArchive;
+    private final int defaultLimit;
+    private final int maxRows;
+    private final Duration timeout;
+    private final Cache<List<Document>, TransactionReport> cache;
+    private final Timer queryTimer;
+    
+    @Autowired
+    public ReportService(MongoTemplate mongoTemplate, TransactionArchive transactionArchive,
+                         MeterRegistry meterRegistry,
+                         @Value("${payment.reports.default-limit:1000}") int defaultLimit,
+                         @Value("${payment.reports.max-rows:10000}") int maxRows,
+                         @Value("${payment.reports.timeout:30s}") Duration timeout,
+                         @Value("${payment.reports.cache-ttl:30s}") Duration cacheTtl,
+                         @Value("${payment.reports.cache.max-size:500}") long cacheMaxSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.transactionArchive = transactionArchive;
+        this.defaultLimit = Math.min(defaultLimit, maxRows);
+        this.maxRows = maxRows;
+        this.timeout = timeout;
+        if (cacheTtl.isZero()) {
+            this.cache = null;
+        } else {
+            this.cache = Caffeine.newBuilder()
+                    .maximumSize(cacheMaxSize)
+                    .expireAfterWrite(cacheTtl)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "transaction-reports");
+        }
+        this.queryTimer = Timer.builder("payment.reports.query")
+                .description("Time spent running report pipelines")
+                .register(meterRegistry);
+    }
+    
+    public TransactionReport run(ReportRequest request) {
+        int limit = request.getLimit() == null ? defaultLimit : request.getLimit();
+        if (limit > maxRows) {
+            throw new IllegalArgumentException("Reports return at most " + maxRows + " rows");
+        }
+        List<Document> pipeline = compile(request, limit);
+        if (cache != null) {
+            TransactionReport cached = cache.getIfPresent(pipeline);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        TransactionReport report = execute(request, pipeline, limit);
+        if (cache != null) {
+            cache.put(pipeline, report);
+        }
+        return report;
+    }
+    
+    private TransactionReport execute(ReportRequest request, List<Document> pipeline, int limit) {
+        LocalDateTime generatedAt = LocalDateTime.now();
+        List<Document> results = new ArrayList<>();
+        try {
+            queryTimer.record(() -> mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class))
+                    .aggregate(pipeline)
+                    .allowDiskUse(request.isAllowDiskUse())
+                    .maxTime(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .into(results));
+        } catch (MongoExecutionTimeoutException e) {
+            throw new ReportTimeoutException("Report did not finish within " + timeout
+                    + ", narrow the range or filters", e);
+        }
+        boolean truncated = results.size() > limit;
+        List<ReportRow> rows = new ArrayList<>(Math.min(results.size(), limit));
+        for (Document document : truncated ? results.subList(0, limit) : results) {
+            rows.add(toRow(document));
+        }
+        return new TransactionReport(rows, truncated, generatedAt);
+    }
+    
+    List<Document> compile(ReportRequest request, int limit) {
+        if (!request.getEndDate().isAfter(request.getStartDate())) {
+            throw new IllegalArgumentException("endDate must be after startDate");
+        }
+        Document match = new Document(Transaction.FIELDS.get("createdAt"), new Document()
+                .append("$gte", toDate(request.getStartDate()))
+                .append("$lt", toDate(request.getEndDate())));
+        appendFilter(match, "merchantId", request.getMerchantId());
+        appendFilter(match, "customerId", request.getCustomerId());
+        appendFilter(match, "currency", request.getCurrency());
+        appendFilter(match, "paymentMethod", request.getPaymentMethod());
+        if (request.getStatuses() != null && !request.getStatuses().isEmpty()) {
+            List<String> statuses = EnumSet.copyOf(request.getStatuses()).stream()
+                    .map(TransactionStatus::name)
+                    .toList();
+            match.append(Transaction.FIELDS.get("status"),
+                    statuses.size() == 1 ? statuses.get(0) : new Document("$in", statuses));
+        }
+        
+        Set<ReportDimension> dimensions = request.getGroupBy() == null ? Set.of()
+                : new LinkedHashSet<>(request.getGroupBy());
+        Document key = new Document();
+        for (ReportDimension dimension : dimensions) {
+            key.append(dimension.getProperty(), "$" + Transaction.FIELDS.get(dimension.getProperty()));
+        }
+        if (request.getGranularity() != null) {
+            key.append("bucketStart", new Document("$dateTrunc", new Document()
+                    .append("date", "$" + Transaction.FIELDS.get("createdAt"))
+                    .append("unit", request.getGranularity().getMongoUnit())));
+        }
+        Document group = new Document("_id", key.isEmpty() ? null : key);
+        Document amount = new Document("$toDecimal", "$" + Transaction.FIELDS.get("amount"));
+        for (ReportMetric metric : EnumSet.copyOf(request.getMetrics())) {
+            group.append(metric.getField(), new Document(metric.getAccumulator(),
+                    metric == ReportMetric.COUNT ? 1 : amount));
+        }
+        
+        List<Document> pipeline = new ArrayList<>(4);
+        pipeline.add(new Document("$match", match));
+        pipeline.addAll(transactionArchive.unionWith(request.getStartDate(), request.getEndDate(), match));
+        pipeline.add(new Document("$group", group));
+        if (!key.isEmpty()) {
+            Document sort = new Document();
+            for (String field : key.keySet()) {
+                sort.append("_id." + field, 1);
+            }
+            pipeline.add(new Document("$sort", sort));
+        }
+        pipeline.add(new Document("$limit", limit + 1));
+        return pipeline;
+    }
+    
+    static ReportRow toRow(Document document) {
+        ReportRow row = new ReportRow();
+        Document key = document.get("_id", Document.class);
+        if (key != null) {
+            row.setMerchantId(key.getString("merchantId"));
+            row.setCustomerId(key.getString("customerId"));
+            String status = key.getString("status");
+            row.setStatus(status == null ? null : TransactionStatus.valueOf(status));
+            row.setCurrency(key.getString("currency"));
+            row.setPaymentMethod(key.getString("paymentMethod"));
+            Date bucketStart = key.getDate("bucketStart");
+            row.setBucketStart(bucketStart == null ? null
+                    : LocalDateTime.ofInstant(bucketStart.toInstant(), ZoneId.systemDefault()));
+        }
+        Object count = document.get(ReportMetric.COUNT.getField());
+        row.setCount(count == null ? null : ((Number) count).longValue());
+        row.setSum(decimal(document.get(ReportMetric.SUM.getField())));
+        row.setAvg(decimal(document.get(ReportMetric.AVG.getField())));
+        row.setMin(decimal(document.get(ReportMetric.MIN.getField())));
+        row.setMax(decimal(document.get(ReportMetric.MAX.getField())));
+        return row;
+    }
+    
+    private static void appendFilter(Document match, String property, String value) {
+        if (value != null) {
+            match.append(Transaction.FIELDS.get(property), value);
+        }
+    }
+    
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+    
+    private static BigDecimal decimal(Object value) {
+        if (value instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return value == null ? null : new BigDecimal(value.toString());
+    }
+}
@@ -0,0 +1,477 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.StatsBucket;
+import com.example.payment.dto.TransactionStats;
+import com.example.payment.model.RollupGranularity;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionRollup;
+import com.example.payment.model.TransactionStatus;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps per-minute, per-hour and per-day buckets of count, sum, min and max
+ * per (merchantId, status, currency) in {@code transaction_rollups}, so that
+ * range statistics read a few thousand bucket documents instead of every
+ * transaction in the range.
+ *
+ * <p>Writes apply {@code $inc}/{@code $min}/{@code $max} upserts keyed on the
+ * bucket. A status change or delete takes count and sum back out of the old
+ * bucket; {@code $min} and {@code $max} cannot be retracted, so when the
+ * amount that left was the bucket's min or max, those two are recomputed
+ * from the transactions in that bucket. {@link #backfill} recomputes buckets
+ * exactly from the transactions collection and runs nightly over the recent
+ * window. Minute buckets expire after {@code minute-retention}.
+ */
+@Service
+public class RollupService {
+    
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+    
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final Duration minuteRetention;
+    private final int maxBuckets;
+    private final Duration backfillWindow;
+    private final TransactionArchive transactionArchive;
+    
+    @Autowired
+    public RollupService(MongoTemplate mongoTemplate, TransactionArchive transactionArchive,
+                         @Value("${payment.rollups.enabled:true}") boolean enabled,
+                         @Value("${payment.rollups.minute-retention:7d}") Duration minuteRetention,
+                         @Value("${payment.rollups.max-buckets:2500}") int maxBuckets,
+                         @Value("${payment.rollups.backfill-window:2d}") Duration backfillWindow) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.minuteRetention = minuteRetention;
+        this.maxBuckets = maxBuckets;
+        this.backfillWindow = backfillWindow;
+        this.transactionArchive = transactionArchive;
+    }
+    
+    public void recordCreated(Transaction transaction) {
+        execute(changes(transaction, null, transaction.getStatus()));
+    }
+    
+    public void recordCreated(List<Transaction> transactions) {
+        List<Pair<Query, Update>> changes = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            changes.addAll(changes(transaction, null, transaction.getStatus()));
+        }
+        execute(changes);
+    }
+    
+    public void recordStatusChange(Transaction transaction, TransactionStatus previousStatus) {
+        execute(changes(transaction, previousStatus, transaction.getStatus()));
+        repairExtremes(List.of(transaction), List.of(previousStatus));
+    }
+    
+    public void recordStatusChanges(List<Transaction> transactions, List<TransactionStatus> previousStatuses) {
+        List<Pair<Query, Update>> changes = new ArrayList<>();
+        for (int i = 0; i < transactions.size(); i++) {
+            changes.addAll(changes(transactions.get(i), previousStatuses.get(i), transactions.get(i).getStatus()));
+        }
+        execute(changes);
+        repairExtremes(transactions, previousStatuses);
+    }
+    
+    public void recordDeleted(Transaction transaction) {
+        execute(changes(transaction, transaction.getStatus(), null));
+        repairExtremes(List.of(transaction), List.of(transaction.getStatus()));
+    }
+    
+    /**
+     * Recomputes min and max of the buckets the transactions just left, for
+     * the buckets where the amount that left was the stored min or max.
+     * {@code previousStatuses} holds the status each transaction left, in
+     * the same order. A create that lands in the bucket between the
+     * recompute and its write can be missed until the next backfill.
+     */
+    public void repairExtremes(List<Transaction> transactions, List<TransactionStatus> previousStatuses) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime minuteHorizon = LocalDateTime.now().minus(minuteRetention);
+        Map<String, BigDecimal> removed = new HashMap<>();
+        Map<String, Transaction> sources = new HashMap<>();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            TransactionStatus from = previousStatuses.get(i);
+            if (from == null || from == transaction.getStatus()) {
+                continue;
+            }
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                LocalDateTime bucketStart = granularity.bucketStart(transaction.getCreatedAt());
+                if (granularity == RollupGranularity.MINUTE && bucketStart.isBefore(minuteHorizon)) {
+                    continue;
+                }
+                String key = TransactionRollup.key(granularity, transaction.getMerchantId(), from,
+                        transaction.getCurrency(), bucketStart);
+                removed.put(key, transaction.getAmount());
+                sources.put(key, transaction);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        
+        Query buckets = Query.query(Criteria.where("id").in(removed.keySet()));
+        buckets.fields().include("granularity", "status", "bucketStart", "min", "max");
+        for (TransactionRollup bucket : mongoTemplate.find(buckets, TransactionRollup.class)) {
+            BigDecimal amount = removed.get(bucket.getId());
+            if (isExtreme(amount, bucket.getMin()) || isExtreme(amount, bucket.getMax())) {
+                recomputeExtremes(bucket, sources.get(bucket.getId()));
+            }
+        }
+    }
+    
+    public TransactionStats getStats(String merchantId, TransactionStatus status, String currency,
+                                     LocalDateTime startDate, LocalDateTime endDate,
+                                     RollupGranularity granularity) {
+        TransactionStats stats = describe(merchantId, status, currency, startDate, endDate, granularity);
+        stats.setBuckets(mongoTemplate.aggregate(statsAggregation(stats), Document.class).getMappedResults()
+                .stream()
+                .map(RollupService::toBucket)
+                .toList());
+        return stats;
+    }
+    
+    /**
+     * Validates a stats request and resolves its granularity. Without an
+     * explicit granularity the finest one that covers the range in at most
+     * {@code max-buckets} buckets is used, falling back to days.
+     */
+    public TransactionStats describe(String merchantId, TransactionStatus status, String currency,
+                                     LocalDateTime startDate, LocalDateTime endDate,
+                                     RollupGranularity granularity) {
+        if (!endDate.isAfter(startDate)) {
+            throw new IllegalArgumentException("endDate must be after startDate");
+        }
+        LocalDateTime minuteHorizon = LocalDateTime.now().minus(minuteRetention);
+        if (granularity == null) {
+            granularity = RollupGranularity.DAY;
+            for (RollupGranularity candidate : RollupGranularity.values()) {
+                boolean retained = candidate != RollupGranularity.MINUTE || !startDate.isBefore(minuteHorizon);
+                if (retained && candidate.bucketCount(startDate, endDate) <= maxBuckets) {
+                    granularity = candidate;
+                    break;
+                }
+            }
+        } else if (granularity == RollupGranularity.MINUTE && startDate.isBefore(minuteHorizon)) {
+            throw new IllegalArgumentException("Minute buckets are only kept for " + minuteRetention);
+        } else if (granularity.bucketCount(startDate, endDate) > maxBuckets) {
+            throw new IllegalArgumentException("Range spans more than " + maxBuckets + " "
+                    + granularity.name().toLowerCase() + " buckets, use a coarser granularity");
+        }
+        
+        TransactionStats stats = new TransactionStats();
+        stats.setMerchantId(merchantId);
+        stats.setStatus(status);
+        stats.setCurrency(currency);
+        stats.setGranularity(granularity);
+        stats.setStartDate(granularity.bucketStart(startDate));
+        stats.setEndDate(endDate);
+        return stats;
+    }
+    
+    /**
+     * Recomputes every bucket whose transactions, archived or not, fall in
+     * the range, widened to whole UTC days, and replaces the stored buckets with {@code $merge}.
+     * Buckets in the range that no longer have transactions are removed. A
+     * {@code null} bound leaves that side of the range open. Increments that
+     * land on a bucket while its pipeline runs are overwritten.
+     */
+    public Map<RollupGranularity, Long> backfill(LocalDateTime startDate, LocalDateTime endDate) {
+        long started = System.currentTimeMillis();
+        Date runAt = Date.from(Instant.ofEpochMilli(started));
+        Instant from = startDate == null ? null : RollupGranularity.DAY.truncate(toInstant(startDate));
+        Instant to = endDate == null ? null
+                : RollupGranularity.DAY.truncate(toInstant(endDate)).plus(1, ChronoUnit.DAYS);
+        
+        Map<RollupGranularity, Long> written = new EnumMap<>(RollupGranularity.class);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            Instant lower = from;
+            if (granularity == RollupGranularity.MINUTE) {
+                Instant horizon = granularity.truncate(Instant.ofEpochMilli(started).minus(minuteRetention));
+                lower = lower == null || lower.isBefore(horizon) ? horizon : lower;
+                if (to != null && !to.isAfter(lower)) {
+                    continue;
+                }
+            }
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class))
+                    .aggregate(backfillPipeline(granularity, lower, to, runAt))
+                    .allowDiskUse(true)
+                    .toCollection();
+            
+            Criteria bucket = Criteria.where("granularity").is(granularity);
+            if (lower != null || to != null) {
+                bucket = bucket.and("bucketStart");
+                if (lower != null) {
+                    bucket = bucket.gte(toLocal(lower));
+                }
+                if (to != null) {
+                    bucket = bucket.lt(toLocal(to));
+                }
+            }
+            mongoTemplate.remove(Query.query(Criteria.where("updatedAt").lt(toLocal(runAt.toInstant()))
+                    .andOperator(bucket)), TransactionRollup.class);
+            written.put(granularity, mongoTemplate.count(Query.query(Criteria.where("granularity").is(granularity)
+                    .and("updatedAt").is(toLocal(runAt.toInstant()))), TransactionRollup.class));
+        }
+        log.info("Backfilled transaction rollups {} in {} ms", written, System.currentTimeMillis() - started);
+        return written;
+    }
+    
+    @Scheduled(cron = "${payment.rollups.backfill-cron:0 30 3 * * *}")
+    public void backfillRecent() {
+        if (!enabled) {
+            return;
+        }
+        backfill(LocalDateTime.now().minus(backfillWindow), LocalDateTime.now());
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (mongoTemplate.estimatedCount(TransactionRollup.class) == 0
+                    && mongoTemplate.estimatedCount(Transaction.class) > 0) {
+                backfill(null, null);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not seed transaction rollups at startup: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Bucket upserts for one transaction moving from {@code from} to
+     * {@code to}; {@code null} stands for not existing, so a create has no
+     * {@code from} and a delete has no {@code to}.
+     */
+    List<Pair<Query, Update>> changes(Transaction transaction, TransactionStatus from, TransactionStatus to) {
+        if (!enabled || from == to) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime minuteHorizon = now.minus(minuteRetention);
+        List<Pair<Query, Update>> changes = new ArrayList<>(6);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            LocalDateTime bucketStart = granularity.bucketStart(transaction.getCreatedAt());
+            if (granularity == RollupGranularity.MINUTE && bucketStart.isBefore(minuteHorizon)) {
+                continue;
+            }
+            if (from != null) {
+                changes.add(Pair.of(keyQuery(transaction, granularity, from, bucketStart),
+                        increment(transaction, granularity, from, bucketStart, transaction.getAmount().negate(), -1,
+                                now)));
+            }
+            if (to != null) {
+                Decimal128 amount = new Decimal128(transaction.getAmount());
+                changes.add(Pair.of(keyQuery(transaction, granularity, to, bucketStart),
+                        increment(transaction, granularity, to, bucketStart, transaction.getAmount(), 1, now)
+                                .min("min", amount)
+                                .max("max", amount)));
+            }
+        }
+        return changes;
+    }
+    
+    static TypedAggregation<TransactionRollup> statsAggregation(TransactionStats stats) {
+        Criteria criteria = Criteria.where("granularity").is(stats.getGranularity())
+                .and("bucketStart").gte(stats.getStartDate()).lt(stats.getEndDate());
+        if (stats.getMerchantId() != null) {
+            criteria = criteria.and("merchantId").is(stats.getMerchantId());
+        }
+        if (stats.getStatus() != null) {
+            criteria = criteria.and("status").is(stats.getStatus());
+        }
+        if (stats.getCurrency() != null) {
+            criteria = criteria.and("currency").is(stats.getCurrency());
+        }
+        return Aggregation.newAggregation(TransactionRollup.class,
+                Aggregation.match(criteria),
+                Aggregation.group("bucketStart", "currency")
+                        .sum("count").as("count")
+                        .sum("sum").as("sum")
+                        .min("min").as("min")
+                        .max("max").as("max"),
+                Aggregation.match(Criteria.where("count").gt(0)),
+                Aggregation.sort(Sort.by("bucketStart", "currency")));
+    }
+    
+    static StatsBucket toBucket(Document document) {
+        Document key = document.get("_id", Document.class);
+        return new StatsBucket(toLocal(key.getDate("bucketStart").toInstant()), key.getString("currency"),
+                ((Number) document.get("count")).longValue(), decimal(document.get("sum")),
+                decimal(document.get("min")), decimal(document.get("max")));
+    }
+    
+    private void execute(List<Pair<Query, Update>> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TransactionRollup.class)
+                .upsert(changes)
+                .execute();
+    }
+    
+    private void recomputeExtremes(TransactionRollup bucket, Transaction transaction) {
+        Instant from = toInstant(bucket.getBucketStart());
+        Instant to = from.plus(bucket.getGranularity().getSize());
+        Document match = new Document()
+                .append(Transaction.FIELDS.get("merchantId"), transaction.getMerchantId())
+                .append(Transaction.FIELDS.get("status"), bucket.getStatus().name())
+                .append(Transaction.FIELDS.get("currency"), transaction.getCurrency())
+                .append(Transaction.FIELDS.get("createdAt"), new Document()
+                        .append("$gte", Date.from(from))
+                        .append("$lt", Date.from(to)));
+        Document amount = new Document("$toDecimal", "$" + Transaction.FIELDS.get("amount"));
+        List<Document> pipeline = new ArrayList<>(3);
+        pipeline.add(new Document("$match", match));
+        pipeline.addAll(transactionArchive.unionWith(toLocal(from), toLocal(to), match));
+        pipeline.add(new Document("$group", new Document("_id", null)
+                .append("min", new Document("$min", amount))
+                .append("max", new Document("$max", amount))));
+        Document extremes = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class))
+                .aggregate(pipeline)
+                .first();
+        Update update = extremes == null ? new Update().unset("min").unset("max")
+                : new Update().set("min", extremes.get("min")).set("max", extremes.get("max"));
+        mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(bucket.getId())), update,
+                TransactionRollup.class);
+    }
+    
+    private static boolean isExtreme(BigDecimal amount, BigDecimal extreme) {
+        return extreme != null && amount.compareTo(extreme) == 0;
+    }
+    
+    private Query keyQuery(Transaction transaction, RollupGranularity granularity, TransactionStatus status,
+                           LocalDateTime bucketStart) {
+        String key = TransactionRollup.key(granularity, transaction.getMerchantId(), status,
+                transaction.getCurrency(), bucketStart);
+        return Query.query(Criteria.where("id").is(key));
+    }
+    
+    private Update increment(Transaction transaction, RollupGranularity granularity, TransactionStatus status,
+                             LocalDateTime bucketStart, BigDecimal amount, long count, LocalDateTime now) {
+        Update update = new Update()
+                .inc("count", count)
+                .inc("sum", new Decimal128(amount))
+                .set("updatedAt", now)
+                .setOnInsert("granularity", granularity)
+                .setOnInsert("merchantId", transaction.getMerchantId())
+                .setOnInsert("status", status)
+                .setOnInsert("currency", transaction.getCurrency())
+                .setOnInsert("bucketStart", bucketStart);
+        if (granularity == RollupGranularity.MINUTE) {
+            update.setOnInsert("expiresAt", bucketStart.plus(minuteRetention));
+        }
+        return update;
+    }
+    
+    private List<Document> backfillPipeline(RollupGranularity granularity, Instant from, Instant to, Date runAt) {
+        String createdAt = Transaction.FIELDS.get("createdAt");
+        Document range = new Document();
+        if (from != null) {
+            range.append("$gte", Date.from(from));
+        }
+        if (to != null) {
+            range.append("$lt", Date.from(to));
+        }
+        Document amount = new Document("$toDecimal", "$" + Transaction.FIELDS.get("amount"));
+        
+        Document project = new Document()
+                .append("_id", new Document("$concat", List.of(granularity.name(), ":", "$_id.merchantId", ":",
+                        "$_id.status", ":", "$_id.currency", ":",
+                        new Document("$toString", new Document("$toLong", "$_id.bucketStart")))))
+                .append("granularity", granularity.name())
+                .append("merchantId", "$_id.merchantId")
+                .append("status", "$_id.status")
+                .append("currency", "$_id.currency")
+                .append("bucketStart", "$_id.bucketStart")
+                .append("count", 1)
+                .append("sum", 1)
+                .append("min", 1)
+                .append("max", 1)
+                .append("updatedAt", runAt);
+        if (granularity == RollupGranularity.MINUTE) {
+            project.append("expiresAt",
+                    new Document("$add", List.of("$_id.bucketStart", minuteRetention.toMillis())));
+        }
+        
+        List<Document> pipeline = new ArrayList<>(4);
+        Document match = range.isEmpty() ? null : new Document(createdAt, range);
+        if (match != null) {
+            pipeline.add(new Document("$match", match));
+        }
+        pipeline.addAll(transactionArchive.unionWith(from == null ? null : toLocal(from),
+                to == null ? null : toLocal(to), match));
+        pipeline.add(new Document("$group", new Document()
+                .append("_id", new Document()
+                        .append("merchantId", "$" + Transaction.FIELDS.get("merchantId"))
+                        .append("status", "$" + Transaction.FIELDS.get("status"))
+                        .append("currency", "$" + Transaction.FIELDS.get("currency"))
+                        .append("bucketStart", new Document("$dateTrunc", new Document()
+                                .append("date", "$" + createdAt)
+                                .append("unit", granularity.getMongoUnit()))))
+                .append("count", new Document("$sum", 1))
+                .append("sum", new Document("$sum", amount))
+                .append("min", new Document("$min", amount))
+                .append("max", new Document("$max", amount))));
+        pipeline.add(new Document("$project", project));
+        pipeline.add(new Document("$merge", new Document()
+                .append("into", mongoTemplate.getCollectionName(TransactionRollup.class))
+                .append("on", "_id")
+                .append("whenMatched", "replace")
+                .append("whenNotMatched", "insert")));
+        return pipeline;
+    }
+    
+    private static Instant toInstant(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+    
+    private static LocalDateTime toLocal(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+    
+    private static BigDecimal decimal(Object value) {
+        if (value instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return value == null ? null : new BigDecimal(value.toString());
+    }
+}
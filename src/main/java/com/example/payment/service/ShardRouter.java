@@ -0,0 +1,360 @@
+package com.example.payment.service;
+
+import com.example.payment.model.Transaction;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonBinary;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Routes transaction queries on a collection sharded on
+ * {@code {merchantId, id}}. Single-transaction writes get the merchant half
+ * of the shard key added so mongos can target one shard. Cross-merchant list
+ * queries are split by the shard key ranges each shard owns, run in
+ * parallel and merged in {@code (createdAt, id)} order.
+ *
+ * <p>The ranges are read from {@code config.chunks} and refreshed every
+ * {@code payment.sharding.routing-refresh}. Together they always cover the
+ * whole key space, so a stale map after a chunk migration only costs
+ * targeting, never results. With sharding off every call is a plain query.
+ */
+@Service
+public class ShardRouter {
+    
+    private static final Logger log = LoggerFactory.getLogger(ShardRouter.class);
+    
+    static final Sort MERGE_ORDER = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+    
+    /** {@link #MERGE_ORDER} in Java; UUIDs compare as unsigned bytes, like BSON binary. */
+    static final Comparator<Transaction> MERGE_COMPARATOR = Comparator
+            .comparing(Transaction::getCreatedAt)
+            .thenComparing(Transaction::getId, (a, b) -> {
+                int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+                return high != 0
+                        ? high
+                        : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+            })
+            .reversed();
+    
+    private final MongoTemplate mongoTemplate;
+    private final TransactionCache transactionCache;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long refreshNanos;
+    private final Duration scatterTimeout;
+    private final ExecutorService executor;
+    private final Counter shardKeyLookups;
+    private volatile ShardMap shardMap;
+    
+    @Autowired
+    public ShardRouter(MongoTemplate mongoTemplate,
+                       TransactionCache transactionCache,
+                       MeterRegistry meterRegistry,
+                       @Value("${payment.sharding.enabled:false}") boolean enabled,
+                       @Value("${payment.sharding.routing-refresh:1m}") Duration routingRefresh,
+                       @Value("${payment.sharding.scatter-threads:8}") int scatterThreads,
+                       @Value("${payment.sharding.scatter-timeout:30s}") Duration scatterTimeout,
+                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.mongoTemplate = mongoTemplate;
+        this.transactionCache = transactionCache;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.refreshNanos = routingRefresh.toNanos();
+        this.scatterTimeout = scatterTimeout;
+        if (!enabled) {
+            this.executor = null;
+        } else if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("shard-scatter-", 0).factory());
+        } else {
+            this.executor = Executors.newFixedThreadPool(scatterThreads,
+                    Thread.ofPlatform().name("shard-scatter-", 0).daemon(true).factory());
+        }
+        this.shardKeyLookups = Counter.builder("payment.sharding.shard-key.lookups")
+                .description("Writes by id that had to look up the transaction's merchantId first")
+                .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Criteria for reading one transaction by id, scoped to the merchant when
+     * the caller knows it. Without a merchant the read goes to every shard.
+     */
+    public static Criteria byId(UUID id, String merchantId) {
+        Criteria criteria = Criteria.where("id").is(id);
+        return merchantId == null ? criteria : criteria.and("merchantId").is(merchantId);
+    }
+    
+    /**
+     * Criteria for writing one transaction by id. On a sharded collection the
+     * write must carry the full shard key, so an unknown merchant is taken
+     * from the transaction cache or looked up by id first. Returns empty when
+     * the transaction does not exist.
+     */
+    public Optional<Criteria> writeById(UUID id, String merchantId) {
+        if (merchantId != null || !enabled) {
+            return Optional.of(byId(id, merchantId));
+        }
+        Optional<String> cached = transactionCache.getIfPresent(id).map(Transaction::getMerchantId);
+        if (cached.isPresent()) {
+            return Optional.of(byId(id, cached.get()));
+        }
+        shardKeyLookups.increment();
+        Query lookup = Query.query(Criteria.where("id").is(id));
+        lookup.fields().include("merchantId");
+        return Optional.ofNullable(mongoTemplate.findOne(lookup, Transaction.class))
+                .map(found -> byId(id, found.getMerchantId()));
+    }
+    
+    /**
+     * Runs a cross-merchant query once per shard, in parallel, and merges the
+     * results in {@link #MERGE_ORDER}, keeping at most {@code limit} when it
+     * is not null. Falls back to one query through mongos when sharding is
+     * off or the collection has a single shard.
+     */
+    public List<Transaction> findAcrossShards(Query filter, Integer limit) {
+        List<Partition> partitions = enabled ? shardMap().partitions : List.of();
+        if (partitions.size() < 2) {
+            Query query = Query.of(filter).with(MERGE_ORDER);
+            return mongoTemplate.find(limit == null ? query : query.limit(limit), Transaction.class);
+        }
+        
+        List<Future<List<Transaction>>> futures = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions) {
+            Query query = Query.of(filter).addCriteria(partition.criteria).with(MERGE_ORDER);
+            if (limit != null) {
+                query.limit(limit);
+            }
+            futures.add(executor.submit(() -> partition.timer.recordCallable(
+                    () -> mongoTemplate.find(query, Transaction.class))));
+        }
+        List<List<Transaction>> results = new ArrayList<>(futures.size());
+        long deadline = System.nanoTime() + scatterTimeout.toNanos();
+        try {
+            for (Future<List<Transaction>> future : futures) {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException("Scatter-gather query did not finish within " + scatterTimeout);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        List<Transaction> merged = merge(results);
+        return limit == null || merged.size() <= limit ? merged : merged.subList(0, limit);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+    
+    static List<Transaction> merge(List<List<Transaction>> sortedRuns) {
+        int total = sortedRuns.stream().mapToInt(List::size).sum();
+        List<Transaction> merged = new ArrayList<>(total);
+        PriorityQueue<Run> heads = new PriorityQueue<>(Math.max(1, sortedRuns.size()),
+                (a, b) -> MERGE_COMPARATOR.compare(a.head(), b.head()));
+        for (List<Transaction> run : sortedRuns) {
+            if (!run.isEmpty()) {
+                heads.add(new Run(run));
+            }
+        }
+        while (!heads.isEmpty()) {
+            Run run = heads.poll();
+            merged.add(run.head());
+            if (++run.position < run.items.size()) {
+                heads.add(run);
+            }
+        }
+        return merged;
+    }
+    
+    /**
+     * Criteria matching shard keys in {@code [min, max)}, comparing
+     * {@code merchantId} first and {@code id} second, as the shard key index
+     * does. Bounds may hold {@link MinKey} and {@link MaxKey}.
+     */
+    static Criteria rangeCriteria(Document min, Document max) {
+        List<Criteria> bounds = new ArrayList<>(2);
+        Object minMerchant = min.get("m");
+        Object minId = shardKeyId(min.get("_id"));
+        if (!(minMerchant instanceof MinKey)) {
+            if (minId instanceof MinKey) {
+                bounds.add(Criteria.where("merchantId").gte(minMerchant));
+            } else if (minId instanceof MaxKey) {
+                bounds.add(Criteria.where("merchantId").gt(minMerchant));
+            } else {
+                bounds.add(new Criteria().orOperator(
+                        Criteria.where("merchantId").gt(minMerchant),
+                        Criteria.where("merchantId").is(minMerchant).and("id").gte(minId)));
+            }
+        }
+        Object maxMerchant = max.get("m");
+        Object maxId = shardKeyId(max.get("_id"));
+        if (!(maxMerchant instanceof MaxKey)) {
+            if (maxId instanceof MinKey) {
+                bounds.add(Criteria.where("merchantId").lt(maxMerchant));
+            } else if (maxId instanceof MaxKey) {
+                bounds.add(Criteria.where("merchantId").lte(maxMerchant));
+            } else {
+                bounds.add(new Criteria().orOperator(
+                        Criteria.where("merchantId").lt(maxMerchant),
+                        Criteria.where("merchantId").is(maxMerchant).and("id").lt(maxId)));
+            }
+        }
+        return bounds.isEmpty() ? new Criteria() : new Criteria().andOperator(bounds);
+    }
+    
+    private static Object shardKeyId(Object value) {
+        if (value instanceof Binary binary && binary.getType() == 4) {
+            return new BsonBinary(binary.getType(), binary.getData()).asUuid();
+        }
+        return value;
+    }
+    
+    private ShardMap shardMap() {
+        ShardMap current = shardMap;
+        if (current == null || System.nanoTime() - current.loadedAt > refreshNanos) {
+            synchronized (this) {
+                current = shardMap;
+                if (current == null || System.nanoTime() - current.loadedAt > refreshNanos) {
+                    current = loadShardMap(current);
+                    shardMap = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    private ShardMap loadShardMap(ShardMap previous) {
+        String namespace = mongoTemplate.getDb().getName() + "." + mongoTemplate.getCollectionName(Transaction.class);
+        try {
+            MongoDatabase config = mongoTemplate.getMongoDatabaseFactory().getMongoDatabase("config");
+            Document collection = config.getCollection("collections")
+                    .find(Filters.and(Filters.eq("_id", namespace), Filters.ne("dropped", true)))
+                    .first();
+            if (collection == null) {
+                return new ShardMap(List.of());
+            }
+            Bson chunkFilter = collection.get("uuid") != null
+                    ? Filters.or(Filters.eq("uuid", collection.get("uuid")), Filters.eq("ns", namespace))
+                    : Filters.eq("ns", namespace);
+            
+            Map<String, List<Criteria>> rangesByShard = new LinkedHashMap<>();
+            String runShard = null;
+            Document runMin = null;
+            Document runMax = null;
+            for (Document chunk : config.getCollection("chunks").find(chunkFilter).sort(Sorts.ascending("min"))) {
+                String shard = chunk.getString("shard");
+                if (shard.equals(runShard) && chunk.get("min", Document.class).equals(runMax)) {
+                    runMax = chunk.get("max", Document.class);
+                    continue;
+                }
+                if (runShard != null) {
+                    rangesByShard.computeIfAbsent(runShard, key -> new ArrayList<>())
+                            .add(rangeCriteria(runMin, runMax));
+                }
+                runShard = shard;
+                runMin = chunk.get("min", Document.class);
+                runMax = chunk.get("max", Document.class);
+            }
+            if (runShard != null) {
+                rangesByShard.computeIfAbsent(runShard, key -> new ArrayList<>()).add(rangeCriteria(runMin, runMax));
+            }
+            
+            List<Partition> partitions = new ArrayList<>(rangesByShard.size());
+            rangesByShard.forEach((shard, ranges) -> partitions.add(new Partition(
+                    new Criteria().andOperator(ranges.size() == 1 ? ranges.get(0) : new Criteria().orOperator(ranges)),
+                    Timer.builder("payment.sharding.scatter")
+                            .description("Time for one shard's part of a scatter-gather query")
+                            .tag("shard", shard)
+                            .register(meterRegistry))));
+            log.debug("Loaded shard ranges for {}: {} shards", namespace, partitions.size());
+            return new ShardMap(partitions);
+        } catch (DataAccessException | MongoException e) {
+            log.warn("Could not read shard ranges for {}: {}", namespace, e.getMessage());
+            return previous != null ? new ShardMap(previous.partitions) : new ShardMap(List.of());
+        }
+    }
+    
+    private static final class ShardMap {
+        
+        private final List<Partition> partitions;
+        private final long loadedAt = System.nanoTime();
+        
+        private ShardMap(List<Partition> partitions) {
+            this.partitions = partitions;
+        }
+    }
+    
+    private static final class Partition {
+        
+        private final Criteria criteria;
+        private final Timer timer;
+        
+        private Partition(Criteria criteria, Timer timer) {
+            this.criteria = criteria;
+            this.timer = timer;
+        }
+    }
+    
+    private static final class Run {
+        
+        private final List<Transaction> items;
+        private int position;
+        
+        private Run(List<Transaction> items) {
+            this.items = items;
+        }
+        
+        private Transaction head() {
+            return items.get(position);
+        }
+    }
+}
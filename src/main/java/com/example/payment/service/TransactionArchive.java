@@ -0,0 +1,480 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.ArchiveResult;
+import com.example.payment.model.ArchiveSegment;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves terminal transactions older than {@code min-age} out of
+ * {@code transactions} into one archive collection per UTC month of
+ * {@code createdAt}, such as {@code transactions_archive_2025_01}. Archive
+ * collections are created with the {@code compressor} block compressor and
+ * only index {@code _id} and {@code (createdAt, _id)}, so the hot collection
+ * and its indexes keep just the recent and still-changing transactions.
+ *
+ * <p>{@code transaction_archive_segments} catalogs each archive collection
+ * with its count and {@code createdAt} range; it is cached here and reloaded
+ * every {@code catalog-refresh}. Lookups by id only probe segments whose
+ * range can hold the id: a time-ordered id carries its creation time, so it
+ * maps to one segment, while a random id probes each segment's {@code _id}
+ * index, newest first. Date-range reads and the totals, rollup and report
+ * pipelines include the segments that overlap their range.
+ *
+ * <p>A batch is copied into the archive before it is deleted from
+ * {@code transactions}, and each delete is conditional on the version that
+ * was copied. A transaction refunded in between stays hot and its copy is
+ * dropped again, so it is never in both places for longer than one batch.
+ * Updating or deleting an archived transaction restores it first.
+ *
+ * <p>Moves are not changes: the hot document is marked with
+ * {@link #MOVE_MARKER} before it is deleted, and a restored document is
+ * inserted with the marker and then has it removed, so the change stream
+ * feed can skip both. Neither direction publishes in-process events. Only
+ * one run at a time is allowed per instance.
+ */
+@Service
+public class TransactionArchive {
+    
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchive.class);
+    
+    /** Set on a hot document by the writes that move it in or out of the archive. */
+    public static final String MOVE_MARKER = "mv";
+    
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int NAMESPACE_EXISTS = 48;
+    private static final String COLLECTION_PREFIX = "transactions_archive_";
+    private static final DateTimeFormatter COLLECTION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    /** How far a time-ordered id's timestamp may be from the {@code createdAt} stored with it. */
+    private static final Duration ID_CLOCK_TOLERANCE = Duration.ofMinutes(1);
+    
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final Duration minAge;
+    private final List<String> statuses;
+    private final int batchSize;
+    private final String compressor;
+    private final Duration catalogRefresh;
+    private final Set<String> preparedCollections = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter archived;
+    private final Counter restored;
+    
+    private volatile List<ArchiveSegment> segments = List.of();
+    private volatile long segmentsLoadedAt;
+    
+    @Autowired
+    public TransactionArchive(MongoTemplate mongoTemplate, MeterRegistry meterRegistry,
+                              @Value("${payment.archive.enabled:false}") boolean enabled,
+                              @Value("${payment.archive.min-age:90d}") Duration minAge,
+                              @Value("${payment.archive.statuses:COMPLETED,FAILED,CANCELLED,REFUNDED}")
+                              List<TransactionStatus> statuses,
+                              @Value("${payment.archive.batch-size:1000}") int batchSize,
+                              @Value("${payment.archive.compressor:zstd}") String compressor,
+                              @Value("${payment.archive.catalog-refresh:1m}") Duration catalogRefresh) {
+        for (TransactionStatus status : statuses) {
+            if (!status.isTerminal()) {
+                throw new IllegalArgumentException("Only terminal transactions can be archived, not " + status);
+            }
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.minAge = minAge;
+        this.statuses = EnumSet.copyOf(statuses).stream().map(TransactionStatus::name).toList();
+        this.batchSize = batchSize;
+        this.compressor = compressor;
+        this.catalogRefresh = catalogRefresh;
+        this.archived = Counter.builder("payment.archive.archived")
+                .description("Transactions moved into the archive")
+                .register(meterRegistry);
+        this.restored = Counter.builder("payment.archive.restored")
+                .description("Archived transactions moved back to be updated or deleted")
+                .register(meterRegistry);
+    }
+    
+    @Scheduled(cron = "${payment.archive.cron:0 0 4 * * *}")
+    public void archiveScheduled() {
+        if (enabled && archive().isEmpty()) {
+            log.info("Skipping the scheduled archive run, another run is in progress");
+        }
+    }
+    
+    /**
+     * Archives every eligible transaction, one batch at a time. Batches that
+     * only partially succeed are retried on the next run. Returns empty
+     * without doing anything when a run is already in progress.
+     */
+    public Optional<ArchiveResult> archive() {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(archiveAll());
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    private ArchiveResult archiveAll() {
+        long started = System.currentTimeMillis();
+        MongoCollection<Document> hot = collection(mongoTemplate.getCollectionName(Transaction.class));
+        Document filter = new Document(Transaction.FIELDS.get("status"), new Document("$in", statuses))
+                .append(Transaction.FIELDS.get("createdAt"),
+                        new Document("$lt", Date.from(Instant.ofEpochMilli(started).minus(minAge))));
+        ArchiveResult result = new ArchiveResult();
+        Set<String> touched = new HashSet<>();
+        Set<Object> skipped = new HashSet<>();
+        while (true) {
+            Document batchFilter = skipped.isEmpty() ? filter
+                    : new Document(filter).append("_id", new Document("$nin", skipped));
+            List<Document> batch = hot.find(batchFilter).limit(batchSize).into(new ArrayList<>(batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            result.setScanned(result.getScanned() + batch.size());
+            for (Map.Entry<YearMonth, List<Document>> month : byMonth(batch).entrySet()) {
+                touched.add(archiveMonth(hot, month.getKey(), month.getValue(), result, skipped));
+            }
+        }
+        result.setSegments(touched.stream().sorted().toList());
+        refreshSegments();
+        log.info("Archived {} of {} transactions into {} in {} ms ({} changed meanwhile, {} failed)",
+                result.getArchived(), result.getScanned(), result.getSegments(),
+                System.currentTimeMillis() - started, result.getChanged(), result.getFailed());
+        return result;
+    }
+    
+    public Optional<Transaction> findById(UUID id, String merchantId) {
+        for (ArchiveSegment segment : candidates(id)) {
+            Transaction transaction = mongoTemplate.findOne(Query.query(ShardRouter.byId(id, merchantId)),
+                    Transaction.class, segment.getCollectionName());
+            if (transaction != null) {
+                return Optional.of(transaction);
+            }
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Adds the archived transactions created in {@code [from, to]} to a read
+     * from the hot collection, skipping any that are in both. With a
+     * {@code limit}, only the newest {@code limit} of the combined result
+     * are kept, in {@link ShardRouter#MERGE_ORDER}.
+     */
+    public List<Transaction> withArchived(List<Transaction> hot, LocalDateTime from, LocalDateTime to,
+                                          Integer limit) {
+        List<ArchiveSegment> overlapping = segments().stream().filter(s -> s.overlaps(from, to)).toList();
+        if (overlapping.isEmpty()) {
+            return hot;
+        }
+        Set<UUID> seen = new HashSet<>();
+        List<Transaction> merged = new ArrayList<>(hot);
+        for (Transaction transaction : hot) {
+            seen.add(transaction.getId());
+        }
+        Query query = Query.query(Criteria.where("createdAt").gte(from).lte(to)).with(ShardRouter.MERGE_ORDER);
+        if (limit != null) {
+            query.limit(limit);
+        }
+        for (ArchiveSegment segment : overlapping) {
+            for (Transaction transaction : mongoTemplate.find(query, Transaction.class,
+                    segment.getCollectionName())) {
+                if (seen.add(transaction.getId())) {
+                    merged.add(transaction);
+                }
+            }
+        }
+        if (limit == null) {
+            return merged;
+        }
+        merged.sort(ShardRouter.MERGE_COMPARATOR);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+    
+    /**
+     * {@code $unionWith} stages that bring the archived transactions created
+     * in {@code [from, to]} into a pipeline on the transactions collection,
+     * each filtered by {@code match} when it is not {@code null}. A
+     * {@code null} bound leaves that side of the range open.
+     */
+    public List<Document> unionWith(LocalDateTime from, LocalDateTime to, Document match) {
+        List<Document> stages = new ArrayList<>();
+        for (ArchiveSegment segment : segments()) {
+            if (!segment.overlaps(from, to)) {
+                continue;
+            }
+            Document union = new Document("coll", segment.getCollectionName());
+            if (match != null) {
+                union.append("pipeline", List.of(new Document("$match", match)));
+            }
+            stages.add(new Document("$unionWith", union));
+        }
+        return stages;
+    }
+    
+    /**
+     * Moves an archived transaction back into {@code transactions} so that it
+     * can be changed there. Returns the restored transaction, or empty when
+     * it is not archived.
+     */
+    public Optional<Transaction> restore(UUID id, String merchantId) {
+        MongoCollection<Document> hot = collection(mongoTemplate.getCollectionName(Transaction.class));
+        for (ArchiveSegment segment : candidates(id)) {
+            MongoCollection<Document> archive = collection(segment.getCollectionName());
+            Document document = archive.find(idFilter(id, merchantId)).first();
+            if (document == null) {
+                continue;
+            }
+            try {
+                hot.insertOne(new Document(document).append(MOVE_MARKER, true));
+            } catch (MongoWriteException e) {
+                if (e.getError().getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            hot.updateOne(new Document("_id", id), Updates.unset(MOVE_MARKER));
+            if (archive.deleteOne(new Document("_id", id)).getDeletedCount() > 0) {
+                recordRemoved(segment.getId(), 1);
+            }
+            restored.increment();
+            return Optional.of(mongoTemplate.getConverter().read(Transaction.class, document));
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Deletes an archived transaction. Returns what was deleted, or empty
+     * when it is not archived.
+     */
+    public Optional<Transaction> remove(UUID id, String merchantId) {
+        for (ArchiveSegment segment : candidates(id)) {
+            Document document = collection(segment.getCollectionName()).findOneAndDelete(idFilter(id, merchantId));
+            if (document != null) {
+                recordRemoved(segment.getId(), 1);
+                return Optional.of(mongoTemplate.getConverter().read(Transaction.class, document));
+            }
+        }
+        return Optional.empty();
+    }
+    
+    public List<ArchiveSegment> segments() {
+        if (System.currentTimeMillis() - segmentsLoadedAt > catalogRefresh.toMillis()) {
+            refreshSegments();
+        }
+        return segments;
+    }
+    
+    private void refreshSegments() {
+        segments = mongoTemplate.find(new Query().with(Sort.by(Sort.Direction.DESC, "maxCreatedAt")),
+                ArchiveSegment.class);
+        segmentsLoadedAt = System.currentTimeMillis();
+    }
+    
+    /**
+     * Segments that can hold the id, newest first.
+     */
+    private List<ArchiveSegment> candidates(UUID id) {
+        List<ArchiveSegment> all = segments();
+        if (all.isEmpty() || id.version() != 7) {
+            return all;
+        }
+        LocalDateTime created = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(id.getMostSignificantBits() >>> 16), ZoneId.systemDefault());
+        return all.stream()
+                .filter(segment -> segment.overlaps(created.minus(ID_CLOCK_TOLERANCE),
+                        created.plus(ID_CLOCK_TOLERANCE)))
+                .toList();
+    }
+    
+    private String archiveMonth(MongoCollection<Document> hot, YearMonth month, List<Document> documents,
+                                ArchiveResult result, Set<Object> skipped) {
+        String segmentId = month.toString();
+        MongoCollection<Document> archive = prepare(month);
+        
+        List<InsertOneModel<Document>> inserts = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            document.remove(MOVE_MARKER);
+            inserts.add(new InsertOneModel<>(document));
+        }
+        Set<Integer> failedIndexes = new HashSet<>();
+        int duplicates = 0;
+        try {
+            archive.bulkWrite(inserts, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() == DUPLICATE_KEY) {
+                    duplicates++;
+                } else {
+                    failedIndexes.add(error.getIndex());
+                    skipped.add(documents.get(error.getIndex()).get("_id"));
+                    log.warn("Cannot archive transaction {}: {}", documents.get(error.getIndex()).get("_id"),
+                            error.getMessage());
+                }
+            }
+        }
+        List<Document> copied = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            if (!failedIndexes.contains(i)) {
+                copied.add(documents.get(i));
+            }
+        }
+        result.setFailed(result.getFailed() + failedIndexes.size());
+        if (copied.isEmpty()) {
+            return segmentId;
+        }
+        recordAdded(segmentId, archive.getNamespace().getCollectionName(), copied,
+                copied.size() - duplicates);
+        
+        String version = Transaction.FIELDS.get("version");
+        List<UpdateOneModel<Document>> marks = new ArrayList<>(copied.size());
+        List<DeleteOneModel<Document>> deletes = new ArrayList<>(copied.size());
+        List<Object> ids = new ArrayList<>(copied.size());
+        for (Document document : copied) {
+            Document unchanged = new Document("_id", document.get("_id")).append(version, document.get(version));
+            marks.add(new UpdateOneModel<>(unchanged, Updates.set(MOVE_MARKER, true)));
+            deletes.add(new DeleteOneModel<>(new Document(unchanged).append(MOVE_MARKER, true)));
+            ids.add(document.get("_id"));
+        }
+        hot.bulkWrite(marks, new BulkWriteOptions().ordered(false));
+        long deleted = hot.bulkWrite(deletes, new BulkWriteOptions().ordered(false)).getDeletedCount();
+        if (deleted < copied.size()) {
+            List<Object> changed = hot.find(new Document("_id", new Document("$in", ids)))
+                    .projection(Projections.include("_id"))
+                    .map(document -> document.get("_id"))
+                    .into(new ArrayList<>());
+            if (!changed.isEmpty()) {
+                hot.updateMany(new Document("_id", new Document("$in", changed)), Updates.unset(MOVE_MARKER));
+                long dropped = archive.deleteMany(new Document("_id", new Document("$in", changed)))
+                        .getDeletedCount();
+                recordRemoved(segmentId, dropped);
+                skipped.addAll(changed);
+                result.setChanged(result.getChanged() + changed.size());
+            }
+        }
+        result.setArchived(result.getArchived() + deleted);
+        archived.increment(deleted);
+        return segmentId;
+    }
+    
+    /**
+     * Returns the archive collection for a month, creating it with the
+     * configured compressor and its {@code createdAt} index the first time.
+     */
+    private MongoCollection<Document> prepare(YearMonth month) {
+        String name = COLLECTION_PREFIX + month.format(COLLECTION_SUFFIX);
+        if (preparedCollections.contains(name)) {
+            return collection(name);
+        }
+        try {
+            mongoTemplate.getDb().createCollection(name, new CreateCollectionOptions().storageEngineOptions(
+                    new Document("wiredTiger", new Document("configString", "block_compressor=" + compressor))));
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() != NAMESPACE_EXISTS) {
+                throw e;
+            }
+        }
+        MongoCollection<Document> collection = collection(name);
+        collection.createIndex(Indexes.descending(Transaction.FIELDS.get("createdAt"), "_id"),
+                new IndexOptions().name("ca_id"));
+        preparedCollections.add(name);
+        return collection;
+    }
+    
+    private void recordAdded(String segmentId, String collectionName, List<Document> documents, long added) {
+        Date min = null;
+        Date max = null;
+        for (Document document : documents) {
+            Date createdAt = document.getDate(Transaction.FIELDS.get("createdAt"));
+            min = min == null || createdAt.before(min) ? createdAt : min;
+            max = max == null || createdAt.after(max) ? createdAt : max;
+        }
+        mongoTemplate.upsert(Query.query(Criteria.where("id").is(segmentId)), new Update()
+                .inc("count", added)
+                .min("minCreatedAt", toLocal(min))
+                .max("maxCreatedAt", toLocal(max))
+                .set("updatedAt", LocalDateTime.now())
+                .setOnInsert("collectionName", collectionName), ArchiveSegment.class);
+    }
+    
+    private void recordRemoved(String segmentId, long removed) {
+        if (removed > 0) {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(segmentId)),
+                    new Update().inc("count", -removed).set("updatedAt", LocalDateTime.now()),
+                    ArchiveSegment.class);
+        }
+    }
+    
+    private static Map<YearMonth, List<Document>> byMonth(List<Document> batch) {
+        Map<YearMonth, List<Document>> months = new TreeMap<>();
+        for (Document document : batch) {
+            Instant createdAt = document.getDate(Transaction.FIELDS.get("createdAt")).toInstant();
+            months.computeIfAbsent(YearMonth.from(createdAt.atOffset(ZoneOffset.UTC)), month -> new ArrayList<>())
+                    .add(document);
+        }
+        return months;
+    }
+    
+    private static Document idFilter(UUID id, String merchantId) {
+        Document filter = new Document("_id", id);
+        if (merchantId != null) {
+            filter.append(Transaction.FIELDS.get("merchantId"), merchantId);
+        }
+        return filter;
+    }
+    
+    private MongoCollection<Document> collection(String name) {
+        return mongoTemplate.getCollection(name);
+    }
+    
+    private static LocalDateTime toLocal(Date date) {
+        return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.payment.service;
+
+import com.example.payment.model.Transaction;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache for single-transaction lookups. Loads for the
+ * same id are coalesced by Caffeine, so a burst of pollers causes at most one
+ * Mongo read. Transactions in a terminal status rarely change and are kept
+ * much longer than ones that are still moving through processing.
+ */
+@Component
+public class TransactionCache {
+    
+    private final boolean enabled;
+    private final Cache<UUID, Transaction> cache;
+    
+    @Autowired
+    public TransactionCache(@Value("${payment.cache.enabled:true}") boolean enabled,
+                            @Value("${payment.cache.maximum-size:100000}") long maximumSize,
+                            @Value("${payment.cache.active-ttl:2s}") Duration activeTtl,
+                            @Value("${payment.cache.terminal-ttl:10m}") Duration terminalTtl,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new StatusExpiry(activeTtl.toNanos(), terminalTtl.toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "transactions");
+    }
+    
+    public Optional<Transaction> get(UUID id, Function<UUID, Optional<Transaction>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        return Optional.ofNullable(cache.get(id, key -> loader.apply(key).orElse(null)));
+    }
+    
+    /**
+     * Returns the cached transaction without loading it.
+     */
+    public Optional<Transaction> getIfPresent(UUID id) {
+        return enabled ? Optional.ofNullable(cache.getIfPresent(id)) : Optional.empty();
+    }
+    
+    public void put(Transaction transaction) {
+        if (enabled) {
+            cache.put(transaction.getId(), transaction);
+        }
+    }
+    
+    public void invalidate(UUID id) {
+        if (enabled) {
+            cache.invalidate(id);
+        }
+    }
+    
+    private static final class StatusExpiry implements Expiry<UUID, Transaction> {
+        
+        private final long activeTtlNanos;
+        private final long terminalTtlNanos;
+        
+        private StatusExpiry(long activeTtlNanos, long terminalTtlNanos) {
+            this.activeTtlNanos = activeTtlNanos;
+            this.terminalTtlNanos = terminalTtlNanos;
+        }
+        
+        @Override
+        public long expireAfterCreate(UUID key, Transaction value, long currentTime) {
+            return value.getStatus().isTerminal() ? terminalTtlNanos : activeTtlNanos;
+        }
+        
+        @Override
+        public long expireAfterUpdate(UUID key, Transaction value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+        
+        @Override
+        public long expireAfterRead(UUID key, Transaction value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.TransactionFeedEvent;
+import com.example.payment.event.TransactionChangedEvent;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Fans transaction changes out to feed subscribers. Changes come from one
+ * shared change stream on the transactions collection, which also sees
+ * writes made by other instances. On a standalone server, where change
+ * streams are not supported, or while the stream is reconnecting, the
+ * in-process {@link TransactionChangedEvent}s are used instead. Delivery is
+ * at least once: a change can repeat around a reconnect. An event that
+ * cannot be converted is skipped, and a resume point that has left the
+ * oplog reopens the stream from the current time. Documents moved in or
+ * out of the archive are not changes and are left out of the feed.
+ *
+ * <p>Subscribers are indexed by transaction id and merchant id, so a change
+ * only visits the subscribers it can match. The last {@code replay-size}
+ * changes are kept in a ring so a reconnecting client can resume from its
+ * {@code Last-Event-ID}.
+ */
+@Service
+public class TransactionFeed {
+    
+    private static final Logger log = LoggerFactory.getLogger(TransactionFeed.class);
+    
+    private static final int CHANGE_STREAM_NOT_SUPPORTED = 40573;
+    /** InvalidResumeToken, ChangeStreamFatalError and ChangeStreamHistoryLost. */
+    private static final Set<Integer> UNRESUMABLE = Set.of(260, 280, 286);
+    
+    private static final int MAX_MOVING = 10_000;
+    
+    private final MongoTemplate mongoTemplate;
+    private final boolean changeStreamEnabled;
+    private final int subscriberBuffer;
+    private final FeedSubscription.Entry[] replay;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Set<FeedSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Set<FeedSubscription> unfiltered = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Set<FeedSubscription>> byMerchant = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Set<FeedSubscription>> byTransaction = new ConcurrentHashMap<>();
+    private final Counter published;
+    private final Counter coalesced;
+    private final Counter dropped;
+    private final Counter skipped;
+    // ids marked for archiving, so the delete that follows is recognised without a pre-image;
+    // only touched by the watcher thread
+    private final Set<UUID> moving = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+            return size() > MAX_MOVING;
+        }
+    });
+    private long sequence;
+    private volatile boolean changeStreamActive;
+    private volatile boolean running = true;
+    
+    @Autowired
+    public TransactionFeed(MongoTemplate mongoTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${payment.feed.change-stream.enabled:true}") boolean changeStreamEnabled,
+                           @Value("${payment.feed.subscriber-buffer:256}") int subscriberBuffer,
+                           @Value("${payment.feed.replay-size:10000}") int replaySize) {
+        this.mongoTemplate = mongoTemplate;
+        this.changeStreamEnabled = changeStreamEnabled;
+        this.subscriberBuffer = subscriberBuffer;
+        this.replay = new FeedSubscription.Entry[replaySize];
+        
+        Gauge.builder("payment.feed.subscribers", subscriptions, Set::size)
+                .description("Open transaction event feed subscriptions")
+                .register(meterRegistry);
+        this.published = Counter.builder("payment.feed.events.published")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("payment.feed.events.coalesced")
+                .description("Buffered events replaced by a newer event for the same transaction")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("payment.feed.events.dropped")
+                .description("Events dropped because a subscriber's buffer was full")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("payment.feed.events.skipped")
+                .description("Change stream events that could not be converted")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Registers a subscriber and replays the buffered changes after
+     * {@code lastEventId}. {@code onAvailable} is called whenever the
+     * subscription has something to deliver, possibly before this method
+     * returns.
+     */
+    public FeedSubscription subscribe(String merchantId, UUID transactionId, String lastEventId,
+                                      Consumer<FeedSubscription> onAvailable) {
+        FeedSubscription subscription = new FeedSubscription(merchantId, transactionId, subscriberBuffer,
+                onAvailable);
+        boolean replayed;
+        synchronized (this) {
+            subscriptions.add(subscription);
+            if (transactionId != null) {
+                byTransaction.computeIfAbsent(transactionId, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+            } else if (merchantId != null) {
+                byMerchant.computeIfAbsent(merchantId, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+            } else {
+                unfiltered.add(subscription);
+            }
+            replayed = lastEventId != null && replay(subscription, lastEventId);
+        }
+        if (replayed) {
+            subscription.signal();
+        }
+        return subscription;
+    }
+    
+    public void unsubscribe(FeedSubscription subscription) {
+        if (!subscriptions.remove(subscription)) {
+            return;
+        }
+        if (subscription.getTransactionId() != null) {
+            byTransaction.computeIfPresent(subscription.getTransactionId(),
+                    (key, set) -> set.remove(subscription) && set.isEmpty() ? null : set);
+        } else if (subscription.getMerchantId() != null) {
+            byMerchant.computeIfPresent(subscription.getMerchantId(),
+                    (key, set) -> set.remove(subscription) && set.isEmpty() ? null : set);
+        } else {
+            unfiltered.remove(subscription);
+        }
+    }
+    
+    @EventListener
+    public void onTransactionChanged(TransactionChangedEvent event) {
+        if (!changeStreamActive) {
+            publish(toFeedEvent(event));
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${payment.feed.heartbeat-interval:PT15S}",
+            initialDelayString = "${payment.feed.heartbeat-interval:PT15S}")
+    public void heartbeat() {
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.requestHeartbeat();
+            subscription.signal();
+        }
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (changeStreamEnabled) {
+            Thread.ofPlatform().name("transaction-change-stream").daemon(true).start(this::watch);
+        }
+    }
+    
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+    
+    void publish(TransactionFeedEvent event) {
+        List<FeedSubscription> signalled = new ArrayList<>();
+        synchronized (this) {
+            sequence++;
+            FeedSubscription.Entry entry = new FeedSubscription.Entry(epoch + "-" + sequence, sequence, event);
+            replay[(int) (sequence % replay.length)] = entry;
+            offer(unfiltered, entry, signalled);
+            if (event.getMerchantId() != null) {
+                offer(byMerchant.get(event.getMerchantId()), entry, signalled);
+            }
+            offer(byTransaction.get(event.getTransactionId()), entry, signalled);
+        }
+        published.increment();
+        for (FeedSubscription subscription : signalled) {
+            subscription.signal();
+        }
+    }
+    
+    private void offer(Set<FeedSubscription> candidates, FeedSubscription.Entry entry,
+                       List<FeedSubscription> signalled) {
+        if (candidates == null) {
+            return;
+        }
+        for (FeedSubscription subscription : candidates) {
+            if (!subscription.matches(entry.getEvent())) {
+                continue;
+            }
+            switch (subscription.offer(entry)) {
+                case COALESCED -> coalesced.increment();
+                case DROPPED_OLDEST -> dropped.increment();
+                default -> { }
+            }
+            signalled.add(subscription);
+        }
+    }
+    
+    /**
+     * Queues the ring entries after {@code lastEventId} for the subscriber,
+     * or flags a reset when they are no longer all in the ring. Must be
+     * called while holding the feed lock.
+     */
+    private boolean replay(FeedSubscription subscription, String lastEventId) {
+        int separator = lastEventId.lastIndexOf('-');
+        long last = -1;
+        if (separator > 0 && lastEventId.substring(0, separator).equals(epoch)) {
+            try {
+                last = Long.parseLong(lastEventId.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                last = -1;
+            }
+        }
+        if (last < 0 || last > sequence || sequence - last > replay.length) {
+            subscription.requestReset();
+            return true;
+        }
+        for (long next = last + 1; next <= sequence; next++) {
+            FeedSubscription.Entry entry = replay[(int) (next % replay.length)];
+            if (subscription.matches(entry.getEvent())) {
+                subscription.offer(entry);
+            }
+        }
+        return true;
+    }
+    
+    private void watch() {
+        BsonDocument resumeToken = null;
+        Boolean preImages = null;
+        try {
+            while (running) {
+                try {
+                    if (preImages == null) {
+                        preImages = enablePreImages();
+                    }
+                } catch (RuntimeException e) {
+                    reconnectLater(e);
+                    continue;
+                }
+                try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor =
+                             openChangeStream(resumeToken, preImages)) {
+                    if (!changeStreamActive) {
+                        changeStreamActive = true;
+                        log.info("Transaction feed is following the change stream");
+                    }
+                    while (running) {
+                        ChangeStreamDocument<Document> change = cursor.tryNext();
+                        if (change == null) {
+                            continue;
+                        }
+                        resumeToken = change.getResumeToken();
+                        try {
+                            TransactionFeedEvent event = toFeedEvent(change);
+                            if (event != null) {
+                                publish(event);
+                            }
+                        } catch (RuntimeException e) {
+                            skipped.increment();
+                            log.warn("Skipping change stream event for {}: {}", change.getDocumentKey(),
+                                    e.toString());
+                        }
+                    }
+                } catch (MongoServerException e) {
+                    if (e.getCode() == CHANGE_STREAM_NOT_SUPPORTED) {
+                        log.info("Change streams are not supported by this deployment, "
+                                + "the transaction feed uses in-process events");
+                        return;
+                    }
+                    if (UNRESUMABLE.contains(e.getCode())) {
+                        // the oplog no longer holds the resume point; changes in between are only
+                        // covered by the in-process events until the stream reopens from now
+                        log.warn("Transaction change stream cannot resume ({}), reopening from now", e.getCode());
+                        resumeToken = null;
+                    }
+                    reconnectLater(e);
+                } catch (RuntimeException e) {
+                    reconnectLater(e);
+                }
+            }
+        } finally {
+            changeStreamActive = false;
+        }
+    }
+    
+    /**
+     * Turns on pre-images for the transactions collection so that delete and
+     * update events carry the document as it was. Needs MongoDB 6.0 and the
+     * {@code collMod} privilege; when the server refuses, events are
+     * delivered without it. Other failures propagate so the caller retries.
+     */
+    private boolean enablePreImages() {
+        try {
+            mongoTemplate.getDb().runCommand(new Document("collMod",
+                    mongoTemplate.getCollectionName(Transaction.class))
+                    .append("changeStreamPreAndPostImages", new Document("enabled", true)));
+            return true;
+        } catch (MongoServerException e) {
+            log.info("Change stream pre-images are not available, feed deletes carry only the transaction id: {}",
+                    e.getMessage());
+            return false;
+        }
+    }
+    
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> openChangeStream(BsonDocument resumeToken,
+                                                                                     boolean preImages) {
+        String marker = TransactionArchive.MOVE_MARKER;
+        var stream = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class))
+                .watch(List.of(Aggregates.match(Filters.or(
+                        // restores insert with the move marker and then remove it
+                        Filters.and(Filters.eq("operationType", "insert"),
+                                Filters.ne("fullDocument." + marker, true)),
+                        Filters.and(Filters.in("operationType", "update", "replace"),
+                                Filters.ne("updateDescription.removedFields", marker)),
+                        Filters.eq("operationType", "delete")))))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        if (preImages) {
+            stream = stream.fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE);
+        }
+        if (resumeToken != null) {
+            stream = stream.resumeAfter(resumeToken);
+        }
+        return stream.cursor();
+    }
+    
+    private void reconnectLater(RuntimeException e) {
+        if (changeStreamActive) {
+            changeStreamActive = false;
+            log.warn("Transaction change stream interrupted, using in-process events until it resumes: {}",
+                    e.getMessage());
+        }
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+    
+    /**
+     * Converts a change stream event. With pre-images, deletes carry the
+     * deleted transaction and updates their previous status, as in-process
+     * events do; without them a delete only carries the transaction id and
+     * an update has no previous status. Archive moves return null.
+     */
+    private TransactionFeedEvent toFeedEvent(ChangeStreamDocument<Document> change) {
+        OperationType operation = change.getOperationType();
+        Document before = change.getFullDocumentBeforeChange();
+        if (operation == OperationType.UPDATE && change.getUpdateDescription() != null
+                && change.getUpdateDescription().getUpdatedFields() != null
+                && change.getUpdateDescription().getUpdatedFields().containsKey(TransactionArchive.MOVE_MARKER)) {
+            moving.add(change.getDocumentKey().getBinary("_id").asUuid());
+            return null;
+        }
+        if (operation == OperationType.DELETE) {
+            boolean moved = moving.remove(change.getDocumentKey().getBinary("_id").asUuid());
+            if (moved || before != null && Boolean.TRUE.equals(before.get(TransactionArchive.MOVE_MARKER))) {
+                return null;
+            }
+            if (before != null) {
+                return toFeedEvent(TransactionChangedEvent.deleted(read(before)));
+            }
+            TransactionFeedEvent event = new TransactionFeedEvent();
+            event.setType(TransactionChangedEvent.Type.DELETED);
+            event.setTransactionId(change.getDocumentKey().getBinary("_id").asUuid());
+            return event;
+        }
+        if (change.getFullDocument() == null) {
+            // updated and then deleted before the lookup; the delete follows
+            return null;
+        }
+        Transaction transaction = read(change.getFullDocument());
+        if (operation == OperationType.INSERT) {
+            return toFeedEvent(TransactionChangedEvent.created(transaction));
+        }
+        TransactionStatus previousStatus = before == null ? null : read(before).getStatus();
+        return toFeedEvent(TransactionChangedEvent.statusChanged(transaction,
+                previousStatus == transaction.getStatus() ? null : previousStatus));
+    }
+    
+    private Transaction read(Document document) {
+        return mongoTemplate.getConverter().read(Transaction.class, document);
+    }
+    
+    private static TransactionFeedEvent toFeedEvent(TransactionChangedEvent change) {
+        Transaction transaction = change.getTransaction();
+        TransactionFeedEvent event = new TransactionFeedEvent();
+        event.setType(change.getType());
+        event.setTransactionId(transaction.getId());
+        event.setMerchantId(transaction.getMerchantId());
+        event.setStatus(transaction.getStatus());
+        event.setPreviousStatus(change.getPreviousStatus());
+        event.setAmount(transaction.getAmount());
+        event.setCurrency(transaction.getCurrency());
+        event.setVersion(transaction.getVersion());
+        event.setUpdatedAt(transaction.getUpdatedAt());
+        return event;
+    }
+}
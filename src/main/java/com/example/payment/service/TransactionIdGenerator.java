@@ -0,0 +1,14 @@
+package com.example.payment.service;
+
+import java.util.UUID;
+
+/**
+ * Assigns ids to new transactions. {@code payment.id-generator} picks the
+ * implementation: {@code time-ordered} (the default) or {@code random}.
+ * Implementations are called concurrently from request threads and must not
+ * block.
+ */
+public interface TransactionIdGenerator {
+    
+    UUID nextId();
+}
@@ -0,0 +1,908 @@
+package com.example.payment.service;
+
+import com.example.payment.event.TransactionChangedEvent;
+import com.example.payment.event.TransactionCreatedEvent;
+import com.example.payment.exception.MongoCapacityExceededException;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal for transaction intake. New transactions are appended
+ * to memory-mapped segment files and acknowledged once they are on disk; a
+ * single committer thread forces everything appended since its last pass,
+ * so concurrent appends share one fsync. A drainer replays the journal into
+ * Mongo in order, in unordered bulk inserts of up to {@code drain-batch-size},
+ * records merchant totals and rollups, publishes the created events and then
+ * moves the checkpoint past the batch. Segments wholly behind the checkpoint
+ * are deleted.
+ *
+ * <p>Records are {@code [length, sequence, crc32c, payload]}. On startup the
+ * segments are scanned from the checkpoint; the first record that is torn,
+ * fails its checksum or breaks the sequence marks the end of the journal,
+ * and everything before it is replayed. Replay is at least once: a record
+ * that was inserted before a crash but not checkpointed fails with a
+ * duplicate key and is skipped. When the journal holds {@code max-segments}
+ * segments, appends are refused and callers write to Mongo directly.
+ *
+ * <p>Before a batch is inserted, its last sequence is written to the
+ * {@code pending} file, together with how far its merchant totals and
+ * rollups have been recorded. Those are retried with backoff until they
+ * succeed, and the checkpoint only moves once they have. A batch replayed
+ * while the file still names it counts its duplicate keys as its own
+ * inserts and records whatever totals are still missing, so neither a
+ * failed totals write nor a crash after the insert loses them.
+ *
+ * <p>Until it is drained, a transaction is only in the journal, so the
+ * journal keeps an id index of undrained transactions for reads, and
+ * updates and deletes wait for the drain. A record Mongo rejects for a
+ * reason other than a duplicate key was already acknowledged; it is moved
+ * to the {@code dead-letter} file in the journal directory rather than
+ * dropped.
+ */
+@Service
+public class TransactionJournal implements MeterBinder {
+    
+    private static final Logger log = LoggerFactory.getLogger(TransactionJournal.class);
+    
+    private static final int HEADER_SIZE = 16;
+    private static final byte FORMAT = 1;
+    private static final int DUPLICATE_KEY = 11000;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String DEAD_LETTER = "dead-letter";
+    private static final String PENDING = "pending";
+    private static final int TOTALS_RECORDED = 1;
+    private static final int ROLLUPS_RECORDED = 2;
+    private static final Duration MAX_TOTALS_BACKOFF = Duration.ofMinutes(1);
+    
+    private final MongoTemplate mongoTemplate;
+    private final MerchantTotalsService merchantTotalsService;
+    private final RollupService rollupService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final boolean asyncProcessing;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long commitLingerNanos;
+    private final int drainBatchSize;
+    private final Duration drainInterval;
+    private final Duration retryBackoff;
+    private final Duration awaitDrainTimeout;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    private Segment active;
+    private long lastSequence;
+    private volatile Position durable = new Position(0, 0, 0);
+    private volatile Position checkpoint = new Position(0, 0, 0);
+    private volatile boolean running = true;
+    private Pending pending;
+    private final ConcurrentMap<UUID, Transaction> undrained = new ConcurrentHashMap<>();
+    private Thread committer;
+    private Thread drainer;
+    
+    private final Timer appendTimer;
+    private final DistributionSummary commitSizes;
+    private final Timer drainTimer;
+    private final Counter deadLettered;
+    private final Counter bypassed;
+    
+    @Autowired
+    public TransactionJournal(MongoTemplate mongoTemplate,
+                              MerchantTotalsService merchantTotalsService,
+                              RollupService rollupService,
+                              ApplicationEventPublisher eventPublisher,
+                              MeterRegistry meterRegistry,
+                              @Value("${payment.journal.enabled:false}") boolean enabled,
+                              @Value("${payment.journal.directory:data/journal}") Path directory,
+                              @Value("${payment.journal.segment-size:64MB}") DataSize segmentSize,
+                              @Value("${payment.journal.max-segments:16}") int maxSegments,
+                              @Value("${payment.journal.commit-linger:0ms}") Duration commitLinger,
+                              @Value("${payment.journal.drain-batch-size:500}") int drainBatchSize,
+                              @Value("${payment.journal.drain-interval:50ms}") Duration drainInterval,
+                              @Value("${payment.journal.retry-backoff:1s}") Duration retryBackoff,
+                              @Value("${payment.journal.await-drain-timeout:5s}") Duration awaitDrainTimeout,
+                              @Value("${payment.pipeline.enabled:true}") boolean asyncProcessing) {
+        this.mongoTemplate = mongoTemplate;
+        this.merchantTotalsService = merchantTotalsService;
+        this.rollupService = rollupService;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.asyncProcessing = asyncProcessing;
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, segmentSize.toBytes());
+        this.maxSegments = Math.max(2, maxSegments);
+        this.commitLingerNanos = commitLinger.toNanos();
+        this.drainBatchSize = Math.max(1, drainBatchSize);
+        this.drainInterval = drainInterval;
+        this.retryBackoff = retryBackoff;
+        this.awaitDrainTimeout = awaitDrainTimeout;
+        
+        this.appendTimer = Timer.builder("payment.journal.append")
+                .description("Time to append one transaction to the journal and wait for its fsync")
+                .register(meterRegistry);
+        this.commitSizes = DistributionSummary.builder("payment.journal.commit.size")
+                .description("Journal records made durable by one fsync")
+                .register(meterRegistry);
+        this.drainTimer = Timer.builder("payment.journal.drain")
+                .description("Time to insert one drained journal batch into Mongo")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("payment.journal.dead-lettered")
+                .description("Journaled transactions Mongo rejected for a reason other than a duplicate key, "
+                        + "moved to the dead-letter file")
+                .register(meterRegistry);
+        this.bypassed = Counter.builder("payment.journal.bypassed")
+                .description("Transactions written directly because the journal was off or full")
+                .register(meterRegistry);
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("payment.journal.backlog", this, TransactionJournal::backlog)
+                .description("Transactions acknowledged but not yet drained into Mongo")
+                .register(registry);
+    }
+    
+    /**
+     * Recovers the journal and starts the committer. Draining starts once
+     * the application is ready.
+     */
+    @PostConstruct
+    public void open() {
+        if (!enabled || committer != null) {
+            return;
+        }
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the transaction journal in " + directory, e);
+        }
+        committer = Thread.ofPlatform().name("journal-committer").daemon(true).start(this::commitLoop);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Appends the transaction and returns once it is on disk. Returns
+     * {@code false} without appending when the journal is off or full; the
+     * caller then writes the transaction itself.
+     */
+    public boolean append(Transaction transaction) {
+        if (!enabled || !running) {
+            bypassed.increment();
+            return false;
+        }
+        if (transaction.getVersion() == null) {
+            transaction.setVersion(0L);
+        }
+        byte[] payload = encode(transaction);
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (active.remaining() < HEADER_SIZE + payload.length) {
+                boolean full = active.index - checkpoint.segment + 1 >= maxSegments;
+                if (full || HEADER_SIZE + payload.length > segmentSize) {
+                    bypassed.increment();
+                    return false;
+                }
+                roll();
+            }
+            long sequence = ++lastSequence;
+            active.write(sequence, payload);
+            undrained.put(transaction.getId(), transaction);
+            appended.signal();
+            while (durable.sequence < sequence) {
+                committed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } finally {
+            lock.unlock();
+        }
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return true;
+    }
+    
+    /**
+     * The transaction with this id if it was journaled but has not reached
+     * Mongo yet.
+     */
+    public Optional<Transaction> findUndrained(UUID id) {
+        return Optional.ofNullable(undrained.get(id));
+    }
+    
+    /**
+     * Waits until the transaction with this id has been drained into Mongo.
+     * Returns {@code false} straight away when it is not in the journal, and
+     * {@code true} once it has been drained, so the caller can repeat its
+     * write against Mongo.
+     *
+     * @throws MongoCapacityExceededException when the drain does not get to
+     *                                        it within {@code await-drain-timeout}
+     */
+    public boolean awaitDrained(UUID id) {
+        if (!undrained.containsKey(id)) {
+            return false;
+        }
+        long deadline = System.nanoTime() + awaitDrainTimeout.toNanos();
+        while (undrained.containsKey(id)) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new MongoCapacityExceededException("Transaction " + id
+                        + " is still being written to the database, retry shortly");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        return true;
+    }
+    
+    private double backlog() {
+        return durable.sequence - checkpoint.sequence;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void startDraining() {
+        if (enabled && drainer == null) {
+            drainer = Thread.ofPlatform().name("journal-drainer").daemon(true).start(this::drainLoop);
+        }
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (committer == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        committer.join(TimeUnit.SECONDS.toMillis(5));
+        if (drainer != null) {
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+            drainer.interrupt();
+        }
+    }
+    
+    /**
+     * Forces the active segment and starts the next one. Everything appended
+     * so far is durable afterwards. Called with the lock held.
+     */
+    private void roll() {
+        try {
+            active.force();
+            if (lastSequence > durable.sequence) {
+                commitSizes.record(lastSequence - durable.sequence);
+            }
+            durable = new Position(active.index, active.position, lastSequence);
+            committed.signalAll();
+            active = Segment.open(segmentPath(active.index + 1), active.index + 1, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start journal segment " + (active.index + 1), e);
+        }
+    }
+    
+    private void commitLoop() {
+        while (true) {
+            Segment segment;
+            int position;
+            long sequence;
+            lock.lock();
+            try {
+                while (running && lastSequence == durable.sequence) {
+                    appended.await(100, TimeUnit.MILLISECONDS);
+                }
+                if (lastSequence == durable.sequence) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (commitLingerNanos > 0) {
+                LockSupport.parkNanos(commitLingerNanos);
+            }
+            lock.lock();
+            try {
+                segment = active;
+                position = active.position;
+                sequence = lastSequence;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                segment.force();
+            } catch (RuntimeException e) {
+                log.error("Journal fsync failed, retrying", e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            lock.lock();
+            try {
+                long previous = durable.sequence;
+                if (sequence > previous) {
+                    durable = new Position(segment.index, position, sequence);
+                    commitSizes.record(sequence - previous);
+                }
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    private void drainLoop() {
+        Position position = checkpoint;
+        ByteBuffer buffer = null;
+        long mappedSegment = -1;
+        while (running) {
+            Position limit = durable;
+            // a batch that is still pending is replayed exactly as it was
+            Pending prior = pending;
+            long end = prior == null ? limit.sequence : Math.min(limit.sequence, prior.last);
+            List<Transaction> batch = new ArrayList<>(drainBatchSize);
+            List<Long> sequences = new ArrayList<>(drainBatchSize);
+            Position next = position;
+            try {
+                while (batch.size() < drainBatchSize && next.sequence < end) {
+                    if (mappedSegment != next.segment) {
+                        buffer = mapReadOnly(segmentPath(next.segment));
+                        mappedSegment = next.segment;
+                    }
+                    Record record = next.segment == limit.segment && next.offset >= limit.offset
+                            ? null : Record.read(buffer, next.offset, next.sequence + 1);
+                    if (record == null) {
+                        if (next.segment >= limit.segment) {
+                            throw new IllegalStateException("Journal record " + (next.sequence + 1)
+                                    + " is missing from segment " + next.segment);
+                        }
+                        next = new Position(next.segment + 1, 0, next.sequence);
+                        continue;
+                    }
+                    batch.add(decode(record.payload));
+                    sequences.add(record.sequence);
+                    next = new Position(next.segment, record.end, record.sequence);
+                }
+                if (batch.isEmpty()) {
+                    Thread.sleep(drainInterval.toMillis());
+                    continue;
+                }
+                if (prior == null) {
+                    writePending(new Pending(next.sequence, 0));
+                }
+                List<Transaction> created = store(batch, sequences, prior != null);
+                if (created == null) {
+                    Thread.sleep(retryBackoff.toMillis());
+                    continue;
+                }
+                if (!recordTotals(created)) {
+                    return;
+                }
+                for (Transaction transaction : created) {
+                    eventPublisher.publishEvent(TransactionChangedEvent.created(transaction));
+                    if (asyncProcessing) {
+                        eventPublisher.publishEvent(new TransactionCreatedEvent(transaction));
+                    }
+                }
+                Files.deleteIfExists(directory.resolve(PENDING));
+                pending = null;
+                writeCheckpoint(next);
+                for (Transaction transaction : batch) {
+                    undrained.remove(transaction.getId());
+                }
+                for (long segment = position.segment; segment < next.segment; segment++) {
+                    Files.deleteIfExists(segmentPath(segment));
+                }
+                position = next;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("Journal drain stopped at sequence {}, retrying in {}", position.sequence, retryBackoff, e);
+                mappedSegment = -1;
+                try {
+                    Thread.sleep(retryBackoff.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Inserts the batch and dead-letters the records Mongo rejects. Returns
+     * the transactions this batch created, counting duplicates as created
+     * when {@code replayed} says an earlier attempt may have inserted them,
+     * or {@code null} when Mongo could not be reached or the dead-letter file
+     * could not be written, so the same batch is tried again.
+     */
+    private List<Transaction> store(List<Transaction> batch, List<Long> sequences, boolean replayed) {
+        boolean[] skipped = new boolean[batch.size()];
+        try {
+            drainTimer.record(() -> mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Transaction.class)
+                    .insert(batch)
+                    .execute());
+        } catch (BulkOperationException e) {
+            List<Integer> rejected = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                skipped[error.getIndex()] = error.getCode() != DUPLICATE_KEY || !replayed;
+                if (error.getCode() != DUPLICATE_KEY) {
+                    rejected.add(error.getIndex());
+                    log.error("Moving journaled transaction {} to the dead-letter file: {}",
+                            batch.get(error.getIndex()).getId(), error.getMessage());
+                }
+            }
+            if (!rejected.isEmpty()) {
+                try {
+                    deadLetter(batch, sequences, rejected);
+                } catch (IOException deadLetterFailure) {
+                    log.error("Could not write the journal dead-letter file, retrying the batch in {}",
+                            retryBackoff, deadLetterFailure);
+                    return null;
+                }
+                deadLettered.increment(rejected.size());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Journal drain of {} transactions failed, retrying in {}: {}", batch.size(), retryBackoff,
+                    e.getMessage());
+            return null;
+        }
+        
+        List<Transaction> created = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (!skipped[i]) {
+                created.add(batch.get(i));
+            }
+        }
+        return created;
+    }
+    
+    /**
+     * Records merchant totals and then rollups for the created transactions,
+     * noting each step in the pending file and retrying each one on its own
+     * with backoff, so a step that succeeded is never applied twice. Returns
+     * {@code false} when the journal stops first.
+     */
+    private boolean recordTotals(List<Transaction> created) throws IOException, InterruptedException {
+        long backoff = retryBackoff.toMillis();
+        while (pending.recorded < ROLLUPS_RECORDED) {
+            try {
+                if (pending.recorded < TOTALS_RECORDED) {
+                    if (!created.isEmpty()) {
+                        merchantTotalsService.recordCreated(created);
+                    }
+                    writePending(new Pending(pending.last, TOTALS_RECORDED));
+                } else {
+                    if (!created.isEmpty()) {
+                        rollupService.recordCreated(created);
+                    }
+                    writePending(new Pending(pending.last, ROLLUPS_RECORDED));
+                }
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return false;
+                }
+                log.warn("Recording merchant totals and rollups for {} journaled transactions failed, "
+                        + "retrying in {} ms: {}", created.size(), backoff, e.getMessage());
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_TOTALS_BACKOFF.toMillis());
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Appends the rejected records to the dead-letter file in the journal
+     * record format, with their original sequence numbers, and forces it.
+     * A retried batch can append a record twice.
+     */
+    private void deadLetter(List<Transaction> batch, List<Long> sequences, List<Integer> rejected)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (int index : rejected) {
+                byte[] payload = encode(batch.get(index));
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                        .putInt(payload.length)
+                        .putLong(sequences.get(index))
+                        .putInt((int) crc.getValue())
+                        .put(payload)
+                        .flip();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(true);
+        }
+    }
+    
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        Position saved = readCheckpoint();
+        List<Long> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        Position start = saved != null ? saved
+                : new Position(segments.isEmpty() ? 0 : segments.get(0), 0, 0);
+        for (long segment : segments) {
+            if (segment < start.segment) {
+                Files.delete(segmentPath(segment));
+            }
+        }
+        
+        long last = segments.isEmpty() ? start.segment : Math.max(start.segment, segments.get(segments.size() - 1));
+        long sequence = start.sequence;
+        for (long segment = start.segment; segment < last; segment++) {
+            ByteBuffer buffer = mapReadOnly(segmentPath(segment));
+            int position = segment == start.segment ? start.offset : 0;
+            Record record;
+            while ((record = Record.read(buffer, position, sequence + 1)) != null) {
+                index(record);
+                sequence = record.sequence;
+                position = record.end;
+            }
+        }
+        active = Segment.open(segmentPath(last), last, segmentSize);
+        int offset = last == start.segment ? start.offset : 0;
+        Record record;
+        while ((record = Record.read(active.buffer, offset, sequence + 1)) != null) {
+            index(record);
+            sequence = record.sequence;
+            offset = record.end;
+        }
+        active.truncate(offset);
+        
+        lastSequence = sequence;
+        durable = new Position(last, offset, sequence);
+        checkpoint = start;
+        Pending unfinished = readPending();
+        if (unfinished != null && unfinished.last > start.sequence && unfinished.last <= sequence) {
+            pending = unfinished;
+        } else {
+            Files.deleteIfExists(directory.resolve(PENDING));
+        }
+        log.info("Transaction journal opened in {}: {} transactions to replay", directory,
+                sequence - start.sequence);
+    }
+    
+    private void index(Record record) throws IOException {
+        Transaction transaction = decode(record.payload);
+        undrained.put(transaction.getId(), transaction);
+    }
+    
+    private Pending readPending() throws IOException {
+        Path path = directory.resolve(PENDING);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return new Pending(in.readLong(), in.readInt());
+        }
+    }
+    
+    private void writePending(Pending next) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(12)
+                .putLong(next.last)
+                .putInt(next.recorded)
+                .flip();
+        writeAtomically(PENDING, bytes);
+        pending = next;
+    }
+    
+    private Position readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return new Position(in.readLong(), in.readInt(), in.readLong());
+        }
+    }
+    
+    private void writeCheckpoint(Position position) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(20)
+                .putLong(position.segment)
+                .putInt(position.offset)
+                .putLong(position.sequence)
+                .flip();
+        writeAtomically(CHECKPOINT, bytes);
+        checkpoint = position;
+    }
+    
+    private void writeAtomically(String name, ByteBuffer bytes) throws IOException {
+        Path temporary = directory.resolve(name + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(bytes);
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%016d%s", segment, SEGMENT_SUFFIX));
+    }
+    
+    private static ByteBuffer mapReadOnly(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    static byte[] encode(Transaction transaction) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT);
+            out.writeLong(transaction.getId().getMostSignificantBits());
+            out.writeLong(transaction.getId().getLeastSignificantBits());
+            writeString(out, transaction.getMerchantId());
+            writeString(out, transaction.getCustomerId());
+            writeString(out, transaction.getAmount() == null ? null : transaction.getAmount().toString());
+            writeString(out, transaction.getCurrency());
+            writeString(out, transaction.getPaymentMethod());
+            writeString(out, transaction.getDescription());
+            writeString(out, transaction.getStatus() == null ? null : transaction.getStatus().name());
+            writeTimestamp(out, transaction.getCreatedAt());
+            writeTimestamp(out, transaction.getUpdatedAt());
+            out.writeLong(transaction.getVersion() == null ? -1 : transaction.getVersion());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    static Transaction decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte format = in.readByte();
+        if (format != FORMAT) {
+            throw new IOException("Unknown journal record format " + format);
+        }
+        Transaction transaction = new Transaction();
+        transaction.setId(new UUID(in.readLong(), in.readLong()));
+        transaction.setMerchantId(readString(in));
+        transaction.setCustomerId(readString(in));
+        String amount = readString(in);
+        transaction.setAmount(amount == null ? null : new BigDecimal(amount));
+        transaction.setCurrency(readString(in));
+        transaction.setPaymentMethod(readString(in));
+        transaction.setDescription(readString(in));
+        String status = readString(in);
+        transaction.setStatus(status == null ? null : TransactionStatus.valueOf(status));
+        transaction.setCreatedAt(readTimestamp(in));
+        transaction.setUpdatedAt(readTimestamp(in));
+        long version = in.readLong();
+        transaction.setVersion(version < 0 ? null : version);
+        return transaction;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+    
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime timestamp) throws IOException {
+        out.writeBoolean(timestamp != null);
+        if (timestamp != null) {
+            out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(timestamp.getNano());
+        }
+    }
+    
+    private static LocalDateTime readTimestamp(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+    
+    /**
+     * A point in the journal: a byte offset in a segment, and the sequence
+     * of the last record before it.
+     */
+    private static final class Position {
+        
+        private final long segment;
+        private final int offset;
+        private final long sequence;
+        
+        private Position(long segment, int offset, long sequence) {
+            this.segment = segment;
+            this.offset = offset;
+            this.sequence = sequence;
+        }
+    }
+    
+    /**
+     * The batch being drained: its last sequence and how far its totals
+     * have been recorded.
+     */
+    private static final class Pending {
+        
+        private final long last;
+        private final int recorded;
+        
+        private Pending(long last, int recorded) {
+            this.last = last;
+            this.recorded = recorded;
+        }
+    }
+    
+    private static final class Record {
+        
+        private final long sequence;
+        private final byte[] payload;
+        private final int end;
+        
+        private Record(long sequence, byte[] payload, int end) {
+            this.sequence = sequence;
+            this.payload = payload;
+            this.end = end;
+        }
+        
+        /**
+         * Reads the record at {@code offset}, or returns {@code null} when
+         * there is no intact record with the expected sequence there.
+         */
+        private static Record read(ByteBuffer buffer, int offset, long expectedSequence) {
+            if (offset > buffer.limit() - HEADER_SIZE) {
+                return null;
+            }
+            int length = buffer.getInt(offset);
+            if (length <= 0 || length > buffer.limit() - offset - HEADER_SIZE
+                    || buffer.getLong(offset + 4) != expectedSequence) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + 12)) {
+                return null;
+            }
+            return new Record(expectedSequence, payload, offset + HEADER_SIZE + length);
+        }
+    }
+    
+    /**
+     * One journal file, mapped read-write at its full size.
+     */
+    private static final class Segment {
+        
+        private final long index;
+        private final MappedByteBuffer buffer;
+        private int position;
+        
+        private Segment(long index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+        
+        private static Segment open(Path path, long index, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long mapped = Math.max(size, channel.size());
+                return new Segment(index, channel.map(FileChannel.MapMode.READ_WRITE, 0, mapped));
+            }
+        }
+        
+        private int remaining() {
+            return buffer.capacity() - position;
+        }
+        
+        private void write(long sequence, byte[] payload) {
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            buffer.put(position + HEADER_SIZE, payload);
+            buffer.putLong(position + 4, sequence);
+            buffer.putInt(position + 12, (int) crc.getValue());
+            buffer.putInt(position, payload.length);
+            position += HEADER_SIZE + payload.length;
+        }
+        
+        /**
+         * Sets the append position after recovery and clears whatever a torn
+         * write left behind it, so it cannot be read back later.
+         */
+        private void truncate(int offset) {
+            position = offset;
+            if (remaining() >= Integer.BYTES && buffer.getInt(offset) == 0) {
+                return;
+            }
+            byte[] zeros = new byte[64 * 1024];
+            for (int at = offset; at < buffer.capacity(); at += zeros.length) {
+                buffer.put(at, zeros, 0, Math.min(zeros.length, buffer.capacity() - at));
+            }
+            buffer.force();
+        }
+        
+        private void force() {
+            buffer.force();
+        }
+    }
+}
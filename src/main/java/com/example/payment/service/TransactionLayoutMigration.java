@@ -0,0 +1,232 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.LayoutMigrationResult;
+import com.example.payment.dto.StorageReport;
+import com.example.payment.model.Transaction;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Rewrites transactions stored in the original layout (string {@code _id},
+ * full field names, string amounts, {@code _class}) into the compact layout
+ * declared on {@link Transaction}. Each batch inserts the converted documents
+ * and then deletes the originals, so an interrupted run can be resumed; a
+ * converted copy that already exists is detected by its duplicate key.
+ *
+ * <p>Until a run finds no original documents left, a transaction that is not
+ * found by its UUID is looked up under its string {@code _id} and converted
+ * on the spot by {@link #migrateOne}, so reads, updates and deletes keep
+ * working while the migration is pending.
+ */
+@Service
+public class TransactionLayoutMigration {
+    
+    private static final Logger log = LoggerFactory.getLogger(TransactionLayoutMigration.class);
+    
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int REPORT_SAMPLE_SIZE = 10000;
+    private static final Document LEGACY_ID = new Document("$type", "string");
+    
+    private final MongoTemplate mongoTemplate;
+    private volatile Boolean legacyRemaining;
+    
+    @Autowired
+    public TransactionLayoutMigration(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    public LayoutMigrationResult migrate(int batchSize, long limit) {
+        MongoCollection<Document> collection = collection();
+        LayoutMigrationResult result = new LayoutMigrationResult();
+        result.setBefore(storageReport());
+        
+        Object lastId = null;
+        while (result.getScanned() < limit) {
+            Document idFilter = lastId == null ? LEGACY_ID : new Document(LEGACY_ID).append("$gt", lastId);
+            Document filter = new Document("_id", idFilter);
+            int size = (int) Math.min(batchSize, limit - result.getScanned());
+            List<Document> legacy = collection.find(filter).sort(Sorts.ascending("_id")).limit(size)
+                    .into(new ArrayList<>(size));
+            if (legacy.isEmpty()) {
+                break;
+            }
+            lastId = legacy.get(legacy.size() - 1).get("_id");
+            migrateBatch(collection, legacy, result);
+        }
+        
+        result.setRemaining(collection.countDocuments(new Document("_id", LEGACY_ID)));
+        legacyRemaining = result.getRemaining() > 0;
+        result.setDroppedIndexes(result.getRemaining() == 0 ? dropLegacyIndexes(collection) : List.of());
+        result.setAfter(storageReport());
+        log.info("Layout migration: {} scanned, {} migrated, {} already migrated, {} failed, {} remaining",
+                result.getScanned(), result.getMigrated(), result.getAlreadyMigrated(), result.getFailed(),
+                result.getRemaining());
+        return result;
+    }
+    
+    /**
+     * Converts the transaction with this id if it is still stored in the
+     * original layout. Returns {@code true} when a document was converted, so
+     * the caller can repeat its lookup by UUID.
+     */
+    public boolean migrateOne(UUID id) {
+        MongoCollection<Document> collection = collection();
+        Boolean remaining = legacyRemaining;
+        if (remaining == null) {
+            remaining = collection.find(new Document("_id", LEGACY_ID)).limit(1).first() != null;
+            legacyRemaining = remaining;
+        }
+        if (!remaining) {
+            return false;
+        }
+        Document legacy = collection.find(new Document("_id", id.toString())).first();
+        if (legacy == null) {
+            return false;
+        }
+        try {
+            collection.insertOne(toCompact(legacy));
+        } catch (MongoWriteException e) {
+            if (e.getError().getCode() != DUPLICATE_KEY) {
+                throw e;
+            }
+        }
+        collection.deleteOne(new Document("_id", legacy.get("_id")));
+        return true;
+    }
+    
+    public StorageReport storageReport() {
+        MongoCollection<Document> collection = collection();
+        Document stats = collection.aggregate(List.of(
+                        new Document("$collStats", new Document("storageStats", new Document()))))
+                .first();
+        Document storage = stats == null ? new Document() : stats.get("storageStats", new Document());
+        
+        StorageReport report = new StorageReport();
+        report.setCollection(collection.getNamespace().getCollectionName());
+        report.setDocuments(number(storage.get("count")));
+        report.setDataSizeBytes(number(storage.get("size")));
+        report.setStorageSizeBytes(number(storage.get("storageSize")));
+        report.setTotalIndexSizeBytes(number(storage.get("totalIndexSize")));
+        Map<String, Long> indexSizes = new LinkedHashMap<>();
+        storage.get("indexSizes", new Document()).forEach((name, bytes) -> indexSizes.put(name, number(bytes)));
+        report.setIndexSizes(indexSizes);
+        report.setLegacyDocuments(collection.countDocuments(new Document("_id", LEGACY_ID)));
+        
+        for (Document layout : collection.aggregate(List.of(
+                new Document("$sample", new Document("size", REPORT_SAMPLE_SIZE)),
+                new Document("$group", new Document("_id", new Document("$type", "$_id"))
+                        .append("avgBytes", new Document("$avg", new Document("$bsonSize", "$$ROOT"))))))) {
+            Double avgBytes = ((Number) layout.get("avgBytes")).doubleValue();
+            if ("string".equals(layout.get("_id"))) {
+                report.setAvgLegacyDocumentBytes(avgBytes);
+            } else {
+                report.setAvgCompactDocumentBytes(avgBytes);
+            }
+        }
+        return report;
+    }
+    
+    static Document toCompact(Document legacy) {
+        Document compact = new Document("_id", UUID.fromString(legacy.getString("_id")));
+        for (Map.Entry<String, String> field : Transaction.FIELDS.entrySet()) {
+            Object value = legacy.get(field.getKey());
+            if (value == null) {
+                continue;
+            }
+            if ("amount".equals(field.getKey())) {
+                value = value instanceof Decimal128 ? value : new Decimal128(new BigDecimal(value.toString()));
+            }
+            compact.append(field.getValue(), value);
+        }
+        return compact;
+    }
+    
+    private void migrateBatch(MongoCollection<Document> collection, List<Document> legacy,
+                              LayoutMigrationResult result) {
+        List<InsertOneModel<Document>> inserts = new ArrayList<>(legacy.size());
+        List<Object> converted = new ArrayList<>(legacy.size());
+        for (Document document : legacy) {
+            try {
+                inserts.add(new InsertOneModel<>(toCompact(document)));
+                converted.add(document.get("_id"));
+            } catch (RuntimeException e) {
+                log.warn("Cannot convert transaction {}: {}", document.get("_id"), e.getMessage());
+                result.setFailed(result.getFailed() + 1);
+            }
+        }
+        result.setScanned(result.getScanned() + legacy.size());
+        if (inserts.isEmpty()) {
+            return;
+        }
+        
+        Set<Integer> failedIndexes = new HashSet<>();
+        int duplicates = 0;
+        try {
+            collection.bulkWrite(inserts, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() == DUPLICATE_KEY) {
+                    duplicates++;
+                } else {
+                    failedIndexes.add(error.getIndex());
+                    log.warn("Cannot migrate transaction {}: {}", converted.get(error.getIndex()), error.getMessage());
+                }
+            }
+        }
+        
+        List<Object> done = new ArrayList<>(converted.size());
+        for (int i = 0; i < converted.size(); i++) {
+            if (!failedIndexes.contains(i)) {
+                done.add(converted.get(i));
+            }
+        }
+        if (!done.isEmpty()) {
+            collection.deleteMany(new Document("_id", new Document("$in", done)));
+        }
+        result.setMigrated(result.getMigrated() + done.size() - duplicates);
+        result.setAlreadyMigrated(result.getAlreadyMigrated() + duplicates);
+        result.setFailed(result.getFailed() + failedIndexes.size());
+    }
+    
+    private List<String> dropLegacyIndexes(MongoCollection<Document> collection) {
+        List<String> dropped = new ArrayList<>();
+        for (Document index : collection.listIndexes()) {
+            Document keys = index.get("key", new Document());
+            if (keys.keySet().stream().anyMatch(Transaction.FIELDS::containsKey)) {
+                String name = index.getString("name");
+                collection.dropIndex(name);
+                dropped.add(name);
+            }
+        }
+        return dropped;
+    }
+    
+    private MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class));
+    }
+    
+    private static long number(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+}
@@ -1,50 +1,234 @@
 package com.example.payment.service;
 
+import com.example.payment.config.PaymentMetrics;
+import com.example.payment.dto.BatchItemResult;
 import com.example.payment.dto.CreateTransactionRequest;
+import com.example.payment.dto.CursorPage;
+import com.example.payment.dto.TransactionStats;
+import com.example.payment.event.TransactionChangedEvent;
+import com.example.payment.event.TransactionCreatedEvent;
+import com.example.payment.exception.InvalidStatusTransitionException;
+import com.example.payment.model.RollupGranularity;
 import com.example.payment.model.Transaction;
 import com.example.payment.model.TransactionStatus;
 import com.example.payment.repository.TransactionRepository;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class TransactionService {
     
     private final TransactionRepository transactionRepository;
-    private final Random random = new Random();
+    private final MongoTemplate mongoTemplate;
+    private final MerchantTotalsService merchantTotalsService;
+    private final RollupService rollupService;
+    private final WriteCombiner writeCombiner;
+    private final TransactionJournal transactionJournal;
+    private final ShardRouter shardRouter;
+    private final ParallelQueryExecutor parallelQueryExecutor;
+    private final TransactionCache transactionCache;
+    private final HotTransactionWindow hotWindow;
+    private final TransactionArchive transactionArchive;
+    private final TransactionLayoutMigration layoutMigration;
+    private final PaymentProcessor paymentProcessor;
+    private final TransactionIdGenerator idGenerator;
+    private final PaymentMetrics paymentMetrics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Validator validator;
+    private final int exportBatchSize;
+    private final int batchInsertChunkSize;
+    private final boolean asyncProcessing;
     
     @Autowired
-    public TransactionService(TransactionRepository transactionRepository) {
+    public TransactionService(TransactionRepository transactionRepository,
+                              MongoTemplate mongoTemplate,
+                              MerchantTotalsService merchantTotalsService,
+                              RollupService rollupService,
+                              WriteCombiner writeCombiner,
+                              TransactionJournal transactionJournal,
+                              ShardRouter shardRouter,
+                              ParallelQueryExecutor parallelQueryExecutor,
+                              TransactionCache transactionCache,
+                              HotTransactionWindow hotWindow,
+                              TransactionArchive transactionArchive,
+                              TransactionLayoutMigration layoutMigration,
+                              PaymentProcessor paymentProcessor,
+                              TransactionIdGenerator idGenerator,
+                              PaymentMetrics paymentMetrics,
+                              ApplicationEventPublisher eventPublisher,
+                              Validator validator,
+                              @Value("${payment.export.batch-size:500}") int exportBatchSize,
+                              @Value("${payment.batch.insert-chunk-size:1000}") int batchInsertChunkSize,
+                              @Value("${payment.pipeline.enabled:true}") boolean asyncProcessing) {
         this.transactionRepository = transactionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.merchantTotalsService = merchantTotalsService;
+        this.rollupService = rollupService;
+        this.writeCombiner = writeCombiner;
+        this.transactionJournal = transactionJournal;
+        this.shardRouter = shardRouter;
+        this.parallelQueryExecutor = parallelQueryExecutor;
+        this.transactionCache = transactionCache;
+        this.hotWindow = hotWindow;
+        this.transactionArchive = transactionArchive;
+        this.layoutMigration = layoutMigration;
+        this.paymentProcessor = paymentProcessor;
+        this.idGenerator = idGenerator;
+        this.paymentMetrics = paymentMetrics;
+        this.eventPublisher = eventPublisher;
+        this.validator = validator;
+        this.exportBatchSize = exportBatchSize;
+        this.batchInsertChunkSize = batchInsertChunkSize;
+        this.asyncProcessing = asyncProcessing;
     }
     
+    /**
+     * Creates the transaction. With the journal on, it returns once the
+     * transaction is journaled; the insert, totals and created events follow
+     * when the journal is drained.
+     */
     public Transaction createTransaction(CreateTransactionRequest request) {
-        Transaction transaction = new Transaction();
-        transaction.setMerchantId(request.getMerchantId());
-        transaction.setCustomerId(request.getCustomerId());
-        transaction.setAmount(request.getAmount());
-        transaction.setCurrency(request.getCurrency());
-        transaction.setPaymentMethod(request.getPaymentMethod());
-        transaction.setDescription(request.getDescription());
+        Transaction transaction = newTransaction(request, idGenerator);
+        if (!asyncProcessing) {
+            transaction.setStatus(processPayment(transaction));
+        }
+        if (transactionJournal.append(transaction)) {
+            transactionCache.put(transaction);
+            hotWindow.put(transaction);
+            return transaction;
+        }
         
-        transaction.setStatus(mockPaymentProcessing());
+        Transaction saved;
+        if (writeCombiner.isEnabled()) {
+            saved = writeCombiner.insert(transaction);
+        } else {
+            saved = transactionRepository.save(transaction);
+            merchantTotalsService.recordCreated(saved);
+            rollupService.recordCreated(saved);
+        }
+        transactionCache.put(saved);
+        hotWindow.put(saved);
+        eventPublisher.publishEvent(TransactionChangedEvent.created(saved));
+        if (asyncProcessing) {
+            eventPublisher.publishEvent(new TransactionCreatedEvent(saved));
+        }
+        return saved;
+    }
+    
+    public List<BatchItemResult> createTransactions(List<CreateTransactionRequest> requests) {
+        BatchItemResult[] results = new BatchItemResult[requests.size()];
+        List<Transaction> pending = new ArrayList<>(Math.min(requests.size(), batchInsertChunkSize));
+        List<Integer> pendingIndexes = new ArrayList<>(Math.min(requests.size(), batchInsertChunkSize));
+        List<Transaction> inserted = new ArrayList<>(requests.size());
         
-        return transactionRepository.save(transaction);
+        for (int i = 0; i < requests.size(); i++) {
+            CreateTransactionRequest request = requests.get(i);
+            if (request == null) {
+                results[i] = BatchItemResult.failed(i, "Transaction is required");
+                continue;
+            }
+            Set<ConstraintViolation<CreateTransactionRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                results[i] = BatchItemResult.failed(i, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                continue;
+            }
+            Transaction transaction = newTransaction(request, idGenerator);
+            if (!asyncProcessing) {
+                transaction.setStatus(processPayment(transaction));
+            }
+            pending.add(transaction);
+            pendingIndexes.add(i);
+            if (pending.size() == batchInsertChunkSize) {
+                insertChunk(pending, pendingIndexes, results, inserted);
+            }
+        }
+        if (!pending.isEmpty()) {
+            insertChunk(pending, pendingIndexes, results, inserted);
+        }
+        
+        merchantTotalsService.recordCreated(inserted);
+        rollupService.recordCreated(inserted);
+        hotWindow.putAll(inserted);
+        for (Transaction transaction : inserted) {
+            eventPublisher.publishEvent(TransactionChangedEvent.created(transaction));
+            if (asyncProcessing) {
+                eventPublisher.publishEvent(new TransactionCreatedEvent(transaction));
+            }
+        }
+        return Arrays.asList(results);
     }
     
     public Optional<Transaction> getTransactionById(String id) {
-        return transactionRepository.findById(id);
+        return getTransactionById(id, null);
+    }
+    
+    /**
+     * Looks the transaction up among the journaled ones that have not
+     * reached Mongo yet, then by id, then among documents still in the
+     * original layout, then in the archive. A non-null
+     * {@code merchantId} scopes the lookup to that merchant and, on a sharded
+     * cluster, targets one shard.
+     */
+    public Optional<Transaction> getTransactionById(String id, String merchantId) {
+        UUID transactionId = parseId(id);
+        if (transactionId == null) {
+            return Optional.empty();
+        }
+        if (merchantId == null) {
+            return transactionCache.get(transactionId, key -> transactionJournal.findUndrained(key)
+                    .or(() -> transactionRepository.findById(key))
+                    .or(() -> layoutMigration.migrateOne(key) ? transactionRepository.findById(key)
+                            : Optional.empty())
+                    .or(() -> transactionArchive.findById(key, null)));
+        }
+        Query byId = Query.query(ShardRouter.byId(transactionId, merchantId));
+        return transactionCache.get(transactionId, key -> transactionJournal.findUndrained(key)
+                        .or(() -> Optional.ofNullable(mongoTemplate.findOne(byId, Transaction.class)))
+                        .or(() -> layoutMigration.migrateOne(key)
+                                ? Optional.ofNullable(mongoTemplate.findOne(byId, Transaction.class))
+                                : Optional.empty())
+                        .or(() -> transactionArchive.findById(key, merchantId)))
+                .filter(transaction -> merchantId.equals(transaction.getMerchantId()));
     }
     
     public List<Transaction> getAllTransactions() {
+        if (shardRouter.isEnabled()) {
+            return shardRouter.findAcrossShards(new Query(), null);
+        }
         return transactionRepository.findAll();
     }
     
@@ -52,6 +236,33 @@ public class TransactionService {
         return transactionRepository.findAll(pageable);
     }
     
+    public CursorPage<Transaction> getAllTransactions(String cursor, int size, Sort.Direction direction,
+                                                      boolean includeTotal) {
+        return getCursorPage(new Query(), cursor, size, direction, includeTotal,
+                pageSize -> hotWindow.pageAll(cursor, pageSize, direction));
+    }
+    
+    public CursorPage<Transaction> getTransactionsByMerchant(String merchantId, String cursor, int size,
+                                                             Sort.Direction direction, boolean includeTotal) {
+        return getCursorPage(Query.query(Criteria.where("merchantId").is(merchantId)),
+                cursor, size, direction, includeTotal,
+                pageSize -> hotWindow.pageByMerchant(merchantId, cursor, pageSize, direction));
+    }
+    
+    public CursorPage<Transaction> getTransactionsByCustomer(String customerId, String cursor, int size,
+                                                             Sort.Direction direction, boolean includeTotal) {
+        return getCursorPage(Query.query(Criteria.where("customerId").is(customerId)),
+                cursor, size, direction, includeTotal,
+                pageSize -> hotWindow.pageByCustomer(customerId, cursor, pageSize, direction));
+    }
+    
+    public CursorPage<Transaction> getTransactionsByStatus(TransactionStatus status, String cursor, int size,
+                                                           Sort.Direction direction, boolean includeTotal) {
+        return getCursorPage(Query.query(Criteria.where("status").is(status)),
+                cursor, size, direction, includeTotal,
+                pageSize -> hotWindow.pageByStatus(status, cursor, pageSize, direction));
+    }
+    
     public List<Transaction> getTransactionsByMerchant(String merchantId) {
         return transactionRepository.findByMerchantId(merchantId);
     }
@@ -61,44 +272,397 @@ public class TransactionService {
     }
     
     public List<Transaction> getTransactionsByStatus(TransactionStatus status) {
-        return transactionRepository.findByStatus(status);
+        return getTransactionsByStatus(status, null);
+    }
+    
+    /**
+     * Transactions in the given status. With a {@code limit}, only the newest
+     * {@code limit} of them.
+     */
+    public List<Transaction> getTransactionsByStatus(TransactionStatus status, Integer limit) {
+        Query filter = Query.query(Criteria.where("status").is(status));
+        return findAcrossMerchants("status", status, filter, null, null, limit,
+                () -> transactionRepository.findByStatus(status));
     }
     
     public Optional<Transaction> updateTransactionStatus(String id, TransactionStatus status) {
-        Optional<Transaction> optionalTransaction = transactionRepository.findById(id);
-        if (optionalTransaction.isPresent()) {
-            Transaction transaction = optionalTransaction.get();
-            transaction.setStatus(status);
-            return Optional.of(transactionRepository.save(transaction));
+        return updateTransactionStatus(id, status, null, null);
+    }
+    
+    public Optional<Transaction> updateTransactionStatus(String id, TransactionStatus status, Long expectedVersion) {
+        return updateTransactionStatus(id, status, expectedVersion, null);
+    }
+    
+    public Optional<Transaction> updateTransactionStatus(String id, TransactionStatus status, Long expectedVersion,
+                                                         String merchantId) {
+        UUID transactionId = parseId(id);
+        if (transactionId == null) {
+            return Optional.empty();
+        }
+        Optional<Criteria> target = shardRouter.writeById(transactionId, merchantId);
+        if (target.isEmpty()) {
+            return recover(transactionId, merchantId)
+                    ? updateTransactionStatus(id, status, expectedVersion, merchantId)
+                    : Optional.empty();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Transaction previous = transition(target.get(), status, expectedVersion, now);
+        if (previous == null) {
+            Transaction current = mongoTemplate.findOne(Query.query(target.get()), Transaction.class);
+            if (current == null) {
+                return recover(transactionId, merchantId)
+                        ? updateTransactionStatus(id, status, expectedVersion, merchantId)
+                        : Optional.empty();
+            }
+            throw transitionFailure(current, status, expectedVersion);
+        }
+        
+        TransactionStatus previousStatus = previous.getStatus();
+        Transaction updated = applyTransition(previous, status, now);
+        if (writeCombiner.isEnabled()) {
+            writeCombiner.recordStatusChange(updated, previousStatus);
+        } else {
+            merchantTotalsService.recordStatusChange(updated, previousStatus);
+            rollupService.recordStatusChange(updated, previousStatus);
+        }
+        transactionCache.put(updated);
+        hotWindow.update(updated);
+        eventPublisher.publishEvent(TransactionChangedEvent.statusChanged(updated, previousStatus));
+        return Optional.of(updated);
+    }
+    
+    /**
+     * Applies a set of status changes one {@code findAndModify} each, skipping
+     * transactions that are gone or no longer in a source status and
+     * restoring archived ones first, and records
+     * the merchant total and rollup moves for all of them in one bulk write
+     * each.
+     */
+    public List<Transaction> updateTransactionStatuses(Map<UUID, TransactionStatus> updates) {
+        List<Transaction> updated = new ArrayList<>(updates.size());
+        List<TransactionStatus> previousStatuses = new ArrayList<>(updates.size());
+        for (Map.Entry<UUID, TransactionStatus> update : updates.entrySet()) {
+            Optional<Criteria> target = shardRouter.writeById(update.getKey(), null);
+            if (target.isEmpty() && transactionArchive.restore(update.getKey(), null).isPresent()) {
+                target = shardRouter.writeById(update.getKey(), null);
+            }
+            if (target.isEmpty()) {
+                continue;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            Transaction previous = transition(target.get(), update.getValue(), null, now);
+            if (previous == null && transactionArchive.restore(update.getKey(), null).isPresent()) {
+                previous = transition(target.get(), update.getValue(), null, now);
+            }
+            if (previous == null) {
+                continue;
+            }
+            previousStatuses.add(previous.getStatus());
+            Transaction transaction = applyTransition(previous, update.getValue(), now);
+            transactionCache.put(transaction);
+            hotWindow.update(transaction);
+            updated.add(transaction);
         }
-        return Optional.empty();
+        merchantTotalsService.recordStatusChanges(updated, previousStatuses);
+        rollupService.recordStatusChanges(updated, previousStatuses);
+        for (int i = 0; i < updated.size(); i++) {
+            eventPublisher.publishEvent(TransactionChangedEvent.statusChanged(updated.get(i), previousStatuses.get(i)));
+        }
+        return updated;
     }
     
     public List<Transaction> getTransactionsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return transactionRepository.findByCreatedAtBetween(startDate, endDate);
+        return getTransactionsByDateRange(startDate, endDate, null);
+    }
+    
+    public List<Transaction> getTransactionsByDateRange(LocalDateTime startDate, LocalDateTime endDate,
+                                                        Integer limit) {
+        return transactionArchive.withArchived(
+                findAcrossMerchants("date-range", null, new Query(), startDate, endDate, limit,
+                        () -> transactionRepository.findByCreatedAtBetween(startDate, endDate)),
+                startDate, endDate, limit);
+    }
+    
+    public Map<String, BigDecimal> getTotalAmountByMerchantAndStatus(String merchantId, TransactionStatus status) {
+        return merchantTotalsService.getTotalsByCurrency(merchantId, status);
+    }
+    
+    public TransactionStats getStats(String merchantId, TransactionStatus status, String currency,
+                                     LocalDateTime startDate, LocalDateTime endDate,
+                                     RollupGranularity granularity) {
+        return rollupService.getStats(merchantId, status, currency, startDate, endDate, granularity);
+    }
+    
+    public Stream<Transaction> streamTransactionsByMerchant(String merchantId) {
+        return streamTransactions(Criteria.where("merchantId").is(merchantId));
+    }
+    
+    public Stream<Transaction> streamTransactionsByCustomer(String customerId) {
+        return streamTransactions(Criteria.where("customerId").is(customerId));
+    }
+    
+    public Stream<Transaction> streamTransactionsByStatus(TransactionStatus status) {
+        return streamTransactions(Criteria.where("status").is(status));
+    }
+    
+    public Stream<Transaction> streamTransactionsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        return streamTransactions(Criteria.where("createdAt").gte(startDate).lte(endDate));
     }
     
-    public BigDecimal getTotalAmountByMerchantAndStatus(String merchantId, TransactionStatus status) {
-        List<Transaction> transactions = transactionRepository.findByMerchantIdAndStatus(merchantId, status);
-        return transactions.stream()
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    public int getExportBatchSize() {
+        return exportBatchSize;
     }
     
     public boolean deleteTransaction(String id) {
-        if (transactionRepository.existsById(id)) {
-            transactionRepository.deleteById(id);
+        return deleteTransaction(id, null);
+    }
+    
+    public boolean deleteTransaction(String id, String merchantId) {
+        UUID transactionId = parseId(id);
+        if (transactionId == null) {
+            return false;
+        }
+        Optional<Criteria> target = shardRouter.writeById(transactionId, merchantId);
+        Transaction deleted = target.isEmpty() ? null
+                : mongoTemplate.findAndRemove(Query.query(target.get()), Transaction.class);
+        if (deleted == null && (transactionJournal.awaitDrained(transactionId)
+                || layoutMigration.migrateOne(transactionId))) {
+            return deleteTransaction(id, merchantId);
+        }
+        if (deleted == null || deleted.getStatus().isTerminal()) {
+            Optional<Transaction> archived = transactionArchive.remove(transactionId, merchantId);
+            deleted = deleted == null ? archived.orElse(null) : deleted;
+        }
+        transactionCache.invalidate(transactionId);
+        hotWindow.remove(transactionId);
+        if (deleted != null) {
+            merchantTotalsService.recordDeleted(deleted);
+            rollupService.recordDeleted(deleted);
+            eventPublisher.publishEvent(TransactionChangedEvent.deleted(deleted));
             return true;
         }
         return false;
     }
     
-    private TransactionStatus mockPaymentProcessing() {
-        double successRate = 0.8;
-        if (random.nextDouble() <= successRate) {
-            return TransactionStatus.COMPLETED;
-        } else {
-            return TransactionStatus.FAILED;
+    /**
+     * Brings a transaction that is missing from the hot collection into it:
+     * by waiting for the journal to drain it, by converting a document still
+     * in the original layout or by restoring it from the archive.
+     */
+    private boolean recover(UUID id, String merchantId) {
+        return transactionJournal.awaitDrained(id)
+                || layoutMigration.migrateOne(id)
+                || transactionArchive.restore(id, merchantId).isPresent();
+    }
+    
+    /**
+     * Transaction ids are UUIDs; anything else cannot match a stored
+     * transaction and is treated as not found rather than as a bad request.
+     */
+    static UUID parseId(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    static Query transitionQuery(Criteria target, TransactionStatus status, Long expectedVersion) {
+        Query query = Query.query(target).addCriteria(Criteria.where("status").in(status.allowedSources()));
+        if (expectedVersion != null) {
+            query.addCriteria(Criteria.where("version").is(expectedVersion));
+        }
+        return query;
+    }
+    
+    static Update transitionUpdate(TransactionStatus status, LocalDateTime now) {
+        return new Update()
+                .set("status", status)
+                .set("updatedAt", now)
+                .inc("version", 1);
+    }
+    
+    static Transaction applyTransition(Transaction previous, TransactionStatus status, LocalDateTime now) {
+        previous.setStatus(status);
+        previous.setUpdatedAt(now);
+        previous.setVersion(previous.getVersion() == null ? 1L : previous.getVersion() + 1);
+        return previous;
+    }
+    
+    static RuntimeException transitionFailure(Transaction current, TransactionStatus status, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+            return new OptimisticLockingFailureException("Transaction " + current.getId()
+                    + " is at version " + current.getVersion() + ", expected " + expectedVersion);
+        }
+        return new InvalidStatusTransitionException(current.getStatus(), status);
+    }
+    
+    /**
+     * Applies a status transition and returns the transaction as it was, or
+     * {@code null} when the target is gone or not in a source status.
+     */
+    private Transaction transition(Criteria target, TransactionStatus status, Long expectedVersion,
+                                   LocalDateTime now) {
+        return mongoTemplate.findAndModify(
+                transitionQuery(target, status, expectedVersion),
+                transitionUpdate(status, now),
+                FindAndModifyOptions.options().returnNew(false),
+                Transaction.class);
+    }
+    
+    static Transaction newTransaction(CreateTransactionRequest request, TransactionIdGenerator idGenerator) {
+        Transaction transaction = new Transaction();
+        transaction.setId(idGenerator.nextId());
+        transaction.setCreatedAt(LocalDateTime.now());
+        transaction.setStatus(TransactionStatus.PENDING);
+        transaction.setMerchantId(request.getMerchantId());
+        transaction.setCustomerId(request.getCustomerId());
+        transaction.setAmount(request.getAmount());
+        transaction.setCurrency(request.getCurrency());
+        transaction.setPaymentMethod(request.getPaymentMethod());
+        transaction.setDescription(request.getDescription());
+        return transaction;
+    }
+    
+    /**
+     * Inserts one chunk unordered and reports each row on its own. When the
+     * failure carries per-row write errors only those rows fail; otherwise
+     * the rows that did land are found by id, so a client never resubmits a
+     * transaction that was stored.
+     */
+    private void insertChunk(List<Transaction> chunk, List<Integer> indexes, BatchItemResult[] results,
+                             List<Transaction> inserted) {
+        boolean[] failed = new boolean[chunk.size()];
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Transaction.class)
+                    .insert(chunk)
+                    .execute();
+        } catch (RuntimeException e) {
+            List<BulkWriteError> errors = writeErrors(e);
+            if (errors != null) {
+                for (BulkWriteError error : errors) {
+                    failed[error.getIndex()] = true;
+                    results[indexes.get(error.getIndex())] =
+                            BatchItemResult.failed(indexes.get(error.getIndex()), error.getMessage());
+                }
+            } else {
+                Set<UUID> stored = storedIds(chunk);
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (!stored.contains(chunk.get(i).getId())) {
+                        failed[i] = true;
+                        results[indexes.get(i)] = BatchItemResult.failed(indexes.get(i),
+                                "Failed to persist transaction: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!failed[i]) {
+                Transaction transaction = chunk.get(i);
+                results[indexes.get(i)] =
+                        BatchItemResult.created(indexes.get(i), transaction.getId().toString(),
+                                transaction.getStatus());
+                inserted.add(transaction);
+            }
+        }
+        chunk.clear();
+        indexes.clear();
+    }
+    
+    /**
+     * One keyset page. Pages without a total are first offered to the hot
+     * window, which answers them when they lie entirely inside it.
+     */
+    private CursorPage<Transaction> getCursorPage(Query filter, String cursor, int size,
+                                                  Sort.Direction direction, boolean includeTotal,
+                                                  IntFunction<Optional<CursorPage<Transaction>>> hotPage) {
+        int pageSize = KeysetCursor.clampPageSize(size);
+        if (!includeTotal) {
+            Optional<CursorPage<Transaction>> hot = hotPage.apply(pageSize);
+            if (hot.isPresent()) {
+                return hot.get();
+            }
+        }
+        Long total = includeTotal ? mongoTemplate.count(Query.of(filter), Transaction.class) : null;
+        List<Transaction> transactions = mongoTemplate.find(
+                KeysetCursor.pageQuery(filter, cursor, pageSize, direction), Transaction.class);
+        return KeysetCursor.toPage(transactions, pageSize, total);
+    }
+    
+    /**
+     * Runs a query that no shard key narrows down: from the hot window when
+     * it holds the whole result, per shard when sharded, in parallel
+     * createdAt splits when the parallel executor is on, and as one query
+     * otherwise. Results are newest first unless the plain repository query
+     * is used.
+     */
+    private List<Transaction> findAcrossMerchants(String queryName, TransactionStatus status, Query filter,
+                                                  LocalDateTime from, LocalDateTime to, Integer limit,
+                                                  Supplier<List<Transaction>> repositoryQuery) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        Optional<List<Transaction>> hot = hotWindow.findNewest(queryName, status, from, to, limit);
+        if (hot.isPresent()) {
+            return hot.get();
+        }
+        Query bounded = from == null ? filter
+                : Query.of(filter).addCriteria(Criteria.where("createdAt").gte(from).lte(to));
+        if (shardRouter.isEnabled()) {
+            return shardRouter.findAcrossShards(bounded, limit);
+        }
+        if (parallelQueryExecutor.isEnabled()) {
+            return parallelQueryExecutor.find(queryName, filter, from, to, limit);
+        }
+        if (limit == null) {
+            return repositoryQuery.get();
+        }
+        return mongoTemplate.find(Query.of(bounded).with(ShardRouter.MERGE_ORDER).limit(limit), Transaction.class);
+    }
+    
+    /**
+     * The per-row write errors of a failed bulk insert, also when the bulk
+     * exception arrives wrapped, or {@code null} when the failure has none.
+     */
+    private static List<BulkWriteError> writeErrors(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BulkOperationException bulk) {
+                return bulk.getErrors();
+            }
+            if (cause instanceof MongoBulkWriteException bulk) {
+                return bulk.getWriteErrors();
+            }
+        }
+        return null;
+    }
+    
+    private Set<UUID> storedIds(List<Transaction> chunk) {
+        List<UUID> ids = chunk.stream().map(Transaction::getId).toList();
+        Query query = Query.query(Criteria.where("id").in(ids));
+        query.fields().include("id");
+        try {
+            return mongoTemplate.find(query, Transaction.class).stream()
+                    .map(Transaction::getId)
+                    .collect(Collectors.toSet());
+        } catch (RuntimeException e) {
+            return Set.of();
+        }
+    }
+    
+    private Stream<Transaction> streamTransactions(Criteria criteria) {
+        Query query = Query.query(criteria).cursorBatchSize(exportBatchSize);
+        return mongoTemplate.stream(query, Transaction.class);
+    }
+    
+    private TransactionStatus processPayment(Transaction transaction) {
+        long started = System.nanoTime();
+        TransactionStatus outcome;
+        try {
+            outcome = paymentProcessor.process(transaction);
+        } catch (RuntimeException e) {
+            outcome = TransactionStatus.FAILED;
         }
+        paymentMetrics.recordProcessing(outcome, System.nanoTime() - started);
+        return outcome;
     }
 }
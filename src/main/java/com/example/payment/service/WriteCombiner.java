@@ -0,0 +1,365 @@
+package com.example.payment.service;
+
+import com.example.payment.exception.MongoCapacityExceededException;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Combines concurrent single-transaction writes into bulk writes. Callers
+ * enqueue their write and block on its own future; a flusher takes the first
+ * waiting write, keeps collecting for up to {@code linger} or until
+ * {@code max-batch-size} writes are waiting, and issues one unordered bulk
+ * write for the batch. Per-item failures are reported to the caller that
+ * submitted the item.
+ *
+ * <p>Inserts carry their merchant-total and rollup increments with them, so
+ * a batch of N creates costs three bulk writes instead of 3N writes. Status
+ * changes still need one {@code findAndModify} each for the transition
+ * check; only their total and rollup moves are combined. When the queue is
+ * full, callers write directly instead of waiting. A caller waits at most
+ * {@code await-timeout} for its batch and then gets a
+ * {@link MongoCapacityExceededException}; writes still queued when the
+ * combiner stops fail the same way.
+ */
+@Service
+public class WriteCombiner {
+    
+    private static final Logger log = LoggerFactory.getLogger(WriteCombiner.class);
+    
+    private static final int DUPLICATE_KEY = 11000;
+    
+    private final MongoTemplate mongoTemplate;
+    private final MerchantTotalsService merchantTotalsService;
+    private final RollupService rollupService;
+    private final boolean enabled;
+    private final Lane<Transaction> inserts;
+    private final Lane<StatusChange> statusChanges;
+    private final ExecutorService flushers;
+    private final Duration awaitTimeout;
+    private volatile boolean running = true;
+    
+    @Autowired
+    public WriteCombiner(MongoTemplate mongoTemplate,
+                         MerchantTotalsService merchantTotalsService,
+                         RollupService rollupService,
+                         MeterRegistry meterRegistry,
+                         @Value("${payment.write-combiner.enabled:false}") boolean enabled,
+                         @Value("${payment.write-combiner.linger:1ms}") Duration linger,
+                         @Value("${payment.write-combiner.max-batch-size:256}") int maxBatchSize,
+                         @Value("${payment.write-combiner.queue-capacity:10000}") int queueCapacity,
+                         @Value("${payment.write-combiner.flushers:2}") int flushersPerLane,
+                         @Value("${payment.write-combiner.await-timeout:5s}") Duration awaitTimeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.awaitTimeout = awaitTimeout;
+        this.merchantTotalsService = merchantTotalsService;
+        this.rollupService = rollupService;
+        this.enabled = enabled;
+        this.inserts = new Lane<>("insert", this::flushInserts, linger, maxBatchSize, queueCapacity, meterRegistry);
+        this.statusChanges = new Lane<>("status-change", this::flushStatusChanges, linger, maxBatchSize,
+                queueCapacity, meterRegistry);
+        if (enabled) {
+            this.flushers = Executors.newFixedThreadPool(flushersPerLane * 2,
+                    Thread.ofPlatform().name("write-combiner-", 0).daemon(true).factory());
+            for (int i = 0; i < flushersPerLane; i++) {
+                flushers.execute(() -> inserts.run());
+                flushers.execute(() -> statusChanges.run());
+            }
+            log.info("Write combiner enabled: linger {}, max batch {}, {} flushers per lane",
+                    linger, maxBatchSize, flushersPerLane);
+        } else {
+            this.flushers = null;
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Inserts the transaction and records its merchant total and rollup
+     * increments, as part of the next batch.
+     */
+    public Transaction insert(Transaction transaction) {
+        if (transaction.getVersion() == null) {
+            transaction.setVersion(0L);
+        }
+        Pending<Transaction> pending = new Pending<>(transaction);
+        if (!inserts.offer(pending)) {
+            flushInserts(List.of(pending));
+        }
+        inserts.await(pending);
+        return transaction;
+    }
+    
+    public void recordStatusChange(Transaction transaction, TransactionStatus previousStatus) {
+        if (previousStatus == transaction.getStatus()) {
+            return;
+        }
+        Pending<StatusChange> pending = new Pending<>(new StatusChange(transaction, previousStatus));
+        if (!statusChanges.offer(pending)) {
+            flushStatusChanges(List.of(pending));
+        }
+        statusChanges.await(pending);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flushers != null) {
+            flushers.shutdown();
+            flushers.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        inserts.failRemaining();
+        statusChanges.failRemaining();
+    }
+    
+    private void flushInserts(List<Pending<Transaction>> batch) {
+        List<Transaction> transactions = new ArrayList<>(batch.size());
+        for (Pending<Transaction> pending : batch) {
+            transactions.add(pending.item);
+        }
+        RuntimeException[] failures = new RuntimeException[batch.size()];
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Transaction.class)
+                    .insert(transactions)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failures[error.getIndex()] = error.getCode() == DUPLICATE_KEY
+                        ? new DuplicateKeyException(error.getMessage())
+                        : new DataIntegrityViolationException(error.getMessage());
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.fail(e));
+            return;
+        }
+        
+        List<Pending<Transaction>> inserted = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures[i] != null) {
+                batch.get(i).fail(failures[i]);
+            } else {
+                inserted.add(batch.get(i));
+            }
+        }
+        if (inserted.isEmpty()) {
+            return;
+        }
+        List<Transaction> saved = inserted.stream().map(pending -> pending.item).toList();
+        try {
+            merchantTotalsService.recordCreated(saved);
+            rollupService.recordCreated(saved);
+        } catch (RuntimeException e) {
+            inserted.forEach(pending -> pending.fail(e));
+            return;
+        }
+        inserted.forEach(Pending::complete);
+    }
+    
+    private void flushStatusChanges(List<Pending<StatusChange>> batch) {
+        List<Transaction> transactions = new ArrayList<>(batch.size());
+        List<TransactionStatus> previousStatuses = new ArrayList<>(batch.size());
+        for (Pending<StatusChange> pending : batch) {
+            transactions.add(pending.item.transaction);
+            previousStatuses.add(pending.item.previousStatus);
+        }
+        try {
+            merchantTotalsService.recordStatusChanges(transactions, previousStatuses);
+            rollupService.recordStatusChanges(transactions, previousStatuses);
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.fail(e));
+            return;
+        }
+        batch.forEach(Pending::complete);
+    }
+    
+    private static final class StatusChange {
+        
+        private final Transaction transaction;
+        private final TransactionStatus previousStatus;
+        
+        private StatusChange(Transaction transaction, TransactionStatus previousStatus) {
+            this.transaction = transaction;
+            this.previousStatus = previousStatus;
+        }
+    }
+    
+    private static final class Pending<T> {
+        
+        private final T item;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        
+        private Pending(T item) {
+            this.item = item;
+        }
+        
+        private void complete() {
+            done.complete(null);
+        }
+        
+        private void fail(RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+        
+        private void await(Duration timeout) {
+            try {
+                done.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : new CompletionException(e.getCause());
+            } catch (TimeoutException e) {
+                throw new MongoCapacityExceededException("Write was not flushed within " + timeout
+                        + ", please retry");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+    }
+    
+    /**
+     * One queue of writes of the same kind and the flush loop that drains it.
+     */
+    private final class Lane<T> {
+        
+        private final Consumer<List<Pending<T>>> flush;
+        private final long lingerNanos;
+        private final int maxBatchSize;
+        private final BlockingQueue<Pending<T>> queue;
+        private final DistributionSummary batchSizes;
+        private final Timer flushTimer;
+        private final Counter bypassed;
+        
+        private Lane(String name, Consumer<List<Pending<T>>> flush, Duration linger, int maxBatchSize,
+                     int queueCapacity, MeterRegistry meterRegistry) {
+            this.flush = flush;
+            this.lingerNanos = linger.toNanos();
+            this.maxBatchSize = maxBatchSize;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            Gauge.builder("payment.write-combiner.queue.depth", queue, BlockingQueue::size)
+                    .tag("lane", name)
+                    .register(meterRegistry);
+            this.batchSizes = DistributionSummary.builder("payment.write-combiner.batch.size")
+                    .description("Writes combined into one bulk write")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+            this.flushTimer = Timer.builder("payment.write-combiner.flush")
+                    .description("Time to execute one combined bulk write")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+            this.bypassed = Counter.builder("payment.write-combiner.bypassed")
+                    .description("Writes issued directly because combining was off or the queue was full")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+        }
+        
+        /**
+         * Queues the write for the next batch. Returns {@code false} when it
+         * has to be written directly instead.
+         */
+        private boolean offer(Pending<T> pending) {
+            if (enabled && running && queue.offer(pending)) {
+                // stop() may have drained the queue just before the offer; take the write back if so
+                if (running || !queue.remove(pending)) {
+                    return true;
+                }
+            }
+            bypassed.increment();
+            return false;
+        }
+        
+        /**
+         * Waits for the write. One that times out while still queued is
+         * taken out of the queue, so it is not written after the caller was
+         * told to retry.
+         */
+        private void await(Pending<T> pending) {
+            try {
+                pending.await(awaitTimeout);
+            } catch (MongoCapacityExceededException e) {
+                queue.remove(pending);
+                throw e;
+            }
+        }
+        
+        /**
+         * Fails the writes left in the queue once the flushers are gone.
+         */
+        private void failRemaining() {
+            List<Pending<T>> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            for (Pending<T> pending : remaining) {
+                pending.fail(new MongoCapacityExceededException("Write combiner stopped, please retry"));
+            }
+        }
+        
+        private void run() {
+            List<Pending<T>> batch = new ArrayList<>(maxBatchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Pending<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + lingerNanos;
+                    while (batch.size() < maxBatchSize) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= maxBatchSize || remaining <= 0) {
+                            break;
+                        }
+                        Pending<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+                    batchSizes.record(batch.size());
+                    flushTimer.record(() -> flush.accept(batch));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    batch.forEach(pending -> pending.fail(new CompletionException(e)));
+                    return;
+                } catch (Throwable e) {
+                    // keep the flusher alive; the pool does not replace a thread that dies
+                    log.error("Combined write of {} items failed", batch.size(), e);
+                    RuntimeException failure = e instanceof RuntimeException runtime ? runtime
+                            : new CompletionException(e);
+                    batch.forEach(pending -> pending.fail(failure));
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
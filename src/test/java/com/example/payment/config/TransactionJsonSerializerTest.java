@@ -0,0 +1,133 @@
+package com.example.payment.config;
+
+import com.example.payment.dto.ApiResponse;
+import com.example.payment.dto.CursorPage;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransactionJsonSerializerTest {
+    
+    private final ObjectMapper plain = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+    private final Cache<UUID, TransactionJsonSerializer.CachedJson> cache = Caffeine.newBuilder().build();
+    private final ObjectMapper uncached = mapper(null);
+    private final ObjectMapper cached = mapper(cache);
+    
+    @Test
+    void writesTheSameJsonAsTheAnnotatedBean() throws Exception {
+        for (Transaction transaction : List.of(transaction(TransactionStatus.PENDING), sparse())) {
+            String expected = plain.writeValueAsString(transaction);
+            
+            assertThat(uncached.writeValueAsString(transaction)).isEqualTo(expected);
+            assertThat(cached.writeValueAsString(transaction)).isEqualTo(expected);
+        }
+        assertThat(cache.asMap()).isEmpty();
+    }
+    
+    @Test
+    void writesTheSameEnvelopeAsTheAnnotatedBean() throws Exception {
+        CursorPage<Transaction> page = new CursorPage<>(
+                List.of(transaction(TransactionStatus.COMPLETED), transaction(TransactionStatus.PENDING)),
+                2, true, "next", null);
+        List<ApiResponse<?>> responses = List.of(
+                ApiResponse.success(transaction(TransactionStatus.FAILED)),
+                ApiResponse.success("Found", page),
+                ApiResponse.error("Transaction not found"));
+        
+        for (ApiResponse<?> response : responses) {
+            String expected = plain.writeValueAsString(response);
+            
+            assertThat(uncached.writeValueAsString(response)).isEqualTo(expected);
+            assertThat(cached.writeValueAsString(response)).isEqualTo(expected);
+            // the second write of a terminal transaction comes from the cache
+            assertThat(cached.writeValueAsString(response)).isEqualTo(expected);
+        }
+        assertThat(cache.asMap()).hasSize(2);
+    }
+    
+    @Test
+    void cachedTerminalTransactionsAreReusedUntilTheVersionChanges() throws Exception {
+        Transaction transaction = transaction(TransactionStatus.COMPLETED);
+        String original = plain.writeValueAsString(transaction);
+        
+        assertThat(cached.writeValueAsString(transaction)).isEqualTo(original);
+        assertThat(cache.getIfPresent(transaction.getId())).isNotNull();
+        
+        transaction.setStatus(TransactionStatus.REFUNDED);
+        transaction.setUpdatedAt(transaction.getUpdatedAt().plusMinutes(5));
+        transaction.setVersion(transaction.getVersion() + 1);
+        String refunded = plain.writeValueAsString(transaction);
+        
+        assertThat(refunded).isNotEqualTo(original);
+        assertThat(cached.writeValueAsString(transaction)).isEqualTo(refunded);
+        assertThat(cached.writeValueAsString(transaction)).isEqualTo(refunded);
+    }
+    
+    @Test
+    void writersThatDoNotPopulateReadTheCacheWithoutFillingIt() throws Exception {
+        Transaction first = transaction(TransactionStatus.COMPLETED);
+        Transaction second = transaction(TransactionStatus.COMPLETED);
+        cached.writeValueAsString(first);
+        
+        String written = cached.writer()
+                .withAttribute(TransactionJsonSerializer.POPULATE_CACHE, false)
+                .writeValueAsString(List.of(first, second));
+        
+        assertThat(written).isEqualTo(plain.writeValueAsString(List.of(first, second)));
+        assertThat(cache.asMap()).containsOnlyKeys(first.getId());
+    }
+    
+    @Test
+    void prettyPrintingBypassesTheCache() throws Exception {
+        Transaction transaction = transaction(TransactionStatus.COMPLETED);
+        
+        assertThat(cached.writerWithDefaultPrettyPrinter().writeValueAsString(transaction))
+                .isEqualTo(plain.writerWithDefaultPrettyPrinter().writeValueAsString(transaction));
+        assertThat(cache.asMap()).isEmpty();
+    }
+    
+    private static ObjectMapper mapper(Cache<UUID, TransactionJsonSerializer.CachedJson> cache) {
+        return JsonMapper.builder()
+                .addModule(new JavaTimeModule())
+                .addModule(new SimpleModule("payment-json")
+                        .addSerializer(new TransactionJsonSerializer(cache))
+                        .addSerializer(new ApiResponseJsonSerializer()))
+                .build();
+    }
+    
+    private static Transaction transaction(TransactionStatus status) {
+        Transaction transaction = new Transaction();
+        transaction.setId(UUID.randomUUID());
+        transaction.setMerchantId("merchant-1");
+        transaction.setCustomerId("customer \"1\"");
+        transaction.setAmount(new BigDecimal("1250.50"));
+        transaction.setCurrency("EUR");
+        transaction.setPaymentMethod("CARD");
+        transaction.setDescription("Café order – line\nbreak");
+        transaction.setStatus(status);
+        transaction.setCreatedAt(LocalDateTime.of(2024, 3, 7, 9, 5, 1, 123_000_000));
+        transaction.setUpdatedAt(LocalDateTime.of(2024, 3, 7, 9, 6, 0));
+        transaction.setVersion(3L);
+        return transaction;
+    }
+    
+    private static Transaction sparse() {
+        Transaction transaction = new Transaction();
+        transaction.setMerchantId("merchant-1");
+        transaction.setAmount(BigDecimal.TEN);
+        return transaction;
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.CursorPage;
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotTransactionWindowTest {
+    
+    // after the window's start, so everything put here is in its complete range
+    private static final LocalDateTime BASE = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MILLIS);
+    
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    
+    @Test
+    void statusScanFollowsTheRingAcrossTheWrap() {
+        HotTransactionWindow window = window(8, Duration.ofHours(1));
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            Transaction transaction = transaction(BASE.plusSeconds(i),
+                    i % 2 == 0 ? TransactionStatus.PENDING : TransactionStatus.COMPLETED);
+            transactions.add(transaction);
+            window.put(transaction);
+        }
+        // sequences 5..12 are live; 8..12 sit in rows 0..4 and 5..7 in rows 5..7
+        
+        assertThat(ids(window.findNewest("test", TransactionStatus.PENDING, null, null, 4).orElseThrow()))
+                .containsExactly(ids(transactions.get(12), transactions.get(10), transactions.get(8),
+                        transactions.get(6)));
+        assertThat(ids(window.findNewest("test", TransactionStatus.COMPLETED, null, null, 4).orElseThrow()))
+                .containsExactly(ids(transactions.get(11), transactions.get(9), transactions.get(7),
+                        transactions.get(5)));
+        
+        CursorPage<Transaction> page = window.pageByStatus(TransactionStatus.PENDING, null, 3, Sort.Direction.DESC)
+                .orElseThrow();
+        assertThat(ids(page.getContent()))
+                .containsExactly(ids(transactions.get(12), transactions.get(10), transactions.get(8)));
+        assertThat(page.isHasNext()).isTrue();
+    }
+    
+    @Test
+    void evictsTheOldestRowWhenFull() {
+        HotTransactionWindow window = window(4, Duration.ofHours(1));
+        window.bindTo(meterRegistry);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            transactions.add(transaction(BASE.plusSeconds(i), TransactionStatus.PENDING));
+        }
+        window.putAll(transactions);
+        
+        assertThat(meterRegistry.get("payment.hot-window.size").gauge().value()).isEqualTo(4);
+        assertThat(ids(window.findNewest("test", null, null, null, 4).orElseThrow()))
+                .containsExactly(ids(transactions.get(5), transactions.get(4), transactions.get(3),
+                        transactions.get(2)));
+    }
+    
+    @Test
+    void evictsRowsOlderThanTheDuration() {
+        HotTransactionWindow window = window(16, Duration.ofMinutes(1));
+        window.bindTo(meterRegistry);
+        Transaction oldest = transaction(BASE, TransactionStatus.PENDING);
+        Transaction middle = transaction(BASE.plusSeconds(30), TransactionStatus.PENDING);
+        Transaction newest = transaction(BASE.plusSeconds(90), TransactionStatus.PENDING);
+        window.putAll(List.of(oldest, middle, newest));
+        
+        assertThat(meterRegistry.get("payment.hot-window.size").gauge().value()).isEqualTo(2);
+        assertThat(ids(window.findNewest("test", null, null, null, 2).orElseThrow()))
+                .containsExactly(ids(newest, middle));
+        assertThat(window.findNewest("test", null, null, null, 3)).isEmpty();
+    }
+    
+    @Test
+    void updateOnlyAppliesNewerVersions() {
+        HotTransactionWindow window = window(8, Duration.ofHours(1));
+        Transaction transaction = transaction(BASE, TransactionStatus.PENDING);
+        window.put(transaction);
+        
+        window.update(changed(transaction, TransactionStatus.COMPLETED, 1L));
+        window.update(changed(transaction, TransactionStatus.COMPLETED, null));
+        assertThat(inStatus(window, TransactionStatus.PENDING)).containsExactly(transaction.getId());
+        
+        window.update(changed(transaction, TransactionStatus.COMPLETED, 2L));
+        window.update(changed(transaction, TransactionStatus.FAILED, 2L));
+        assertThat(inStatus(window, TransactionStatus.PENDING)).isEmpty();
+        assertThat(inStatus(window, TransactionStatus.FAILED)).isEmpty();
+        assertThat(window.findNewest("test", TransactionStatus.COMPLETED, BASE, null, null).orElseThrow())
+                .singleElement()
+                .satisfies(found -> assertThat(found.getVersion()).isEqualTo(2L));
+    }
+    
+    @Test
+    void removedRowsAreSkippedAndStayRemoved() {
+        HotTransactionWindow window = window(8, Duration.ofHours(1));
+        Transaction kept = transaction(BASE, TransactionStatus.PENDING);
+        Transaction removed = transaction(BASE.plusSeconds(1), TransactionStatus.PENDING);
+        window.putAll(List.of(kept, removed));
+        
+        window.remove(removed.getId());
+        window.update(changed(removed, TransactionStatus.COMPLETED, 5L));
+        
+        assertThat(ids(window.findNewest("test", null, BASE, null, null).orElseThrow()))
+                .containsExactly(kept.getId());
+        assertThat(inStatus(window, TransactionStatus.COMPLETED)).isEmpty();
+    }
+    
+    @Test
+    void keysetPagesMatchTheSortedOrderInBothDirections() {
+        HotTransactionWindow window = window(64, Duration.ofHours(1));
+        Random random = new Random(42);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // three rows per millisecond, so ties are broken by id
+            transactions.add(transaction(BASE.plus(i / 3, ChronoUnit.MILLIS), TransactionStatus.PENDING,
+                    new UUID(random.nextLong(), random.nextLong())));
+        }
+        // concurrent writers arrive slightly out of creation order
+        for (int i = 0; i + 4 <= transactions.size(); i += 4) {
+            Collections.shuffle(transactions.subList(i, i + 4), random);
+        }
+        transactions.forEach(window::put);
+        List<Transaction> newestFirst = new ArrayList<>(transactions);
+        newestFirst.sort(ShardRouter.MERGE_COMPARATOR);
+        
+        int pageSize = 7;
+        List<UUID> descending = new ArrayList<>();
+        String cursor = null;
+        Optional<CursorPage<Transaction>> page;
+        while ((page = window.pageAll(cursor, pageSize, Sort.Direction.DESC)).isPresent()) {
+            assertThat(page.get().getContent()).hasSize(pageSize);
+            descending.addAll(ids(page.get().getContent()));
+            cursor = page.get().getNextCursor();
+        }
+        // the last page is short, and only Mongo can tell that nothing older exists
+        assertThat(newestFirst.size() - descending.size()).isLessThanOrEqualTo(pageSize);
+        assertThat(descending).containsExactlyElementsOf(ids(newestFirst).subList(0, descending.size()));
+        
+        List<Transaction> oldestFirst = new ArrayList<>(newestFirst);
+        Collections.reverse(oldestFirst);
+        List<UUID> ascending = new ArrayList<>();
+        cursor = KeysetCursor.after(oldestFirst.get(0)).encode();
+        do {
+            CursorPage<Transaction> next = window.pageAll(cursor, pageSize, Sort.Direction.ASC).orElseThrow();
+            ascending.addAll(ids(next.getContent()));
+            cursor = next.getNextCursor();
+        } while (cursor != null);
+        assertThat(ascending).containsExactlyElementsOf(ids(oldestFirst).subList(1, oldestFirst.size()));
+    }
+    
+    @Test
+    void missesWhenTheResultWouldReachEvictedRows() {
+        HotTransactionWindow window = window(4, Duration.ofHours(1));
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            transactions.add(transaction(BASE.plusSeconds(i), TransactionStatus.PENDING));
+        }
+        window.putAll(transactions);
+        // sequences 0 and 1 are evicted, so the window is complete after transaction 1
+        String atEvicted = KeysetCursor.after(transactions.get(1)).encode();
+        String atLive = KeysetCursor.after(transactions.get(2)).encode();
+        
+        assertThat(window.pageAll(null, 3, Sort.Direction.DESC)).isPresent();
+        assertThat(window.pageAll(null, 4, Sort.Direction.DESC)).isEmpty();
+        assertThat(window.pageAll(atLive, 1, Sort.Direction.DESC)).isEmpty();
+        assertThat(window.pageAll(atEvicted, 10, Sort.Direction.ASC)).isEmpty();
+        assertThat(window.pageAll(null, 10, Sort.Direction.ASC)).isEmpty();
+        assertThat(ids(window.pageAll(atLive, 10, Sort.Direction.ASC).orElseThrow().getContent()))
+                .containsExactly(ids(transactions.get(3), transactions.get(4), transactions.get(5)));
+        
+        assertThat(window.findNewest("test", null, transactions.get(1).getCreatedAt(), null, null)).isEmpty();
+        assertThat(window.findNewest("test", null, transactions.get(1).getCreatedAt().plusNanos(1_000_000),
+                null, null)).isPresent();
+        assertThat(window.findNewest("test", null, null, null, 4)).isPresent();
+        assertThat(window.findNewest("test", null, null, null, 5)).isEmpty();
+        
+        assertThat(meterRegistry.get("payment.hot-window.queries").tags("query", "all", "result", "miss")
+                .counter().count()).isEqualTo(4);
+    }
+    
+    private HotTransactionWindow window(int capacity, Duration duration) {
+        return new HotTransactionWindow(meterRegistry, true, capacity, duration);
+    }
+    
+    private static List<UUID> inStatus(HotTransactionWindow window, TransactionStatus status) {
+        return ids(window.findNewest("test", status, BASE.minusSeconds(1), null, null).orElseThrow());
+    }
+    
+    private static List<UUID> ids(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getId).toList();
+    }
+    
+    private static UUID[] ids(Transaction... transactions) {
+        return ids(List.of(transactions)).toArray(UUID[]::new);
+    }
+    
+    private static Transaction changed(Transaction transaction, TransactionStatus status, Long version) {
+        Transaction changed = transaction(transaction.getCreatedAt(), status, transaction.getId());
+        changed.setUpdatedAt(transaction.getCreatedAt().plusSeconds(1));
+        changed.setVersion(version);
+        return changed;
+    }
+    
+    private static Transaction transaction(LocalDateTime createdAt, TransactionStatus status) {
+        return transaction(createdAt, status, UUID.randomUUID());
+    }
+    
+    private static Transaction transaction(LocalDateTime createdAt, TransactionStatus status, UUID id) {
+        Transaction transaction = new Transaction();
+        transaction.setId(id);
+        transaction.setMerchantId("merchant-1");
+        transaction.setCustomerId("customer-1");
+        transaction.setAmount(new BigDecimal("10.00"));
+        transaction.setCurrency("USD");
+        transaction.setPaymentMethod("CARD");
+        transaction.setStatus(status);
+        transaction.setCreatedAt(createdAt);
+        transaction.setVersion(1L);
+        return transaction;
+    }
+}
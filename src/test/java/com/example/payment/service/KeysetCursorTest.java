@@ -0,0 +1,116 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.CursorPage;
+import com.example.payment.model.Transaction;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeysetCursorTest {
+    
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 15, 12, 0, 0, 123_000_000);
+    
+    @Test
+    void decodeRestoresTheEncodedPosition() {
+        Transaction transaction = transaction(NOW, UUID.randomUUID());
+        
+        KeysetCursor decoded = KeysetCursor.decode(KeysetCursor.after(transaction).encode());
+        
+        assertThat(decoded.createdAt()).isEqualTo(NOW);
+        assertThat(decoded.id()).isEqualTo(transaction.getId());
+    }
+    
+    @Test
+    void encodeIsUrlSafeWithoutPadding() {
+        String token = KeysetCursor.after(transaction(NOW, UUID.randomUUID())).encode();
+        
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+    }
+    
+    @Test
+    void decodeRejectsMalformedTokens() {
+        for (String raw : List.of("no-separator", "|" + UUID.randomUUID(), NOW + "|", "yesterday|" + UUID.randomUUID(),
+                NOW + "|not-a-uuid")) {
+            String token = Base64.getUrlEncoder().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+            assertThatThrownBy(() -> KeysetCursor.decode(token))
+                    .as(raw)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThatThrownBy(() -> KeysetCursor.decode("not base64!"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void pageQueryFetchesOneRowPastThePage() {
+        Query query = KeysetCursor.pageQuery(new Query(), null, 10, Sort.Direction.DESC);
+        
+        assertThat(query.getLimit()).isEqualTo(11);
+        assertThat(query.getSortObject()).isEqualTo(new Document("createdAt", -1).append("id", -1));
+        assertThat(query.getQueryObject()).isEmpty();
+    }
+    
+    @Test
+    void pageQuerySeeksPastTheCursor() {
+        UUID id = UUID.randomUUID();
+        String cursor = KeysetCursor.after(transaction(NOW, id)).encode();
+        
+        Query query = KeysetCursor.pageQuery(new Query(), cursor, 10, Sort.Direction.ASC);
+        
+        assertThat(query.getQueryObject()).isEqualTo(new Document("$or", List.of(
+                new Document("createdAt", new Document("$gt", NOW)),
+                new Document("createdAt", NOW).append("id", new Document("$gt", id)))));
+    }
+    
+    @Test
+    void toPageReportsANextPageOnlyWhenTheExtraRowCameBack() {
+        List<Transaction> fetched = transactions(4);
+        
+        CursorPage<Transaction> full = KeysetCursor.toPage(fetched, 3, null);
+        assertThat(full.getContent()).containsExactlyElementsOf(fetched.subList(0, 3));
+        assertThat(full.isHasNext()).isTrue();
+        KeysetCursor next = KeysetCursor.decode(full.getNextCursor());
+        assertThat(next.id()).isEqualTo(fetched.get(2).getId());
+        assertThat(next.createdAt()).isEqualTo(fetched.get(2).getCreatedAt());
+        
+        CursorPage<Transaction> last = KeysetCursor.toPage(fetched.subList(0, 3), 3, 3L);
+        assertThat(last.getContent()).hasSize(3);
+        assertThat(last.isHasNext()).isFalse();
+        assertThat(last.getNextCursor()).isNull();
+        assertThat(last.getTotalElements()).isEqualTo(3L);
+        
+        assertThat(KeysetCursor.toPage(List.of(), 3, null).isHasNext()).isFalse();
+    }
+    
+    @Test
+    void clampPageSizeKeepsSizesInRange() {
+        assertThat(KeysetCursor.clampPageSize(0)).isEqualTo(1);
+        assertThat(KeysetCursor.clampPageSize(50)).isEqualTo(50);
+        assertThat(KeysetCursor.clampPageSize(1_000_000)).isEqualTo(KeysetCursor.MAX_PAGE_SIZE);
+    }
+    
+    private static List<Transaction> transactions(int count) {
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(transaction(NOW.minusSeconds(i), UUID.randomUUID()));
+        }
+        return transactions;
+    }
+    
+    private static Transaction transaction(LocalDateTime createdAt, UUID id) {
+        Transaction transaction = new Transaction();
+        transaction.setId(id);
+        transaction.setCreatedAt(createdAt);
+        return transaction;
+    }
+}
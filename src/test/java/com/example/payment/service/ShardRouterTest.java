@@ -0,0 +1,110 @@
+package com.example.payment.service;
+
+import com.example.payment.model.Transaction;
+import org.bson.BsonBinary;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardRouterTest {
+    
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 15, 12, 0);
+    
+    @Test
+    void rangeCriteriaIsEmptyForTheWholeKeySpace() {
+        Document min = new Document("m", new MinKey()).append("_id", new MinKey());
+        Document max = new Document("m", new MaxKey()).append("_id", new MaxKey());
+        
+        assertThat(ShardRouter.rangeCriteria(min, max).getCriteriaObject()).isEmpty();
+    }
+    
+    @Test
+    void rangeCriteriaComparesMerchantOnlyWhenIdBoundsAreMinKey() {
+        Document min = new Document("m", "b").append("_id", new MinKey());
+        Document max = new Document("m", "d").append("_id", new MinKey());
+        
+        assertThat(ShardRouter.rangeCriteria(min, max).getCriteriaObject()).isEqualTo(new Document("$and", List.of(
+                new Document("merchantId", new Document("$gte", "b")),
+                new Document("merchantId", new Document("$lt", "d")))));
+    }
+    
+    @Test
+    void rangeCriteriaTreatsMaxKeyIdsAsPastTheMerchant() {
+        Document min = new Document("m", "b").append("_id", new MaxKey());
+        Document max = new Document("m", "d").append("_id", new MaxKey());
+        
+        assertThat(ShardRouter.rangeCriteria(min, max).getCriteriaObject()).isEqualTo(new Document("$and", List.of(
+                new Document("merchantId", new Document("$gt", "b")),
+                new Document("merchantId", new Document("$lte", "d")))));
+    }
+    
+    @Test
+    void rangeCriteriaSplitsOnIdWithinTheBoundaryMerchant() {
+        UUID lower = UUID.fromString("00000000-0000-4000-8000-000000000001");
+        UUID upper = UUID.fromString("ffffffff-0000-4000-8000-000000000001");
+        Document min = new Document("m", "b").append("_id", new Binary((byte) 4, uuidBytes(lower)));
+        Document max = new Document("m", "b").append("_id", upper);
+        
+        assertThat(ShardRouter.rangeCriteria(min, max).getCriteriaObject()).isEqualTo(new Document("$and", List.of(
+                new Document("$or", List.of(
+                        new Document("merchantId", new Document("$gt", "b")),
+                        new Document("merchantId", "b").append("id", new Document("$gte", lower)))),
+                new Document("$or", List.of(
+                        new Document("merchantId", new Document("$lt", "b")),
+                        new Document("merchantId", "b").append("id", new Document("$lt", upper)))))));
+    }
+    
+    @Test
+    void rangeCriteriaLeavesOpenSidesUnbounded() {
+        Document min = new Document("m", new MinKey()).append("_id", new MinKey());
+        Document max = new Document("m", "m").append("_id", new MinKey());
+        
+        assertThat(ShardRouter.rangeCriteria(min, max).getCriteriaObject()).isEqualTo(new Document("$and", List.of(
+                new Document("merchantId", new Document("$lt", "m")))));
+    }
+    
+    @Test
+    void mergeInterleavesRunsNewestFirst() {
+        Transaction a = transaction(NOW, 1);
+        Transaction b = transaction(NOW.minusMinutes(1), 2);
+        Transaction c = transaction(NOW.minusMinutes(2), 3);
+        Transaction d = transaction(NOW.minusMinutes(3), 4);
+        
+        List<Transaction> merged = ShardRouter.merge(List.of(List.of(a, c), List.of(), List.of(b, d)));
+        
+        assertThat(merged).containsExactly(a, b, c, d);
+    }
+    
+    @Test
+    void mergeBreaksCreatedAtTiesByUnsignedIdDescending() {
+        Transaction low = transaction(NOW, 1);
+        Transaction high = transaction(NOW, -1);
+        
+        assertThat(ShardRouter.merge(List.of(List.of(low), List.of(high)))).containsExactly(high, low);
+    }
+    
+    @Test
+    void mergeOfNoRunsIsEmpty() {
+        assertThat(ShardRouter.merge(List.of())).isEmpty();
+        assertThat(ShardRouter.merge(List.of(List.of(), List.of()))).isEmpty();
+    }
+    
+    private static Transaction transaction(LocalDateTime createdAt, long idBits) {
+        Transaction transaction = new Transaction();
+        transaction.setId(new UUID(idBits, idBits));
+        transaction.setCreatedAt(createdAt);
+        return transaction;
+    }
+    
+    private static byte[] uuidBytes(UUID id) {
+        return new BsonBinary(id).getData();
+    }
+}
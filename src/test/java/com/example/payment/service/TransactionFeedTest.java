@@ -0,0 +1,165 @@
+package com.example.payment.service;
+
+import com.example.payment.dto.TransactionFeedEvent;
+import com.example.payment.event.TransactionChangedEvent;
+import com.example.payment.model.TransactionStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransactionFeedTest {
+    
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<FeedSubscription> signalled = new ArrayList<>();
+    
+    @Test
+    void newerEventReplacesTheBufferedOneAndMovesToTheBack() {
+        TransactionFeed feed = feed(8, 16);
+        FeedSubscription subscription = feed.subscribe(null, null, null, signalled::add);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        
+        feed.publish(event(a, "merchant-1", TransactionStatus.PENDING));
+        feed.publish(event(b, "merchant-1", TransactionStatus.PENDING));
+        feed.publish(event(a, "merchant-1", TransactionStatus.COMPLETED));
+        
+        List<FeedSubscription.Entry> entries = subscription.poll(10);
+        assertThat(entries).extracting(entry -> entry.getEvent().getTransactionId()).containsExactly(b, a);
+        assertThat(entries.get(1).getEvent().getStatus()).isEqualTo(TransactionStatus.COMPLETED);
+        assertThat(entries).extracting(FeedSubscription.Entry::getSequence).containsExactly(2L, 3L);
+        assertThat(counter("payment.feed.events.coalesced")).isEqualTo(1);
+        assertThat(signalled).hasSize(3);
+    }
+    
+    @Test
+    void fullBufferDropsTheOldestAndReportsItOnce() {
+        TransactionFeed feed = feed(2, 16);
+        FeedSubscription subscription = feed.subscribe(null, null, null, signalled::add);
+        List<UUID> ids = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        
+        ids.forEach(id -> feed.publish(event(id, "merchant-1", TransactionStatus.PENDING)));
+        
+        assertThat(subscription.poll(10)).extracting(entry -> entry.getEvent().getTransactionId())
+                .containsExactly(ids.get(1), ids.get(2));
+        assertThat(subscription.takeDropped()).isEqualTo(1);
+        assertThat(subscription.takeDropped()).isZero();
+        assertThat(counter("payment.feed.events.dropped")).isEqualTo(1);
+    }
+    
+    @Test
+    void subscriptionsOnlySeeTheirMerchantOrTransaction() {
+        TransactionFeed feed = feed(8, 16);
+        UUID watched = UUID.randomUUID();
+        FeedSubscription byMerchant = feed.subscribe("merchant-1", null, null, signalled::add);
+        FeedSubscription byTransaction = feed.subscribe(null, watched, null, signalled::add);
+        
+        feed.publish(event(watched, "merchant-2", TransactionStatus.PENDING));
+        feed.publish(event(UUID.randomUUID(), "merchant-1", TransactionStatus.PENDING));
+        feed.publish(event(UUID.randomUUID(), "merchant-2", TransactionStatus.PENDING));
+        
+        assertThat(byMerchant.poll(10)).extracting(entry -> entry.getEvent().getMerchantId())
+                .containsExactly("merchant-1");
+        assertThat(byTransaction.poll(10)).extracting(entry -> entry.getEvent().getTransactionId())
+                .containsExactly(watched);
+    }
+    
+    @Test
+    void resumesAfterTheLastEventId() {
+        TransactionFeed feed = feed(8, 16);
+        FeedSubscription first = feed.subscribe(null, null, null, signalled::add);
+        for (int i = 0; i < 4; i++) {
+            feed.publish(event(UUID.randomUUID(), "merchant-1", TransactionStatus.PENDING));
+        }
+        List<FeedSubscription.Entry> delivered = first.poll(10);
+        signalled.clear();
+        
+        FeedSubscription resumed = feed.subscribe(null, null, delivered.get(1).getId(), signalled::add);
+        
+        assertThat(signalled).containsExactly(resumed);
+        assertThat(resumed.takeReset()).isFalse();
+        assertThat(resumed.poll(10)).extracting(FeedSubscription.Entry::getId)
+                .containsExactly(delivered.get(2).getId(), delivered.get(3).getId());
+    }
+    
+    @Test
+    void resumeReplaysTheWholeRingWhenItHasJustWrapped() {
+        TransactionFeed feed = feed(8, 4);
+        FeedSubscription first = feed.subscribe(null, null, null, signalled::add);
+        for (int i = 0; i < 6; i++) {
+            feed.publish(event(UUID.randomUUID(), "merchant-1", TransactionStatus.PENDING));
+        }
+        List<FeedSubscription.Entry> delivered = first.poll(10);
+        
+        FeedSubscription resumed = feed.subscribe(null, null, delivered.get(1).getId(), signalled::add);
+        
+        assertThat(resumed.takeReset()).isFalse();
+        assertThat(resumed.poll(10)).extracting(FeedSubscription.Entry::getSequence)
+                .containsExactly(3L, 4L, 5L, 6L);
+    }
+    
+    @Test
+    void resumeResetsWhenTheEventHasLeftTheRing() {
+        TransactionFeed feed = feed(8, 4);
+        FeedSubscription first = feed.subscribe(null, null, null, signalled::add);
+        for (int i = 0; i < 6; i++) {
+            feed.publish(event(UUID.randomUUID(), "merchant-1", TransactionStatus.PENDING));
+        }
+        List<FeedSubscription.Entry> delivered = first.poll(10);
+        signalled.clear();
+        
+        FeedSubscription resumed = feed.subscribe(null, null, delivered.get(0).getId(), signalled::add);
+        
+        assertThat(signalled).containsExactly(resumed);
+        assertThat(resumed.takeReset()).isTrue();
+        assertThat(resumed.takeReset()).isFalse();
+        assertThat(resumed.poll(10)).isEmpty();
+    }
+    
+    @Test
+    void resumeResetsForAnIdFromAnotherRunOrFromTheFuture() {
+        TransactionFeed feed = feed(8, 16);
+        FeedSubscription first = feed.subscribe(null, null, null, signalled::add);
+        feed.publish(event(UUID.randomUUID(), "merchant-1", TransactionStatus.PENDING));
+        String id = first.poll(10).get(0).getId();
+        String epoch = id.substring(0, id.lastIndexOf('-'));
+        
+        assertThat(feed.subscribe(null, null, "earlier-1", signalled::add).takeReset()).isTrue();
+        assertThat(feed.subscribe(null, null, epoch + "-2", signalled::add).takeReset()).isTrue();
+        assertThat(feed.subscribe(null, null, epoch + "-x", signalled::add).takeReset()).isTrue();
+        assertThat(feed.subscribe(null, null, id, signalled::add).takeReset()).isFalse();
+    }
+    
+    @Test
+    void unsubscribedSubscriptionsReceiveNothing() {
+        TransactionFeed feed = feed(8, 16);
+        FeedSubscription subscription = feed.subscribe("merchant-1", null, null, signalled::add);
+        
+        feed.unsubscribe(subscription);
+        feed.publish(event(UUID.randomUUID(), "merchant-1", TransactionStatus.PENDING));
+        
+        assertThat(subscription.poll(10)).isEmpty();
+        assertThat(signalled).isEmpty();
+    }
+    
+    private TransactionFeed feed(int subscriberBuffer, int replaySize) {
+        return new TransactionFeed(null, meterRegistry, false, subscriberBuffer, replaySize);
+    }
+    
+    private double counter(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+    
+    private static TransactionFeedEvent event(UUID transactionId, String merchantId, TransactionStatus status) {
+        TransactionFeedEvent event = new TransactionFeedEvent();
+        event.setType(TransactionChangedEvent.Type.UPDATED);
+        event.setTransactionId(transactionId);
+        event.setMerchantId(merchantId);
+        event.setStatus(status);
+        return event;
+    }
+}
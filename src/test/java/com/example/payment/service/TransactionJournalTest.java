@@ -0,0 +1,250 @@
+package com.example.payment.service;
+
+import com.example.payment.model.Transaction;
+import com.example.payment.model.TransactionStatus;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class TransactionJournalTest {
+    
+    private static final int HEADER_SIZE = 16;
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void decodeRestoresEveryField() throws IOException {
+        Transaction transaction = transaction();
+        
+        Transaction decoded = TransactionJournal.decode(TransactionJournal.encode(transaction));
+        
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(transaction);
+    }
+    
+    @Test
+    void decodeKeepsNullFields() throws IOException {
+        Transaction transaction = new Transaction();
+        transaction.setId(UUID.randomUUID());
+        
+        Transaction decoded = TransactionJournal.decode(TransactionJournal.encode(transaction));
+        
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(transaction);
+    }
+    
+    @Test
+    void decodeRejectsAnUnknownFormat() {
+        byte[] payload = TransactionJournal.encode(transaction());
+        payload[0] = 99;
+        
+        assertThatThrownBy(() -> TransactionJournal.decode(payload))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("format 99");
+    }
+    
+    @Test
+    void recoveryIndexesUndrainedTransactions() throws InterruptedException {
+        TransactionJournal journal = open();
+        Transaction first = transaction();
+        Transaction second = transaction();
+        assertThat(journal.append(first)).isTrue();
+        assertThat(journal.append(second)).isTrue();
+        journal.stop();
+        
+        TransactionJournal reopened = open();
+        try {
+            assertThat(reopened.findUndrained(first.getId())).isPresent();
+            assertThat(reopened.findUndrained(second.getId())).get()
+                    .usingRecursiveComparison().isEqualTo(second);
+        } finally {
+            reopened.stop();
+        }
+    }
+    
+    @Test
+    void recoveryStopsAtATornRecord() throws IOException, InterruptedException {
+        TransactionJournal journal = open();
+        Transaction first = transaction();
+        Transaction torn = transaction();
+        Transaction after = transaction();
+        journal.append(first);
+        journal.append(torn);
+        journal.append(after);
+        journal.stop();
+        
+        int tornOffset = HEADER_SIZE + TransactionJournal.encode(first).length;
+        try (FileChannel segment = FileChannel.open(directory.resolve("0000000000000000.journal"),
+                StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[] {0x7f}), tornOffset + HEADER_SIZE + 20);
+        }
+        
+        TransactionJournal reopened = open();
+        try {
+            assertThat(reopened.findUndrained(first.getId())).isPresent();
+            assertThat(reopened.findUndrained(torn.getId())).isEmpty();
+            assertThat(reopened.findUndrained(after.getId())).isEmpty();
+        } finally {
+            reopened.stop();
+        }
+    }
+    
+    @Test
+    void drainRetriesOnlyTheTotalsStepThatFailed() throws InterruptedException {
+        MongoTemplate mongoTemplate = mongoTemplate(null);
+        MerchantTotalsService merchantTotals = mock(MerchantTotalsService.class);
+        RollupService rollups = mock(RollupService.class);
+        doThrow(new IllegalStateException("rollups down")).doNothing().when(rollups).recordCreated(anyList());
+        TransactionJournal journal = open(mongoTemplate, merchantTotals, rollups);
+        Transaction transaction = transaction();
+        try {
+            journal.append(transaction);
+            journal.startDraining();
+            awaitDrained(journal, transaction);
+        } finally {
+            journal.stop();
+        }
+        
+        verify(merchantTotals).recordCreated(sameId(transaction));
+        verify(rollups, times(2)).recordCreated(anyList());
+    }
+    
+    @Test
+    void replayRecordsTotalsForABatchInsertedBeforeAStop() throws InterruptedException {
+        MongoTemplate inserting = mongoTemplate(null);
+        MerchantTotalsService unavailable = mock(MerchantTotalsService.class);
+        doThrow(new IllegalStateException("totals down")).when(unavailable).recordCreated(anyList());
+        TransactionJournal journal = open(inserting, unavailable, mock(RollupService.class));
+        Transaction transaction = transaction();
+        journal.append(transaction);
+        journal.startDraining();
+        verify(unavailable, timeout(2000).atLeastOnce()).recordCreated(anyList());
+        journal.stop();
+        
+        MerchantTotalsService merchantTotals = mock(MerchantTotalsService.class);
+        RollupService rollups = mock(RollupService.class);
+        TransactionJournal reopened = open(mongoTemplate(duplicateKey()), merchantTotals, rollups);
+        try {
+            reopened.startDraining();
+            awaitDrained(reopened, transaction);
+        } finally {
+            reopened.stop();
+        }
+        
+        verify(merchantTotals).recordCreated(sameId(transaction));
+        verify(rollups).recordCreated(sameId(transaction));
+    }
+    
+    @Test
+    void duplicatesOfACheckpointedBatchAreNotCountedAgain() throws InterruptedException {
+        MerchantTotalsService merchantTotals = mock(MerchantTotalsService.class);
+        RollupService rollups = mock(RollupService.class);
+        TransactionJournal journal = open(mongoTemplate(duplicateKey()), merchantTotals, rollups);
+        Transaction transaction = transaction();
+        try {
+            journal.append(transaction);
+            journal.startDraining();
+            awaitDrained(journal, transaction);
+        } finally {
+            journal.stop();
+        }
+        
+        verifyNoInteractions(merchantTotals, rollups);
+    }
+    
+    private TransactionJournal open() {
+        return open(null, null, null);
+    }
+    
+    private TransactionJournal open(MongoTemplate mongoTemplate, MerchantTotalsService merchantTotals,
+                                    RollupService rollups) {
+        TransactionJournal journal = new TransactionJournal(mongoTemplate, merchantTotals, rollups,
+                mock(ApplicationEventPublisher.class), new SimpleMeterRegistry(), true, directory,
+                DataSize.ofKilobytes(64), 4, Duration.ZERO, 100, Duration.ofMillis(10), Duration.ofMillis(10),
+                Duration.ofSeconds(1), false);
+        journal.open();
+        return journal;
+    }
+    
+    private static MongoTemplate mongoTemplate(RuntimeException insertFailure) {
+        BulkOperations bulk = mock(BulkOperations.class);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+        if (insertFailure != null) {
+            when(bulk.execute()).thenThrow(insertFailure);
+        }
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(Transaction.class))).thenReturn(bulk);
+        return mongoTemplate;
+    }
+    
+    private static BulkOperationException duplicateKey() {
+        return new BulkOperationException("duplicate key", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(),
+                List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 0)),
+                null, new ServerAddress(), Set.of()));
+    }
+    
+    private static List<Transaction> sameId(Transaction transaction) {
+        return argThat(batch -> batch.size() == 1 && batch.get(0).getId().equals(transaction.getId()));
+    }
+    
+    private static void awaitDrained(TransactionJournal journal, Transaction transaction)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.findUndrained(transaction.getId()).isPresent()) {
+            assertThat(System.currentTimeMillis()).as("drained in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+    
+    private static Transaction transaction() {
+        Transaction transaction = new Transaction();
+        transaction.setId(UUID.randomUUID());
+        transaction.setMerchantId("merchant-1");
+        transaction.setCustomerId("customer-1");
+        transaction.setAmount(new BigDecimal("12.50"));
+        transaction.setCurrency("EUR");
+        transaction.setPaymentMethod("CARD");
+        transaction.setDescription("Order 42 – café");
+        transaction.setStatus(TransactionStatus.PENDING);
+        transaction.setCreatedAt(LocalDateTime.of(2025, 1, 15, 12, 0, 0, 123_456_789));
+        transaction.setUpdatedAt(LocalDateTime.of(2025, 1, 15, 12, 0, 1));
+        transaction.setVersion(3L);
+        return transaction;
+    }
+}